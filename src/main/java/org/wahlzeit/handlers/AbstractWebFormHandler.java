@@ -22,11 +22,10 @@ package org.wahlzeit.handlers;
 
 import org.wahlzeit.model.AccessRights;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 
 /**
@@ -34,7 +33,7 @@ import java.util.logging.Logger;
  */
 public abstract class AbstractWebFormHandler extends AbstractWebPartHandler implements WebFormHandler {
 
-	private static final Logger log = Logger.getLogger(AbstractWebFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(AbstractWebFormHandler.class);
 
 	/**
 	 *
@@ -63,14 +62,14 @@ public abstract class AbstractWebFormHandler extends AbstractWebPartHandler impl
 	public final String handlePost(UserSession us, Map args) {
 		String emailAddress = us.getClient().getEmailAddress().asString();
 		if (!hasAccessRights(us, args)) {
-			log.warning(LogBuilder.createSystemMessage().
-					addParameter("insufficient rights for POST from", emailAddress).toString());
+			log.warning(lb -> lb.
+					addParameter("insufficient rights for POST from", emailAddress));
 			return getIllegalAccessErrorPage(us);
 		}
 
 		if (!isWellFormedPost(us, args)) {
-			log.warning(LogBuilder.createSystemMessage().
-					addParameter("received ill-formed POST from", emailAddress).toString());
+			log.warning(lb -> lb.
+					addParameter("received ill-formed POST from", emailAddress));
 			return getIllegalArgumentErrorPage(us);
 		}
 
@@ -78,7 +77,7 @@ public abstract class AbstractWebFormHandler extends AbstractWebPartHandler impl
 			// may throw Exception
 			return doHandlePost(us, args);
 		} catch (Throwable t) {
-			log.warning(LogBuilder.createSystemMessage().addException("Handle post failed", t).toString());
+			log.warning(lb -> lb.addException("Handle post failed", t));
 			return getInternalProcessingErrorPage(us);
 		}
 	}
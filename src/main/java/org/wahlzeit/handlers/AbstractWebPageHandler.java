@@ -69,8 +69,8 @@ public abstract class AbstractWebPageHandler extends AbstractWebPartHandler impl
 
 		makeWebPageHeading(us, page);
 
-		page.addString("footer", client.getLanguageConfiguration().getPageFooter(client.getPhotoSize()));
-		page.addString("mission", client.getLanguageConfiguration().getPageMission());
+		page.addStaticText("footer", client.getLanguageConfiguration().getPageFooter(client.getPhotoSize()));
+		page.addStaticText("mission", client.getLanguageConfiguration().getPageMission());
 	}
 
 	/**
@@ -108,7 +108,7 @@ public abstract class AbstractWebPageHandler extends AbstractWebPartHandler impl
 			menu = config.getGuestMenu();
 		}
 
-		page.addString("menu", menu.toString());
+		page.addStaticText("menu", menu);
 	}
 
 	/**
@@ -29,24 +29,26 @@ import org.wahlzeit.model.PhotoSize;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.Language;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.SysConfig;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
+import org.wahlzeit.webparts.WebPartCache;
 import org.wahlzeit.webparts.WebPartTemplate;
 import org.wahlzeit.webparts.WebPartTemplateService;
+import org.wahlzeit.webparts.Writable;
 
 import java.io.File;
 import java.util.Map;
-import java.util.logging.Logger;
+import java.util.function.Supplier;
 
 /**
  * A superclass for handling parts of web pages.
  */
 public abstract class AbstractWebPartHandler implements WebPartHandler {
 
-	private static final Logger log = Logger.getLogger(AbstractWebPartHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(AbstractWebPartHandler.class);
 	/**
 	 *
 	 */
@@ -80,6 +82,32 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 		return new WebPart(tmpl);
 	}
 
+	/**
+	 * @methodtype factory
+	 *
+	 * Creates the key of a cached part of the given template in the language of the client; everything else the part
+	 * depends on must be added to the key.
+	 */
+	protected final WebPartCache.Key createCacheKey(UserSession us, String name) {
+		return new WebPartCache.Key(name, us.getClient().getLanguageConfiguration().getLanguageCode());
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected final Writable getCachedWebPart(WebPartCache.Key key, Supplier<? extends Writable> factory) {
+		return WebPartCache.getInstance().getWebPart(key, factory);
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * For parts that only depend on the template and the language.
+	 */
+	protected final Writable createCachedWebPart(UserSession us, String name) {
+		return getCachedWebPart(createCacheKey(us, name), () -> createWebPart(us, name));
+	}
+
 	/**
 	 *
 	 */
@@ -161,14 +189,14 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 	 */
 	public final String handleGet(UserSession us, String link, Map args) {
 		if (!hasAccessRights(us, args)) {
-			log.warning(LogBuilder.createSystemMessage().
-					addMessage("insufficient rights for GET").toString());
+			log.warning(lb -> lb.
+					addMessage("insufficient rights for GET"));
 			return getIllegalAccessErrorPage(us);
 		}
 
 		if (!isWellFormedGet(us, link, args)) {
-			log.warning(LogBuilder.createSystemMessage().
-					addMessage("received ill-formed GET").toString());
+			log.warning(lb -> lb.
+					addMessage("received ill-formed GET"));
 			return getIllegalArgumentErrorPage(us);
 		}
 
@@ -176,7 +204,7 @@ public abstract class AbstractWebPartHandler implements WebPartHandler {
 			// may throw Exception
 			return doHandleGet(us, link, args);
 		} catch (Throwable t) {
-			log.warning(LogBuilder.createSystemMessage().addException("Handle get failed", t).toString());
+			log.warning(lb -> lb.addException("Handle get failed", t));
 			return getInternalProcessingErrorPage(us);
 		}
 	}
@@ -27,18 +27,17 @@ import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.PhotoStatus;
 import org.wahlzeit.model.Tags;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A specific web form class.
  */
 public class AdminUserPhotoFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(AdminUserPhotoFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(AdminUserPhotoFormHandler.class);
 
 
 	/**
@@ -72,13 +71,13 @@ public class AdminUserPhotoFormHandler extends AbstractWebFormHandler {
 		String tags = us.getAndSaveAsString(args, Photo.TAGS);
 		photo.setTags(new Tags(tags));
 		String status = us.getAndSaveAsString(args, Photo.STATUS);
-		photo.setStatus(PhotoStatus.getFromString(status));
+		PhotoManager.getInstance().setPhotoStatus(photo, PhotoStatus.getFromString(status));
 
 		AsyncTaskExecutor.savePhotoAsync(id);
 
-		log.info(LogBuilder.createUserMessage().
+		log.userInfo(lb -> lb.
 				addAction("AdminUserPhoto").
-				addParameter("Photo", photo.getId().asString()).toString());
+				addParameter("Photo", photo.getId().asString()));
 
 		us.setMessage(us.getClient().getLanguageConfiguration().getPhotoUpdateSucceeded());
 
@@ -28,20 +28,19 @@ import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.model.UserStatus;
 import org.wahlzeit.services.Language;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
  */
 public class AdminUserProfileFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(AdminUserProfileFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(AdminUserProfileFormHandler.class);
 
 	/**
 	 *
@@ -106,9 +105,9 @@ public class AdminUserProfileFormHandler extends AbstractWebFormHandler {
 		user = um.getUserById(userId);
 		us.setSavedArg("userId", userId);
 
-		log.info(LogBuilder.createUserMessage().
+		log.userInfo(lb -> lb.
 				addAction("AdminUserProfile").
-				addParameter("User ID", user.getId()).toString());
+				addParameter("User ID", userId));
 
 		us.setMessage(us.getClient().getLanguageConfiguration().getProfileUpdateSucceeded());
 
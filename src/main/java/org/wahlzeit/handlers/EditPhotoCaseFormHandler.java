@@ -25,15 +25,15 @@ import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoCase;
 import org.wahlzeit.model.PhotoCaseManager;
 import org.wahlzeit.model.PhotoId;
+import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.PhotoStatus;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 
 /**
@@ -41,7 +41,7 @@ import java.util.logging.Logger;
  */
 public class EditPhotoCaseFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(EditPhotoCaseFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(EditPhotoCaseFormHandler.class);
 
 
 	/**
@@ -97,18 +97,18 @@ public class EditPhotoCaseFormHandler extends AbstractWebFormHandler {
 			return PartUtil.SHOW_PHOTO_CASES_PAGE_NAME;
 		}
 
-		photo.setStatus(status);
+		PhotoManager.getInstance().setPhotoStatus(photo, status);
 
-		log.info(LogBuilder.createUserMessage().
+		log.userInfo(lb -> lb.
 				addAction("EditPhotoCase").
-				addParameter("Photo", photo.getId().asString()).toString());
+				addParameter("Photo", photo.getId().asString()));
 
 		photoCase.setDecided();
 		pcm.removePhotoCase(photoCase);
 
-		log.info(LogBuilder.createUserMessage().
+		log.userInfo(lb -> lb.
 				addAction("EditPhotoCase").
-				addParameter("PhotoCase", photoCase.getId()).toString());
+				addParameter("PhotoCase", photoCase.getId()));
 
 		return PartUtil.SHOW_PHOTO_CASES_PAGE_NAME;
 	}
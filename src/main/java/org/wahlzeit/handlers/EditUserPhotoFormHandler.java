@@ -28,19 +28,18 @@ import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.PhotoStatus;
 import org.wahlzeit.model.Tags;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
  */
 public class EditUserPhotoFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(EditUserPhotoFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(EditUserPhotoFormHandler.class);
 
 
 	/**
@@ -101,13 +100,13 @@ public class EditUserPhotoFormHandler extends AbstractWebFormHandler {
 		String status = us.getAndSaveAsString(args, Photo.IS_INVISIBLE);
 		boolean isInvisible = (status != null) && status.equals("on");
 		PhotoStatus ps = photo.getStatus().asInvisible(isInvisible);
-		photo.setStatus(ps);
+		PhotoManager.getInstance().setPhotoStatus(photo, ps);
 
 		AsyncTaskExecutor.savePhotoAsync(id);
 
-		log.info(LogBuilder.createUserMessage().
+		log.userInfo(lb -> lb.
 				addAction("EditUserPhoto").
-				addParameter("Photo", photo.getId().asString()).toString());
+				addParameter("Photo", photo.getId().asString()));
 
 		ModelConfig config = us.getClient().getLanguageConfiguration();
 		us.setTwoLineMessage(config.getPhotoUpdateSucceeded(), config.getContinueWithShowUserHome());
@@ -27,20 +27,19 @@ import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.Language;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
  */
 public class EditUserProfileFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(EditUserProfileFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(EditUserProfileFormHandler.class);
 
 	/**
 	 *
@@ -96,15 +95,15 @@ public class EditUserProfileFormHandler extends AbstractWebFormHandler {
 
 		if (!StringUtil.isNullOrEmptyString(gender)) {
 			user.setGender(Gender.getFromString(gender));
-			log.info(LogBuilder.createUserMessage().
-					addParameter("Gender", gender).toString());
+			log.userInfo(lb -> lb.
+					addParameter("Gender", gender));
 		}
 
 		if (!StringUtil.isNullOrEmptyString(language)) {
 			Language langValue = Language.getFromString(language);
 			user.setLanguage(langValue);
-			log.info(LogBuilder.createUserMessage().
-					addParameter("Language", langValue.asString()).toString());
+			log.userInfo(lb -> lb.
+					addParameter("Language", langValue.asString()));
 		}
 
 		ModelConfig config = us.getClient().getLanguageConfiguration();
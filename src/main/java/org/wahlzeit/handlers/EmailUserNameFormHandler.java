@@ -26,21 +26,20 @@ import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.EmailAddress;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.mailing.EmailService;
 import org.wahlzeit.services.mailing.EmailServiceManager;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
  */
 public class EmailUserNameFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(EmailUserNameFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(EmailUserNameFormHandler.class);
 
 
 	/**
@@ -86,9 +85,9 @@ public class EmailUserNameFormHandler extends AbstractWebFormHandler {
 		emailService.sendEmailIgnoreException(to, config.getAuditEmailAddress(), config.getSendUserNameEmailSubject(),
 				user.getId());
 
-		log.info(LogBuilder.createUserMessage().
+		log.userInfo(lb -> lb.
 				addAction("Username send per E-Mail").
-				addParameter("Target address", to.asString()).toString());
+				addParameter("Target address", to.asString()));
 
 		us.setTwoLineMessage(config.getUserNameWasEmailed(), config.getContinueWithShowPhoto());
 
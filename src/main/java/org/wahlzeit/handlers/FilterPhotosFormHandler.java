@@ -24,19 +24,18 @@ import org.wahlzeit.model.AccessRights;
 import org.wahlzeit.model.PhotoFilter;
 import org.wahlzeit.model.Tags;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
  */
 public class FilterPhotosFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(FilterPhotosFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(FilterPhotosFormHandler.class);
 
 
 	/**
@@ -72,9 +71,9 @@ public class FilterPhotosFormHandler extends AbstractWebFormHandler {
 			filter.setTags(new Tags(tags));
 		}
 
-		log.info(LogBuilder.createUserMessage().
+		log.userInfo(lb -> lb.
 				addAction("Filter Photos").
-				addParameter("Tags", filter.getTags().asString()).toString());
+				addParameter("Tags", filter.getTags().asString()));
 
 
 		return PartUtil.SHOW_PHOTO_PAGE_NAME;
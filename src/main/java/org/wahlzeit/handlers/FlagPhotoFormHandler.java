@@ -30,21 +30,20 @@ import org.wahlzeit.model.PhotoCaseManager;
 import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.EmailAddress;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.mailing.EmailService;
 import org.wahlzeit.services.mailing.EmailServiceManager;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
  */
 public class FlagPhotoFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(FlagPhotoFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(FlagPhotoFormHandler.class);
 
 
 	/**
@@ -99,7 +98,7 @@ public class FlagPhotoFormHandler extends AbstractWebFormHandler {
 		}
 
 		Photo photo = PhotoManager.getInstance().getPhoto(id);
-		photo.setStatus(photo.getStatus().asFlagged(true));
+		PhotoManager.getInstance().setPhotoStatus(photo, photo.getStatus().asFlagged(true));
 		AsyncTaskExecutor.savePhotoAsync(id);
 
 		PhotoCase photoCase = new PhotoCase(photo);
@@ -120,9 +119,9 @@ public class FlagPhotoFormHandler extends AbstractWebFormHandler {
 
 		emailService.sendEmailIgnoreException(to, config.getAuditEmailAddress(), emailSubject, emailBody);
 
-		log.info(LogBuilder.createUserMessage()
+		log.userInfo(lb -> lb
 				.addAction("Flag Photo")
-				.addParameter("Photo", photo.getId().asString()).toString());
+				.addParameter("Photo", photo.getId().asString()));
 
 		us.setTwoLineMessage(config.getModeratorWasInformed(), config.getContinueWithShowPhoto());
 
@@ -8,11 +8,10 @@ import org.wahlzeit.model.Client;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * When a user signs in with its Google account, this handler assures that a Wahlzeit user exists for the Google user.
@@ -20,7 +19,7 @@ import java.util.logging.Logger;
  */
 public class LoginFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(LoginFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(LoginFormHandler.class);
 
 
 	public LoginFormHandler() {
@@ -30,7 +29,7 @@ public class LoginFormHandler extends AbstractWebFormHandler {
 	@Override
 	protected void doMakeWebPart(UserSession us, WebPart part) {
 		// do nothing as there is no page that should be displayed
-		log.info("doMakeWebPart");
+		log.config(lb -> lb.addMessage("doMakeWebPart"));
 	}
 
 	/**
@@ -38,25 +37,25 @@ public class LoginFormHandler extends AbstractWebFormHandler {
 	 */
 	@Override
 	protected String doHandleGet(UserSession us, String link, Map args) {
-		log.info("Link: " + link);
+		log.config(lb -> lb.addParameter("Link", link));
 
 		UserService userService = UserServiceFactory.getUserService();
 		com.google.appengine.api.users.User googleUser = userService.getCurrentUser();
 
 		if (googleUser != null) {
 			// googleUser logged in
-			log.config(LogBuilder.createSystemMessage().
+			log.config(lb -> lb.
 					addMessage("Google user exists").
-					addParameter("E-Mail", googleUser.getEmail()).toString());
+					addParameter("E-Mail", googleUser.getEmail()));
 			String userId = googleUser.getUserId();
 			UserManager userManager = UserManager.getInstance();
 			User user = userManager.getUserById(userId);
 			if (user != null) {
 				// Wahlzeit user already exists
 				us.setClient(user);
-				log.config(LogBuilder.createSystemMessage().
+				log.config(lb -> lb.
 						addMessage("Wahlzeit user exists").
-						addParameter("id", user.getId()).toString());
+						addParameter("id", userId));
 			} else {
 				// create new Wahlzeit user
 				String emailAddress = googleUser.getEmail();
@@ -71,7 +70,7 @@ public class LoginFormHandler extends AbstractWebFormHandler {
 				userManager.emailWelcomeMessage(us, user);
 				us.setClient(user);
 
-				log.info(LogBuilder.createUserMessage().addAction("Signup").toString());
+				log.userInfo(lb -> lb.addAction("Signup"));
 			}
 
 //              TODO
@@ -26,12 +26,11 @@ import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoId;
 import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 
 /**
@@ -39,7 +38,7 @@ import java.util.logging.Logger;
  */
 public class PraisePhotoFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(PraisePhotoFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(PraisePhotoFormHandler.class);
 
 
 	/**
@@ -83,12 +82,14 @@ public class PraisePhotoFormHandler extends AbstractWebFormHandler {
 				int value = Integer.parseInt(praise);
 				photo.addToPraise(value);
 				client.addPraisedPhotoId(photo.getId());
+				us.addPraisedPhoto(photo);
 				us.addProcessedPhoto(photo);
 				wasPraised = true;
 			}
 		}
 
-		log.info(LogBuilder.createUserMessage().addAction(wasPraised ? "PraisePhoto" : "SkipPhoto").toString());
+		String action = wasPraised ? "PraisePhoto" : "SkipPhoto";
+		log.userInfo(lb -> lb.addAction(action));
 
 		return PartUtil.SHOW_PHOTO_PAGE_NAME;
 	}
@@ -27,13 +27,12 @@ import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.mailing.EmailService;
 import org.wahlzeit.services.mailing.EmailServiceManager;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
@@ -48,7 +47,7 @@ public class SendEmailFormHandler extends AbstractWebFormHandler {
 	public static final String EMAIL_SUBJECT = "emailSubject";
 	public static final String EMAIL_BODY = "emailBody";
 
-	private static final Logger log = Logger.getLogger(SendEmailFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(SendEmailFormHandler.class);
 
 	/**
 	 *
@@ -130,9 +129,9 @@ public class SendEmailFormHandler extends AbstractWebFormHandler {
 		emailService.sendEmailIgnoreException(toUser.getEmailAddress(), config.getAuditEmailAddress(), emailSubject,
 				emailBody);
 
-		log.info(LogBuilder.createUserMessage().
+		log.userInfo(lb -> lb.
 				addAction("Send E-Mail").
-				addParameter("Recipient", toUser.getNickName()).toString());
+				addParameter("Recipient", toUser.getNickName()));
 
 		us.setMessage(config.getEmailWasSent() + toUser.getNickName() + "!");
 
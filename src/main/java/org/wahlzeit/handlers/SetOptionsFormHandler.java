@@ -26,11 +26,10 @@ import org.wahlzeit.model.ModelConfig;
 import org.wahlzeit.model.PhotoSize;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.Language;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
@@ -43,7 +42,7 @@ public class SetOptionsFormHandler extends AbstractWebFormHandler {
 	public static final String LANGUAGE = "language";
 	public static final String PHOTO_SIZE = "photoSize";
 
-	private static final Logger log = Logger.getLogger(SetOptionsFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(SetOptionsFormHandler.class);
 
 	/**
 	 *
@@ -79,10 +78,10 @@ public class SetOptionsFormHandler extends AbstractWebFormHandler {
 		PhotoSize photoValue = PhotoSize.getFromString(photoSize);
 		client.setPhotoSize(photoValue);
 
-		log.info(LogBuilder.createUserMessage().
+		log.userInfo(lb -> lb.
 				addAction("Set options").
 				addParameter("language", language).
-				addParameter("photo size", photoSize).toString());
+				addParameter("photo size", photoSize));
 
 		ModelConfig config = us.getClient().getLanguageConfiguration();
 		String msg1 = config.getOptionsWereSet();
@@ -27,20 +27,19 @@ import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 import org.wahlzeit.webparts.Writable;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web page.
  */
 public class ShowAdminPageHandler extends AbstractWebPageHandler implements WebFormHandler {
 
-	private static Logger log = Logger.getLogger(ShowAdminPageHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(ShowAdminPageHandler.class);
 
 	/**
 	 *
@@ -77,9 +76,9 @@ public class ShowAdminPageHandler extends AbstractWebPageHandler implements WebF
 
 		String userId = us.getSavedArg("userId").toString();
 		User user = UserManager.getInstance().getUserById(userId);
-		log.config("UserId: " + userId);
+		log.config(lb -> lb.addParameter("UserId", userId));
 		if (user != null) {
-			log.config("User = null");
+			log.config(lb -> lb.addMessage("User = null"));
 			handler = getFormHandler(PartUtil.ADMIN_USER_PROFILE_FORM_NAME);
 		}
 
@@ -106,8 +105,8 @@ public class ShowAdminPageHandler extends AbstractWebPageHandler implements WebF
 	 */
 	public String handlePost(UserSession us, Map args) {
 		if (!hasAccessRights(us, args)) {
-			log.warning(LogBuilder.createSystemMessage().
-					addMessage("insufficient rights for POST").toString());
+			log.warning(lb -> lb.
+					addMessage("insufficient rights for POST"));
 			return getIllegalAccessErrorPage(us);
 		}
 
@@ -131,10 +130,10 @@ public class ShowAdminPageHandler extends AbstractWebPageHandler implements WebF
 	 */
 	protected String performAdminUserProfileRequest(UserSession us, Map args) {
 		String userId = us.getAndSaveAsString(args, "userId");
-		log.config("UserId: " + userId);
+		log.config(lb -> lb.addParameter("UserId", userId));
 		User user = UserManager.getInstance().getUserById(userId);
 		if (user == null) {
-			log.config("User = null");
+			log.config(lb -> lb.addMessage("User = null"));
 			us.setMessage(user.getLanguageConfiguration().getUserNameIsUnknown());
 		}
 
@@ -158,12 +157,12 @@ public class ShowAdminPageHandler extends AbstractWebPageHandler implements WebF
 	 *
 	 */
 	protected String performSaveAllRequest(UserSession us) {
-		log.info(LogBuilder.createSystemMessage().addAction("save all objects").toString());
+		log.info(lb -> lb.addAction("save all objects"));
 
 		try {
 			ServiceMain.getInstance().saveAll();
 		} catch (Exception ex) {
-			log.warning(LogBuilder.createSystemMessage().addException("saving all objects failed", ex).toString());
+			log.warning(lb -> lb.addException("saving all objects failed", ex));
 		}
 
 		us.setMessage("Saved objects...");
@@ -174,11 +173,11 @@ public class ShowAdminPageHandler extends AbstractWebPageHandler implements WebF
 	 *
 	 */
 	protected String performShutdownRequest(UserSession us) {
-		log.info(LogBuilder.createSystemMessage().addAction("shutting system down").toString());
+		log.info(lb -> lb.addAction("shutting system down"));
 		try {
 			ServiceMain.getInstance().requestStop();
 		} catch (Exception ex) {
-			log.warning(LogBuilder.createSystemMessage().addException("requesting stop failed", ex).toString());
+			log.warning(lb -> lb.addException("requesting stop failed", ex));
 		}
 
 		us.setMessage("Shutting down...");
@@ -21,11 +21,13 @@
 package org.wahlzeit.handlers;
 
 import org.wahlzeit.model.AccessRights;
+import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoCase;
 import org.wahlzeit.model.PhotoCaseManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.webparts.WebPart;
+import org.wahlzeit.webparts.WebPartCache;
 import org.wahlzeit.webparts.Writable;
 import org.wahlzeit.webparts.WritableList;
 
@@ -54,7 +56,7 @@ public class ShowPhotoCasesPageHandler extends AbstractWebPageHandler {
 		PhotoCaseManager pcm = PhotoCaseManager.getInstance();
 		PhotoCase[] flaggedCases = pcm.getOpenPhotoCasesByAscendingAge();
 		if (flaggedCases.length != 0) {
-			WritableList openCases = new WritableList();
+			WritableList openCases = new WritableList(flaggedCases.length);
 			for (int i = 0; i < flaggedCases.length; i++) {
 				openCases.append(makePhotoCaseForm(us, flaggedCases[i]));
 			}
@@ -71,7 +73,11 @@ public class ShowPhotoCasesPageHandler extends AbstractWebPageHandler {
 	protected Writable makePhotoCaseForm(UserSession us, PhotoCase photoCase) {
 		us.setPhotoCase(photoCase);
 		WebFormHandler handler = getFormHandler(PartUtil.EDIT_PHOTO_CASE_FORM_NAME);
-		return handler.makeWebPart(us);
+		Photo photo = photoCase.getPhoto();
+		WebPartCache.Key key = createCacheKey(us, PartUtil.EDIT_PHOTO_CASE_FORM_FILE).
+				add(String.valueOf(photoCase.getId()), photoCase.getWriteVersion()).
+				add(photo.getId().asString(), photo.getWriteVersion());
+		return getCachedWebPart(key, () -> handler.makeWebPart(us));
 	}
 
 }
@@ -28,9 +28,12 @@ import org.wahlzeit.model.PhotoId;
 import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.PhotoSize;
 import org.wahlzeit.model.Tags;
+import org.wahlzeit.model.User;
+import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.webparts.WebPart;
+import org.wahlzeit.webparts.WebPartCache;
 import org.wahlzeit.webparts.Writable;
 import org.wahlzeit.webparts.WritableList;
 
@@ -121,21 +124,21 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 	 *
 	 */
 	protected void makeLeftSidebar(UserSession us, WebPart page) {
-		WritableList parts = new WritableList();
+		WritableList parts = new WritableList(3);
 
 		Client client = us.getClient();
 		Photo lastPraisedPhoto = client.getLastPraisedPhoto();
 		if (lastPraisedPhoto != null) {
 			parts.append(makePriorPhotoInfo(us, lastPraisedPhoto));
 		} else {
-			parts.append(createWebPart(us, PartUtil.BLURP_INFO_FILE));
+			parts.append(createCachedWebPart(us, PartUtil.BLURP_INFO_FILE));
 		}
 
 		WebFormHandler handler = getFormHandler(PartUtil.FILTER_PHOTOS_FORM_NAME);
 		Writable filterPhotos = handler.makeWebPart(us);
 		parts.append(filterPhotos);
 
-		parts.append(createWebPart(us, PartUtil.LINKS_INFO_FILE));
+		parts.append(createCachedWebPart(us, PartUtil.LINKS_INFO_FILE));
 
 		page.addWritable("sidebar", parts);
 	}
@@ -177,11 +180,27 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 		PhotoId photoId = us.getPhotoId();
 		Photo photo = PhotoManager.getInstance().getPhoto(photoId);
 
-		WebPart caption = createWebPart(us, PartUtil.CAPTION_INFO_FILE);
-		caption.addString(Photo.CAPTION, getPhotoCaption(us, photo));
+		WebPartCache.Key key = createPhotoCacheKey(us, PartUtil.CAPTION_INFO_FILE, photo);
+		Writable caption = getCachedWebPart(key, () -> {
+			WebPart result = createWebPart(us, PartUtil.CAPTION_INFO_FILE);
+			result.addString(Photo.CAPTION, getPhotoCaption(us, photo));
+			return result;
+		});
 		page.addWritable(Photo.CAPTION, caption);
 	}
 
+	/**
+	 * @methodtype factory
+	 *
+	 * The caption of a photo names its owner, so a part with the caption also depends on the owner, e.g. its nickname.
+	 */
+	protected WebPartCache.Key createPhotoCacheKey(UserSession us, String partName, Photo photo) {
+		User owner = UserManager.getInstance().getUserById(photo.getOwnerId());
+		return createCacheKey(us, partName).
+				add(photo.getId().asString(), photo.getWriteVersion()).
+				add(photo.getOwnerId(), (owner != null) ? owner.getWriteVersion() : 0);
+	}
+
 	/**
 	 *
 	 */
@@ -215,14 +234,18 @@ public class ShowPhotoPageHandler extends AbstractWebPageHandler implements WebF
 	/**
 	 *
 	 */
-	protected WebPart makePriorPhotoInfo(UserSession us, Photo lastPraisedPhoto) {
-		WebPart result = createWebPart(us, PartUtil.PHOTO_INFO_FILE);
-
-		result.addString(Photo.PRAISE, lastPraisedPhoto.getPraiseAsString(us.getClient().getLanguageConfiguration()));
-		result.addString(Photo.THUMB, getPhotoThumb(us, lastPraisedPhoto));
-		result.addString(Photo.CAPTION, getPhotoCaption(us, lastPraisedPhoto));
-
-		return result;
+	protected Writable makePriorPhotoInfo(UserSession us, Photo lastPraisedPhoto) {
+		WebPartCache.Key key = createPhotoCacheKey(us, PartUtil.PHOTO_INFO_FILE, lastPraisedPhoto);
+		return getCachedWebPart(key, () -> {
+			WebPart result = createWebPart(us, PartUtil.PHOTO_INFO_FILE);
+
+			result.addString(Photo.PRAISE,
+					lastPraisedPhoto.getPraiseAsString(us.getClient().getLanguageConfiguration()));
+			result.addString(Photo.THUMB, getPhotoThumb(us, lastPraisedPhoto));
+			result.addString(Photo.CAPTION, getPhotoCaption(us, lastPraisedPhoto));
+
+			return result;
+		});
 	}
 
 	/**
@@ -26,7 +26,10 @@ import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.utils.HtmlUtil;
+import org.wahlzeit.webparts.DeferredWritable;
+import org.wahlzeit.webparts.StaticText;
 import org.wahlzeit.webparts.WebPart;
+import org.wahlzeit.webparts.WebPartCache;
 import org.wahlzeit.webparts.Writable;
 import org.wahlzeit.webparts.WritableList;
 
@@ -49,26 +52,28 @@ public class ShowUserHomePageHandler extends AbstractWebPageHandler {
 		Writable part = makeUserProfileForm(us);
 		page.addWritable("profile", part);
 
+		page.addDeferredWritable("photos", () -> makeUserPhotoForms(us));
+	}
+
+	/**
+	 * Each form is only made when it is written, so that a user with many photos gets the page as it is made.
+	 */
+	protected Writable makeUserPhotoForms(UserSession us) {
 		User user = (User) us.getClient();
 		Photo[] photos = user.getPhotos();
-		boolean wasEmpty = true;
-		if (photos.length != 0) {
-			WritableList list = new WritableList();
-			for (Photo photo : photos) {
-				// load it from the PhotoManager to make sure the same copy is used
-				photo = PhotoManager.getInstance().getPhotoFromId(photo.getId());
-				if (photo != null && !photo.getStatus().isDeleted()) {
-					part = makeUserPhotoForm(us, photo);
-					list.append(part);
-					wasEmpty = false;
-				}
+		WritableList result = new WritableList(photos.length);
+		for (Photo photo : photos) {
+			// load it from the PhotoManager to make sure the same copy is used
+			Photo managedPhoto = PhotoManager.getInstance().getPhotoFromId(photo.getId());
+			if (managedPhoto != null && !managedPhoto.getStatus().isDeleted()) {
+				result.append(new DeferredWritable(() -> makeUserPhotoForm(us, managedPhoto)));
 			}
-			page.addWritable("photos", list);
 		}
 
-		if (wasEmpty) {
-			page.addString("photos", HtmlUtil.asP(us.getClient().getLanguageConfiguration().getNoPhotoUploaded()));
+		if (result.isEmpty()) {
+			return StaticText.of(HtmlUtil.asP(us.getClient().getLanguageConfiguration().getNoPhotoUploaded()));
 		}
+		return result;
 	}
 
 	/**
@@ -86,7 +91,9 @@ public class ShowUserHomePageHandler extends AbstractWebPageHandler {
 	protected Writable makeUserPhotoForm(UserSession us, Photo photo) {
 		us.setPhotoId(photo.getId());
 		WebFormHandler handler = getFormHandler(PartUtil.SHOW_USER_PHOTO_FORM_NAME);
-		return handler.makeWebPart(us);
+		WebPartCache.Key key = createCacheKey(us, PartUtil.SHOW_USER_PHOTO_FORM_FILE).
+				add(photo.getId().asString(), photo.getWriteVersion());
+		return getCachedWebPart(key, () -> handler.makeWebPart(us));
 	}
 
 }
@@ -28,20 +28,19 @@ import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.utils.HtmlUtil;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
  */
 public class ShowUserPhotoFormHandler extends AbstractWebFormHandler {
 
-	private static final Logger log = Logger.getLogger(ShowUserPhotoFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(ShowUserPhotoFormHandler.class);
 
 
 	/**
@@ -105,18 +104,18 @@ public class ShowUserPhotoFormHandler extends AbstractWebFormHandler {
 			user.setUserPhoto(photo);
 			us.setClient(user);
 			userManager.saveClient(user);
-			log.info(LogBuilder.createUserMessage().
+			log.userInfo(lb -> lb.
 					addAction("Select user photo").
-					addParameter("Photo", id).toString());
+					addParameter("Photo", id));
 		} else if (us.isFormType(args, "delete")) {
-			photo.setStatus(photo.getStatus().asDeleted(true));
+			PhotoManager.getInstance().setPhotoStatus(photo, photo.getStatus().asDeleted(true));
 			PhotoManager.getInstance().savePhoto(photo);
 			if (user.getUserPhoto() == photo) {
 				user.setUserPhoto(null);
 				userManager.saveClient(user);
 			}
-			log.info(LogBuilder.createUserMessage().
-					addAction("Deselect user photo").toString());
+			log.userInfo(lb -> lb.
+					addAction("Deselect user photo"));
 		}
 
 		return result;
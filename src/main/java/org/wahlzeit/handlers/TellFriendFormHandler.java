@@ -26,14 +26,13 @@ import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.EmailAddress;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.mailing.EmailService;
 import org.wahlzeit.services.mailing.EmailServiceManager;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
@@ -48,7 +47,7 @@ public class TellFriendFormHandler extends AbstractWebFormHandler {
 	public static final String EMAIL_SUBJECT = "emailSubject";
 	public static final String EMAIL_BODY = "emailBody";
 
-	private static final Logger log = Logger.getLogger(TellFriendFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(TellFriendFormHandler.class);
 
 	/**
 	 *
@@ -108,9 +107,9 @@ public class TellFriendFormHandler extends AbstractWebFormHandler {
 		EmailService emailService = EmailServiceManager.getDefaultService();
 		emailService.sendEmailIgnoreException(to, config.getAuditEmailAddress(), emailSubject, emailBody);
 
-		log.info(LogBuilder.createUserMessage().
+		log.userInfo(lb -> lb.
 				addAction("TellFriend").
-				addParameter("recipient", to.asString()).toString());
+				addParameter("recipient", to.asString()));
 
 
 		us.setTwoLineMessage(config.getEmailWasSent() + friendsEmailAddress + "! ", config.getKeepGoing());
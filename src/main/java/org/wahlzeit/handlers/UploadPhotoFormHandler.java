@@ -20,29 +20,28 @@
 
 package org.wahlzeit.handlers;
 
-import com.google.appengine.api.images.Image;
 import org.wahlzeit.agents.AsyncTaskExecutor;
 import org.wahlzeit.model.AccessRights;
 import org.wahlzeit.model.ModelConfig;
 import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.Tags;
+import org.wahlzeit.model.UploadedImage;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.model.VolcanoPhotoManager;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A handler class for a specific web form.
  */
 public class UploadPhotoFormHandler extends AbstractWebFormHandler {
 
-	private static Logger log = Logger.getLogger(UploadPhotoFormHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(UploadPhotoFormHandler.class);
 
 	/**
 	 *
@@ -77,26 +76,32 @@ public class UploadPhotoFormHandler extends AbstractWebFormHandler {
 			PhotoManager pm = VolcanoPhotoManager.getInstance();
 			String fileName = us.getAsString(args, "fileName");
 			User user = (User) us.getClient();
-			Image uploadedImage = user.getUploadedImage();
-			Photo photo = pm.createPhoto(fileName, uploadedImage);
+			UploadedImage uploadedImage = user.getUploadedImage();
+			if (uploadedImage == null) {
+				us.setMessage(config.getPhotoUploadFailed());
+				return PartUtil.UPLOAD_PHOTO_PAGE_NAME;
+			}
+
+			Photo photo = pm.createPhoto(fileName, uploadedImage, user.getPhotoSize());
+			user.setUploadedImage(null);
 
 			user.addPhoto(photo);
 
 			photo.setTags(new Tags(tags));
 
-			log.config(LogBuilder.createUserMessage().
+			log.userConfig(lb -> lb.
 					addAction("Upload Photo").
 					addParameter("Photo", photo.getId().asString()).
-					addParameter("tags", photo.getTags().asString()).toString());
+					addParameter("tags", photo.getTags().asString()));
 
 			us.setTwoLineMessage(config.getPhotoUploadSucceeded(), config.getKeepGoing());
-			log.config(LogBuilder.createSystemMessage().
+			log.config(lb -> lb.
 					addAction("Calling async task to save Photo").
-					addParameter("ID", photo.getId().asString()).toString());
+					addParameter("ID", photo.getId().asString()));
 
 			AsyncTaskExecutor.savePhotoAsync(photo.getId().asString());
 		} catch (Exception ex) {
-			log.warning(LogBuilder.createSystemMessage().addException("uploading photo failed", ex).toString());
+			log.warning(lb -> lb.addException("uploading photo failed", ex));
 			us.setMessage(config.getPhotoUploadFailed());
 		}
 
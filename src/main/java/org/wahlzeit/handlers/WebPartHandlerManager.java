@@ -20,11 +20,10 @@
 
 package org.wahlzeit.handlers;
 
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.logging.Logger;
 
 
 /**
@@ -36,7 +35,7 @@ public class WebPartHandlerManager {
 	 *
 	 */
 	protected static final WebPartHandlerManager instance = new WebPartHandlerManager();
-	private static final Logger log = Logger.getLogger(WebPartHandler.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(WebPartHandler.class);
 	/**
 	 *
 	 */
@@ -106,10 +105,10 @@ public class WebPartHandlerManager {
 	 */
 	public WebPartHandler addWebPartHandler(String name, WebPartHandler myHandler) {
 		handler.put(name, myHandler);
-		log.config(LogBuilder.createSystemMessage().
+		log.config(lb -> lb.
 				addAction("add WebPartHandler").
 				addParameter("name", name).
-				addParameter("handler", myHandler).toString());
+				addParameter("handler", myHandler));
 		return myHandler;
 	}
 
@@ -23,9 +23,12 @@ package org.wahlzeit.main;
 import com.google.appengine.api.images.Image;
 import com.google.appengine.api.images.ImagesServiceFactory;
 import org.wahlzeit.model.*;
+import org.wahlzeit.model.persistence.CachingImageStorage;
 import org.wahlzeit.model.persistence.DatastoreAdapter;
 import org.wahlzeit.model.persistence.ImageStorage;
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.WriteBehindQueue;
 
 import java.io.File;
 import java.io.FileFilter;
@@ -50,7 +53,10 @@ public abstract class ModelMain extends AbstractMain {
 
 		log.config(LogBuilder.createSystemMessage().addAction("load image storage").toString());
 		//GcsAdapter.Builder gcsAdapterBuilder = new GcsAdapter.Builder();
-		ImageStorage.setInstance(new DatastoreAdapter());
+		ImageStorage.setInstance(createImageStorage());
+
+		log.config(LogBuilder.createSystemMessage().addAction("enable write-behind").toString());
+		ObjectManager.enableWriteBehind(new WriteBehindQueue());
 
 		log.config(LogBuilder.createSystemMessage().addAction("load globals").toString());
 		GlobalsManager.getInstance().loadGlobals();
@@ -69,11 +75,21 @@ public abstract class ModelMain extends AbstractMain {
 	}
 
 
+	/**
+	 * @methodtype factory
+	 *
+	 * Self-hosted deployments may return a FileSystemImageStorage instead, to keep images out of the Datastore.
+	 */
+	protected ImageStorage createImageStorage() throws IOException {
+		return new CachingImageStorage(new DatastoreAdapter());
+	}
+
 	/**
 	 *
 	 */
 	protected void shutDown() throws Exception {
 		saveAll();
+		ObjectManager.disableWriteBehind();
 
 		super.shutDown();
 	}
@@ -88,6 +104,7 @@ public abstract class ModelMain extends AbstractMain {
 		VolcanoManager.getInstance().saveVolcanoTypes();
 		UserManager.getInstance().saveClients();
 		GlobalsManager.getInstance().saveGlobals();
+		ObjectManager.flushWriteBehind();
 	}
 
 	/**
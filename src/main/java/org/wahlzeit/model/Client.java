@@ -21,17 +21,19 @@
 package org.wahlzeit.model;
 
 import com.google.appengine.api.datastore.Key;
+import com.googlecode.objectify.annotation.AlsoLoad;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import com.googlecode.objectify.annotation.Ignore;
 import com.googlecode.objectify.annotation.Parent;
+import com.googlecode.objectify.annotation.Serialize;
+import org.wahlzeit.services.DataObject;
 import org.wahlzeit.services.EmailAddress;
 import org.wahlzeit.services.Language;
 import org.wahlzeit.services.ObjectManager;
 import org.wahlzeit.services.Persistent;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -66,15 +68,29 @@ public abstract class Client implements Serializable, Persistent {
 	@Ignore
 	protected int writeCount = 0;
 
+	/**
+	 * 0 until it is first needed, see DataObject.getWriteVersion()
+	 */
+	@Ignore
+	protected long writeVersion = 0;
+
 	private String httpSessionId;
 
 	protected Language language = Language.ENGLISH;
 
 	protected PhotoSize photoSize = PhotoSize.MEDIUM;
 
-	protected List<PhotoId> praisedPhotoIds = new ArrayList<PhotoId>();
+	/**
+	 * Stored as one compact blob rather than as a list of embedded photo ids; the old lists are still read from
+	 * the praisedPhotoIds and skippedPhotoIds properties, see importPraisedPhotoIds and importSkippedPhotoIds
+	 */
+	@Serialize
+	protected PhotoIdSet praisedPhotoIdSet = new PhotoIdSet();
 
-	protected List<PhotoId> skippedPhotoIds = new ArrayList<PhotoId>();
+	protected PhotoId lastPraisedPhotoId;
+
+	@Serialize
+	protected PhotoIdSet skippedPhotoIdSet = new PhotoIdSet();
 
 
 	/**
@@ -98,6 +114,7 @@ public abstract class Client implements Serializable, Persistent {
 		if (previousClient != null) {
 			this.setLanguage(previousClient.getLanguage());
 			this.setPraisedPhotoIds(previousClient.getPraisedPhotoIds());
+			this.lastPraisedPhotoId = previousClient.lastPraisedPhotoId;
 			this.setPhotoSize(previousClient.getPhotoSize());
 		}
 
@@ -196,17 +213,48 @@ public abstract class Client implements Serializable, Persistent {
 	/**
 	 *
 	 */
-	public void incWriteCount() {
+	public synchronized void incWriteCount() {
 		writeCount++;
+		writeVersion = DataObject.getNextWriteVersion();
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Changes whenever the client is changed, e.g. its nickname, and is not reset when the client is written.
+	 */
+	public synchronized long getWriteVersion() {
+		if (writeVersion == 0) {
+			writeVersion = DataObject.getNextWriteVersion();
+		}
+		return writeVersion;
 	}
 
 	/**
 	 *
 	 */
-	public void resetWriteCount() {
+	public synchronized void resetWriteCount() {
 		writeCount = 0;
 	}
 
+	/**
+	 *
+	 */
+	public synchronized int getWriteCount() {
+		return writeCount;
+	}
+
+	/**
+	 *
+	 */
+	public synchronized boolean resetWriteCount(int writeCount) {
+		if (this.writeCount != writeCount) {
+			return false;
+		}
+		this.writeCount = 0;
+		return true;
+	}
+
 	/**
 	 *
 	 */
@@ -274,69 +322,101 @@ public abstract class Client implements Serializable, Persistent {
 	/**
 	 * @methodtype get
 	 */
-	public List<PhotoId> getPraisedPhotoIds() {
-		return praisedPhotoIds;
+	public PhotoIdSet getPraisedPhotoIds() {
+		return praisedPhotoIdSet;
 	}
 
 	/**
 	 * @methodtype set
 	 */
-	public void setPraisedPhotoIds(List<PhotoId> praisedPhotoIds) {
-		this.praisedPhotoIds = praisedPhotoIds;
+	public void setPraisedPhotoIds(PhotoIdSet praisedPhotoIds) {
+		this.praisedPhotoIdSet = praisedPhotoIds;
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void addPraisedPhotoId(PhotoId ratedPhotoId) {
-		praisedPhotoIds.add(ratedPhotoId);
+		praisedPhotoIdSet.add(ratedPhotoId);
+		lastPraisedPhotoId = ratedPhotoId;
 		removeSkippedPhotoId(ratedPhotoId);
 	}
 
 	/**
 	 * @methodtype get
+	 *
+	 * The set does not keep the order of praising, so if the last praised photo is no longer visible, the visible
+	 * praised photo with the highest id is returned instead.
 	 */
 	public Photo getLastPraisedPhoto() {
-		int indexOfLastPraisedPhoto = praisedPhotoIds.size() - 1;
-		Photo result = null;
-		while (indexOfLastPraisedPhoto >= 0 && result == null) {
-			PhotoId lastPraisedPhotoId = praisedPhotoIds.get(indexOfLastPraisedPhoto);
-			result = PhotoManager.getInstance().getPhoto(lastPraisedPhotoId);
-			if (result != null && !result.isVisible()) {
-				result = null;
-				indexOfLastPraisedPhoto--;
-			}
+		Photo result = getVisiblePhoto(lastPraisedPhotoId);
+		List<PhotoId> ids = praisedPhotoIdSet.asList();
+		for (int i = ids.size() - 1; i >= 0 && result == null; i--) {
+			result = getVisiblePhoto(ids.get(i));
 		}
 		return result;
 	}
 
+	/**
+	 * @methodtype conversion
+	 *
+	 * Reads the praised photo ids of clients stored before the ids were kept in a set.
+	 */
+	protected void importPraisedPhotoIds(@AlsoLoad("praisedPhotoIds") List<PhotoId> praisedPhotoIds) {
+		for (PhotoId photoId : praisedPhotoIds) {
+			praisedPhotoIdSet.add(photoId);
+			lastPraisedPhotoId = photoId;
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected Photo getVisiblePhoto(PhotoId photoId) {
+		if (photoId == null) {
+			return null;
+		}
+
+		Photo result = PhotoManager.getInstance().getPhoto(photoId);
+		return (result != null && result.isVisible()) ? result : null;
+	}
+
 	/**
 	 * @methodtype get
 	 */
-	public List<PhotoId> getSkippedPhotoIds() {
-		return skippedPhotoIds;
+	public PhotoIdSet getSkippedPhotoIds() {
+		return skippedPhotoIdSet;
 	}
 
 	/**
 	 * @methodtype get
 	 */
-	public void setSkippedPhotoIds(List<PhotoId> skippedPhotoIds) {
-		this.skippedPhotoIds = skippedPhotoIds;
+	public void setSkippedPhotoIds(PhotoIdSet skippedPhotoIds) {
+		this.skippedPhotoIdSet = skippedPhotoIds;
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void removeSkippedPhotoId(PhotoId skippedPhotoIdToRemove) {
-		skippedPhotoIds.remove(skippedPhotoIdToRemove);
+		skippedPhotoIdSet.remove(skippedPhotoIdToRemove);
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void addSkippedPhotoId(PhotoId skippedPhotoId) {
-		if (!skippedPhotoIds.contains(skippedPhotoId)) {
-			skippedPhotoIds.add(skippedPhotoId);
+		skippedPhotoIdSet.add(skippedPhotoId);
+	}
+
+	/**
+	 * @methodtype conversion
+	 *
+	 * Reads the skipped photo ids of clients stored before the ids were kept in a set.
+	 */
+	protected void importSkippedPhotoIds(@AlsoLoad("skippedPhotoIds") List<PhotoId> skippedPhotoIds) {
+		for (PhotoId photoId : skippedPhotoIds) {
+			skippedPhotoIdSet.add(photoId);
 		}
 	}
 }
@@ -1,13 +1,12 @@
 package org.wahlzeit.model;
 
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.ObjectManager;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * Abstract super class for UserManager. Contains all members and methods that can be offered for all Clients.
@@ -16,7 +15,7 @@ import java.util.logging.Logger;
  */
 public abstract class ClientManager extends ObjectManager {
 
-	private static final Logger log = Logger.getLogger(ClientManager.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(ClientManager.class);
 
 	/**
 	 *
@@ -73,7 +72,7 @@ public abstract class ClientManager extends ObjectManager {
 		idClientMap.put(client.getId(), client);
 		writeObject(client);
 		listOfUsedNicknames.add(client.getNickName());
-		log.config(LogBuilder.createSystemMessage().addParameter("Added new user", client.getId()).toString());
+		log.config(lb -> lb.addParameter("Added new user", client.getId()));
 	}
 
 	/**
@@ -126,9 +125,9 @@ public abstract class ClientManager extends ObjectManager {
 	public void doAddHttpSessionIdToClientMapping(String httpSessionId, Client client) {
 		httpSessionIdToClientMap.put(httpSessionId, client);
 		client.setHttpSessionId(httpSessionId);
-		log.config(LogBuilder.createSystemMessage().
+		log.config(lb -> lb.
 				addParameter("client name", client.getNickName()).
-				addParameter("httpSessionId", httpSessionId).toString());
+				addParameter("httpSessionId", httpSessionId));
 	}
 
 
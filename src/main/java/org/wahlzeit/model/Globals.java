@@ -23,6 +23,7 @@ public class Globals extends DataObject {
 	private Long lastUserId;
 	private int lastSessionId;
 	private int lastCaseId;
+	private boolean arePhotosKeyedById;
 
 	public Globals() {
 		id = DEAULT_ID;
@@ -45,6 +46,10 @@ public class Globals extends DataObject {
 		return lastSessionId;
 	}
 
+	public boolean getArePhotosKeyedById() {
+		return arePhotosKeyedById;
+	}
+
 	public void setLastPhotoId(int lastPhotoId) {
 		this.lastPhotoId = lastPhotoId;
 		incWriteCount();
@@ -65,6 +70,11 @@ public class Globals extends DataObject {
 		incWriteCount();
 	}
 
+	public void setArePhotosKeyedById(boolean arePhotosKeyedById) {
+		this.arePhotosKeyedById = arePhotosKeyedById;
+		incWriteCount();
+	}
+
 	public String asString() {
 		StringBuilder builder = new StringBuilder();
 		builder.append("Globals with ID ").append(id);
@@ -72,7 +82,8 @@ public class Globals extends DataObject {
 		builder.append("last user ID: ").append(lastUserId);
 		builder.append(", last case ID: ").append(lastCaseId);
 		builder.append(", last photo ID: ").append(lastPhotoId);
-		builder.append(", and last session ID: ").append(lastSessionId);
+		builder.append(", last session ID: ").append(lastSessionId);
+		builder.append(", and photos keyed by ID: ").append(arePhotosKeyedById);
 		return builder.toString();
 	}
 }
@@ -49,6 +49,7 @@ public class GlobalsManager extends ObjectManager {
 		PhotoId.setCurrentIdFromInt(globals.getLastPhotoId());
 		Case.setLastCaseId(new CaseId(globals.getLastCaseId()));
 		AbstractServlet.setLastSessionId(globals.getLastSessionId());
+		PhotoManager.setArePhotosKeyedById(globals.getArePhotosKeyedById());
 	}
 
 	/**
@@ -91,6 +92,7 @@ public class GlobalsManager extends ObjectManager {
 				globals.setLastPhotoId(0);
 				globals.setLastCaseId(0);
 				globals.setLastSessionId(0);
+				globals.setArePhotosKeyedById(true); // there are no photos of earlier versions
 				ofy().save().entity(globals).now();
 				return null;
 			}
@@ -106,6 +108,7 @@ public class GlobalsManager extends ObjectManager {
 		globals.setLastPhotoId(PhotoId.getCurrentIdAsInt());
 		globals.setLastCaseId(Case.getLastCaseId().asInt());
 		globals.setLastSessionId(AbstractServlet.getLastSessionId());
+		globals.setArePhotosKeyedById(PhotoManager.getArePhotosKeyedById());
 		log.info(globals.asString());
 
 		ObjectifyService.run(new Work<Void>() {
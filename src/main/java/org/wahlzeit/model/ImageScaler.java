@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+
+import java.io.IOException;
+
+/**
+ * An image scaler creates the smaller renditions of an uploaded image. The scaler in use is chosen by the system
+ * property "org.wahlzeit.imageScaler".
+ *
+ * @see PhotoUtil#getImageScaler()
+ */
+public interface ImageScaler {
+
+	/**
+	 * Returns a new image of exactly the given width and height; the source image is not changed.
+	 * @methodtype factory
+	 */
+	Image scale(Image source, int width, int height) throws IOException;
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A photo cache that evicts the least recently used photo first.
+ */
+public class LruPhotoCache extends PhotoCache {
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	/**
+	 * Access-ordered, i.e. the least recently used photo comes first
+	 */
+	protected Map<PhotoId, Photo> photos = new LinkedHashMap<PhotoId, Photo>(16, 0.75f, true);
+
+	/**
+	 *
+	 */
+	public LruPhotoCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 *
+	 */
+	public LruPhotoCache(int maxSize) {
+		super(maxSize);
+	}
+
+	/**
+	 * @methodtype get
+	 * @methodproperties primitive
+	 */
+	@Override
+	protected Photo doGet(PhotoId id) {
+		return photos.get(id);
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperties primitive
+	 */
+	@Override
+	protected void doPut(Photo photo) {
+		photos.put(photo.getId(), photo);
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperties primitive
+	 */
+	@Override
+	protected void doRemove(PhotoId id) {
+		photos.remove(id);
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 * @methodproperties primitive
+	 */
+	@Override
+	protected boolean doContains(PhotoId id) {
+		return photos.containsKey(id);
+	}
+
+	/**
+	 * @methodtype get
+	 * @methodproperties primitive
+	 */
+	@Override
+	protected Collection<Photo> doGetPhotos() {
+		return photos.values();
+	}
+
+	/**
+	 * @methodtype get
+	 * @methodproperties primitive
+	 */
+	@Override
+	protected Iterator<Photo> doGetEvictionCandidates() {
+		return photos.values().iterator();
+	}
+
+}
@@ -32,7 +32,10 @@ import org.wahlzeit.services.EmailAddress;
 import org.wahlzeit.services.Language;
 import org.wahlzeit.services.ObjectManager;
 
+import java.io.IOException;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A photo represents a user-provided (uploaded) photo.
@@ -80,6 +83,14 @@ public class Photo extends DataObject {
 	 */
 	@Ignore
 	transient protected Map<PhotoSize, Image> images = new ArrayMap<PhotoSize, Image>();
+
+	/**
+	 * Images of a persisted photo are loaded on first access; sizes that have not been tried yet are remembered
+	 */
+	@Ignore
+	transient protected PhotoImageLoader imageLoader = null;
+	@Ignore
+	transient protected Set<PhotoSize> unloadedSizes = null;
 	
 	/**
 	 *
@@ -131,6 +142,9 @@ public class Photo extends DataObject {
 	 *
 	 */
 	//TODO: change it to a single long
+	/**
+	 * New photos use their PhotoId as datastore id, so that they can be loaded by key
+	 */
 	@Id
 	Long idLong;
 	@Parent
@@ -141,6 +155,7 @@ public class Photo extends DataObject {
 	 */
 	public Photo() {
 		id = PhotoId.getNextId();
+		idLong = (long) id.asInt();
 		incWriteCount();
 	}
 
@@ -149,24 +164,74 @@ public class Photo extends DataObject {
 	 */
 	public Photo(PhotoId myId) {
 		id = myId;
+		idLong = (long) myId.asInt();
 
 		incWriteCount();
 	}
 
 	/**
 	 * @methodtype get
+	 *
+	 * Loads the image through the image loader when a size is accessed for the first time. The storage is read without
+	 * holding the lock of the photo; a size counts as tried only once it has been read without an error.
 	 */
 	public Image getImage(PhotoSize photoSize) {
+		PhotoImageLoader loader;
+		synchronized (this) {
+			Image result = images.get(photoSize);
+			if (result != null || imageLoader == null || !unloadedSizes.contains(photoSize)) {
+				return result;
+			}
+			loader = imageLoader;
+		}
+
+		Image result;
+		try {
+			result = loader.loadImage(this, photoSize);
+		} catch (IOException ex) {
+			return null; // logged by the loader, tried again on the next access
+		}
+
+		synchronized (this) {
+			Image loaded = images.get(photoSize);
+			if (loaded != null) {
+				return loaded; // set or loaded by another thread in the meantime
+			}
+			if (result != null) {
+				images.put(photoSize, result);
+			}
+			unloadedSizes.remove(photoSize);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the image only if it is in memory already, i.e. never triggers the image loader.
+	 */
+	public synchronized Image getLoadedImage(PhotoSize photoSize) {
 		return images.get(photoSize);
 	}
 
 	/**
 	 * @methodtype set
 	 */
-	public void setImage(PhotoSize photoSize, Image image) {
+	public synchronized void setImage(PhotoSize photoSize, Image image) {
 		this.images.put(photoSize, image);
 	}
 
+	/**
+	 * @methodtype set
+	 *
+	 * All sizes that are not in memory yet are loaded lazily through the given loader.
+	 */
+	public synchronized void setImageLoader(PhotoImageLoader loader) {
+		imageLoader = loader;
+		unloadedSizes = EnumSet.allOf(PhotoSize.class);
+		unloadedSizes.removeAll(images.keySet());
+	}
+
 	/**
 	 * @methodtype get
 	 */
@@ -181,6 +246,28 @@ public class Photo extends DataObject {
 		return id;
 	}
 
+	/**
+	 * @methodtype boolean-query
+	 *
+	 * Photos stored by earlier versions have a datastore generated id and cannot be loaded by their PhotoId.
+	 */
+	public boolean hasIdAsKey() {
+		return idLong != null && idLong == id.asInt();
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Makes the PhotoId the datastore id of a photo stored by an earlier version and returns the old datastore id. The
+	 * photo has to be saved, and the entity with the old id deleted, by the caller.
+	 */
+	public Long useIdAsKey() {
+		Long result = idLong;
+		idLong = (long) id.asInt();
+		incWriteCount();
+		return result;
+	}
+
 	/**
 	 * @methodtype get
 	 */
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A photo cache holds at most maxSize photos in memory. When it is full, the eviction order of the concrete cache
+ * decides which photos are dropped; photos that have not been persisted yet are pinned and never evicted. Evicted
+ * photos are reloaded on demand by the PhotoManager. All public methods are thread-safe.
+ */
+public abstract class PhotoCache {
+
+	/**
+	 *
+	 */
+	protected final int maxSize;
+
+	/**
+	 * Statistics, only changed while holding the lock of this cache
+	 */
+	protected long noHits = 0;
+	protected long noMisses = 0;
+	protected long noEvictions = 0;
+
+	/**
+	 *
+	 */
+	protected PhotoEvictionListener evictionListener = null;
+
+	/**
+	 *
+	 */
+	protected PhotoCache(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("photo cache needs room for at least one photo");
+		}
+
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public synchronized void setEvictionListener(PhotoEvictionListener listener) {
+		evictionListener = listener;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized Photo get(PhotoId id) {
+		Photo result = doGet(id);
+		if (result != null) {
+			noHits++;
+		} else {
+			noMisses++;
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Adds the photo to the cache, possibly evicting other photos.
+	 */
+	public synchronized void put(Photo photo) {
+		doPut(photo);
+		evict();
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Adds the photo to the cache unless a photo with the same id is cached already, and returns the cached photo. Two
+	 * threads that load the same photo after a miss thus end up with the same instance, so neither one's changes go to
+	 * an instance that is no longer cached.
+	 */
+	public synchronized Photo putIfAbsent(Photo photo) {
+		Photo result = doGet(photo.getId());
+		if (result == null) {
+			result = photo;
+			doPut(photo);
+			evict();
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized void remove(PhotoId id) {
+		doRemove(id);
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 *
+	 * Does not count as an access, i.e. neither changes the eviction order nor the statistics.
+	 */
+	public synchronized boolean contains(PhotoId id) {
+		return doContains(id);
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns a snapshot of the cached photos that can be iterated without holding the lock.
+	 */
+	public synchronized List<Photo> getPhotos() {
+		return new ArrayList<Photo>(doGetPhotos());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized int getSize() {
+		return doGetPhotos().size();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Evicts photos that were pinned when the cache last grew beyond maxSize, e.g. after they have been saved.
+	 */
+	public synchronized void trim() {
+		evict();
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Drops photos in eviction order until the cache fits, skipping pinned photos. If all photos are pinned, the
+	 * cache temporarily holds more than maxSize photos.
+	 */
+	protected void evict() {
+		int size = doGetPhotos().size();
+		for (Iterator<Photo> i = doGetEvictionCandidates(); size > maxSize && i.hasNext(); ) {
+			Photo candidate = i.next();
+			if (!isPinned(candidate)) {
+				i.remove();
+				size--;
+				noEvictions++;
+				if (evictionListener != null) {
+					evictionListener.photoEvicted(candidate);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 *
+	 * Photos with unsaved changes or unnotified praise stay in memory.
+	 */
+	protected boolean isPinned(Photo photo) {
+		return photo.isDirty() || photo.hasNewPraise();
+	}
+
+	/**
+	 * @methodtype get
+	 * @methodproperties primitive
+	 */
+	protected abstract Photo doGet(PhotoId id);
+
+	/**
+	 * @methodtype command
+	 * @methodproperties primitive
+	 */
+	protected abstract void doPut(Photo photo);
+
+	/**
+	 * @methodtype command
+	 * @methodproperties primitive
+	 */
+	protected abstract void doRemove(PhotoId id);
+
+	/**
+	 * @methodtype boolean-query
+	 * @methodproperties primitive
+	 */
+	protected abstract boolean doContains(PhotoId id);
+
+	/**
+	 * @methodtype get
+	 * @methodproperties primitive
+	 */
+	protected abstract Collection<Photo> doGetPhotos();
+
+	/**
+	 * @methodtype get
+	 * @methodproperties primitive
+	 *
+	 * Iterates over the cached photos, first eviction candidate first; remove() drops the current photo.
+	 */
+	protected abstract Iterator<Photo> doGetEvictionCandidates();
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoHits() {
+		return noHits;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoMisses() {
+		return noMisses;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoEvictions() {
+		return noEvictions;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public synchronized String asString() {
+		return "hits=" + noHits + ", misses=" + noMisses + ", evictions=" + noEvictions + ", size=" +
+				doGetPhotos().size() + "/" + maxSize;
+	}
+
+}
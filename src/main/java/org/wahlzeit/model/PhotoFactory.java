@@ -20,16 +20,17 @@
 
 package org.wahlzeit.model;
 
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
+import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.OfyService;
 
-import java.util.logging.Logger;
 
 /**
  * An Abstract Factory for creating photos and related objects.
  */
 public class PhotoFactory {
 
-	private static final Logger log = Logger.getLogger(PhotoFactory.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(PhotoFactory.class);
 	/**
 	 * Hidden singleton instance; needs to be initialized from the outside.
 	 */
@@ -54,7 +55,7 @@ public class PhotoFactory {
 	 */
 	public static synchronized PhotoFactory getInstance() {
 		if (instance == null) {
-			log.config(LogBuilder.createSystemMessage().addAction("setting generic PhotoFactory").toString());
+			log.config(lb -> lb.addAction("setting generic PhotoFactory"));
 			setInstance(new PhotoFactory());
 		}
 
@@ -87,21 +88,29 @@ public class PhotoFactory {
 	}
 
 	/**
-	 * Loads a photo. The Java object is loaded from the Google Datastore, the Images in all sizes are loaded from the
-	 * Google Cloud storage.
+	 * Loads a photo from the Google Datastore by its key, which is derived from the PhotoId. Returns null if there is no
+	 * such photo. The images are not loaded; this is up to the caller, e.g. the PhotoManager.
 	 */
 	public Photo loadPhoto(PhotoId id) {
-	   /* Photo result =
-                OfyService.ofy().load().type(Photo.class).ancestor(KeyFactory.createKey("Application", "Wahlzeit")).filter(Photo.ID, id).first().now();
-        for (PhotoSize size : PhotoSize.values()) {
-            GcsFilename gcsFilename = new GcsFilename("picturebucket", filename);
-
+		if (id == null || id.isNullId()) {
+			return null;
+		}
 
+		Photo result = OfyService.ofy().load().type(Photo.class).parent(ObjectManager.applicationRootKey).
+				id(id.asInt()).now();
+		if (result == null || !id.isEqual(result.getId())) {
+			return null;
+		}
 
-        }*/
-		return null;
+		return result;
 	}
 
+	/**
+	 * @methodtype factory
+	 */
+	public PhotoCache createPhotoCache() {
+		return new LruPhotoCache();
+	}
 
 	/**
 	 *
@@ -20,16 +20,14 @@
 
 package org.wahlzeit.model;
 
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
+import org.wahlzeit.utils.IntBitmap;
 import org.wahlzeit.utils.StringUtil;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
-import java.util.logging.Logger;
 
 /**
  * A class to specify a photo filter.
@@ -37,7 +35,7 @@ import java.util.logging.Logger;
  */
 public class PhotoFilter implements Serializable {
 
-	private static Logger log = Logger.getLogger(PhotoFilter.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(PhotoFilter.class);
 
 	/**
 	 *
@@ -54,9 +52,14 @@ public class PhotoFilter implements Serializable {
 	/**
 	 *
 	 */
-	protected List<PhotoId> displayablePhotoIds;
-	protected List<PhotoId> processedPhotoIds = new LinkedList<PhotoId>();
-	protected List<PhotoId> skippedPhotoIds = new LinkedList<PhotoId>();
+	protected PhotoIdSampler displayablePhotoIds = new PhotoIdSampler();
+	protected PhotoIdSet processedPhotoIds = new PhotoIdSet();
+	protected PhotoIdSet skippedPhotoIds = new PhotoIdSet();
+
+	/**
+	 * Version of the tag index the displayable photo ids were generated from, or -1 if they need to be generated
+	 */
+	protected long displayableVersion = -1;
 
 	/**
 	 *
@@ -83,7 +86,6 @@ public class PhotoFilter implements Serializable {
 	public void clear() {
 		setUserName("");
 		setTags(Tags.EMPTY_TAGS);
-		displayablePhotoIds.clear();
 		processedPhotoIds.clear();
 	}
 
@@ -140,47 +142,70 @@ public class PhotoFilter implements Serializable {
 	 * @methodtype command
 	 */
 	public void generateDisplayablePhotoIds() {
-		displayablePhotoIds = getFilteredPhotoIds();
+		long version = PhotoManager.getInstance().getPhotoTagIndex().getVersion();
+		displayablePhotoIds.clear();
+		displayablePhotoIds.addAll(getFilteredPhotoIds());
+		displayableVersion = version;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Generates the displayable photo ids only if the filter or the photos have changed since they were generated.
+	 */
+	public void updateDisplayablePhotoIds() {
+		if (displayableVersion != PhotoManager.getInstance().getPhotoTagIndex().getVersion()) {
+			generateDisplayablePhotoIds();
+		}
 	}
 
 	/**
 	 * Get a random photo that has not been rated. If possible avoid skipped photos.
 	 */
 	public PhotoId getRandomDisplayablePhotoId() {
-		if (!displayablePhotoIds.isEmpty()) {
-			int size = displayablePhotoIds.size();
-			int index = ((randomNumber.nextInt() % size) + size) / 2;
-			return displayablePhotoIds.get(index);
-		} else {
-			return PhotoId.NULL_ID;
+		if (displayablePhotoIds.isEmpty()) {
+			displayablePhotoIds.addAll(skippedPhotoIds.asList());
 		}
+		return displayablePhotoIds.getRandom(randomNumber);
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Removes a photo that turned out not to be displayable, e.g. because it is no longer visible.
+	 */
+	public void removeDisplayablePhotoId(PhotoId photoId) {
+		displayablePhotoIds.remove(photoId);
+		skippedPhotoIds.remove(photoId);
 	}
 
 	/**
 	 *
 	 */
 	public List<PhotoId> getDisplayablePhotoIds() {
-		return displayablePhotoIds;
+		return displayablePhotoIds.asList();
 	}
 
 	/**
 	 *
 	 */
 	public void setDisplayablePhotoIds(List<PhotoId> newPhotoIds) {
-		displayablePhotoIds = newPhotoIds;
+		displayablePhotoIds.clear();
+		displayablePhotoIds.addAll(newPhotoIds);
 	}
 
 	/**
 	 *
 	 */
 	public void resetDisplayablePhotoIds() {
-		displayablePhotoIds = new ArrayList<PhotoId>();
+		displayablePhotoIds.clear();
+		displayableVersion = -1;
 	}
 
 	/**
 	 *
 	 */
-	public List<PhotoId> getProcessedPhotoIds() {
+	public PhotoIdSet getProcessedPhotoIds() {
 		return processedPhotoIds;
 	}
 
@@ -188,10 +213,6 @@ public class PhotoFilter implements Serializable {
 	 *
 	 */
 	public boolean isProcessedPhotoId(PhotoId photoId) {
-		log.info("photoId: " + photoId.asString());
-		for (PhotoId id : processedPhotoIds) {
-			log.info("Processed id: " + id.asString());
-		}
 		return processedPhotoIds.contains(photoId);
 	}
 
@@ -202,23 +223,21 @@ public class PhotoFilter implements Serializable {
 		PhotoId photoId = photo.getId();
 		processedPhotoIds.add(photoId);
 		skippedPhotoIds.remove(photoId);
-		if (displayablePhotoIds != null) {
-			displayablePhotoIds.remove(photoId);
-		}
+		displayablePhotoIds.remove(photoId);
 	}
 
 
 	/**
 	 * @methodtype get
 	 */
-	public List<PhotoId> getSkippedPhotoIds() {
+	public PhotoIdSet getSkippedPhotoIds() {
 		return skippedPhotoIds;
 	}
 
 	/**
 	 * @methodtype set
 	 */
-	public void setSkippedPhotoIds(List<PhotoId> skippedPhotoIds) {
+	public void setSkippedPhotoIds(PhotoIdSet skippedPhotoIds) {
 		this.skippedPhotoIds = skippedPhotoIds;
 	}
 
@@ -226,53 +245,40 @@ public class PhotoFilter implements Serializable {
 	 * @methodtype set
 	 */
 	public void addSkippedPhotoId(PhotoId skippedPhotoId) {
-		if (!skippedPhotoIds.contains(skippedPhotoId)) {
-			skippedPhotoIds.add(skippedPhotoId);
-		}
+		skippedPhotoIds.add(skippedPhotoId);
+		displayablePhotoIds.remove(skippedPhotoId);
 	}
 
 	/**
-	 *
+	 * Looks up the visible photos that match any filter condition in the tag index and removes the processed and
+	 * skipped ones; only bitmap operations are needed, no photo is looked at.
 	 */
 	protected List<PhotoId> getFilteredPhotoIds() {
-		// get all tags that match the filter conditions
-		List<PhotoId> result = new LinkedList<PhotoId>();
-		int noFilterConditions = getFilterConditions().size();
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Number of filter conditions", String.valueOf(noFilterConditions)).toString());
-
-		Collection<PhotoId> candidates;
-		if (noFilterConditions == 0) {
-			candidates = PhotoManager.getInstance().getPhotoCache().keySet();
+		List<String> filterConditions = getFilterConditions();
+		log.config(lb -> lb.
+				addParameter("Number of filter conditions", filterConditions.size()));
+
+		PhotoTagIndex photoTagIndex = PhotoManager.getInstance().getPhotoTagIndex();
+		IntBitmap candidates;
+		if (filterConditions.isEmpty()) {
+			candidates = photoTagIndex.getAllPhotoIds();
 		} else {
-			List<Tag> tags = new LinkedList<Tag>();
-			candidates = new LinkedList<PhotoId>();
-			for (String condition : getFilterConditions()) {
-				PhotoManager.getInstance().addTagsThatMatchCondition(tags, condition);
-			}
-			// get the list of all photo ids that correspond to the tags
-			for (Tag tag : tags) {
-				candidates.add(PhotoId.getIdFromString(tag.getPhotoId()));
-			}
+			candidates = photoTagIndex.getPhotoIdsWithAnyTag(filterConditions);
 		}
+		IntBitmap visiblePhotoIds = photoTagIndex.getVisiblePhotoIds();
+		candidates = candidates.and(visiblePhotoIds).andNot(processedPhotoIds.asBitmap());
 
-		int newPhotos = 0;
-		for (PhotoId candidateId : candidates) {
-			Photo photoCandidate = PhotoManager.getInstance().getPhoto(candidateId);
-			if (!processedPhotoIds.contains(candidateId) && !skippedPhotoIds.contains(candidateId) &&
-					photoCandidate.isVisible()) {
-				result.add(candidateId);
-				++newPhotos;
-			}
-		}
-		int skippedPhotos = skippedPhotoIds.size();
-		if (newPhotos == 0 && skippedPhotos > 0) {
-			result.addAll(skippedPhotoIds);
-			newPhotos = skippedPhotos;
+		IntBitmap unskippedCandidates = candidates.andNot(skippedPhotoIds.asBitmap());
+		if (!unskippedCandidates.isEmpty()) {
+			candidates = unskippedCandidates;
+		} else {
+			candidates = skippedPhotoIds.asBitmap().and(visiblePhotoIds);
 		}
 
-		log.config(LogBuilder.createSystemMessage().addParameter("Number of photos to show", newPhotos)
-				.toString());
+		List<PhotoId> result = new ArrayList<PhotoId>(candidates.getCardinality());
+		candidates.forEach(id -> result.add(PhotoId.getIdFromInt(id)));
+
+		log.config(lb -> lb.addParameter("Number of photos to show", result.size()));
 
 		return result;
 	}
@@ -21,7 +21,9 @@
 package org.wahlzeit.model;
 
 import java.io.Serializable;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A photo id identifies a photo with a unique number.
@@ -33,12 +35,13 @@ public class PhotoId implements Serializable {
 	/**
 	 * 0 is never returned from nextValue; first value is 1
 	 */
-	protected static int currentId = 0;
+	protected static final AtomicInteger currentId = new AtomicInteger(0);
 
 	/**
-	 *
+	 * Size of the first segment of the registry; every further segment is twice as large as the one before
 	 */
-	public static final int BUFFER_SIZE_INCREMENT = 64;
+	public static final int FIRST_SEGMENT_SIZE = 64;
+	protected static final int FIRST_SEGMENT_BIT = Integer.numberOfTrailingZeros(FIRST_SEGMENT_SIZE);
 
 	/**
 	 *
@@ -46,9 +49,12 @@ public class PhotoId implements Serializable {
 	public static final PhotoId NULL_ID = new PhotoId(0);
 
 	/**
-	 *
+	 * Registry of the ids handed out so far, so that there is only one PhotoId object per number. Segments are
+	 * created on demand and published with compare-and-set, as are the ids in them; existing segments never move, so
+	 * neither lookups nor growth need a lock.
 	 */
-	protected static PhotoId[] ids = new PhotoId[BUFFER_SIZE_INCREMENT];
+	protected static final AtomicReferenceArray<AtomicReferenceArray<PhotoId>> segments =
+			new AtomicReferenceArray<AtomicReferenceArray<PhotoId>>(Integer.SIZE - FIRST_SEGMENT_BIT);
 
 	/**
 	 * What a hack :-)
@@ -56,9 +62,9 @@ public class PhotoId implements Serializable {
 	public static final int ID_START = getFromString("x1abz") + 1;
 
 	/**
-	 *
+	 * Longest string getFromInt returns: "x" and the base 36 digits of a positive int
 	 */
-	protected static Random randomNumber = new Random(System.currentTimeMillis());
+	protected static final int MAX_STRING_LENGTH = 1 + 6;
 
 	private PhotoId() {
 		// do nothing, necessary for Objectify to load PhotoIds
@@ -68,54 +74,67 @@ public class PhotoId implements Serializable {
 	 *
 	 */
 	public static int getCurrentIdAsInt() {
-		return currentId;
+		return currentId.get();
 	}
 
 	/**
-	 *
+	 * Ids that have been handed out before stay registered, they are derived from their number only.
 	 */
-	public static synchronized void setCurrentIdFromInt(int id) {
-		currentId = id;
-		ids = new PhotoId[currentId + BUFFER_SIZE_INCREMENT];
-		ids[0] = NULL_ID;
+	public static void setCurrentIdFromInt(int id) {
+		currentId.set(id);
 	}
 
 	/**
 	 *
 	 */
-	public static synchronized int getNextIdAsInt() {
-		currentId += 1;
-		if (currentId >= ids.length) {
-			PhotoId[] nids = new PhotoId[currentId + BUFFER_SIZE_INCREMENT];
-			System.arraycopy(ids, 0, nids, 0, currentId);
-			ids = nids;
-		}
-		return currentId;
+	public static int getNextIdAsInt() {
+		return currentId.incrementAndGet();
 	}
 
 	/**
 	 *
 	 */
 	public static PhotoId getIdFromInt(int id) {
-		if ((id < 0) || (id > currentId)) {
+		if ((id <= 0) || (id > currentId.get())) {
 			return NULL_ID;
 		}
 
-		// @FIXME http://en.wikipedia.org/wiki/Double-checked_locking
-		PhotoId result = ids[id];
+		AtomicReferenceArray<PhotoId> segment = getSegment(id);
+		int offset = getOffset(id);
+		PhotoId result = segment.get(offset);
 		if (result == null) {
-			synchronized (ids) {
-				result = ids[id];
-				if (result == null) {
-					result = new PhotoId(id);
-					ids[id] = result;
-				}
-			}
+			segment.compareAndSet(offset, null, new PhotoId(id));
+			result = segment.get(offset);
 		}
 
 		return result;
 	}
 
+	/**
+	 * @methodtype get
+	 *
+	 * Segment k holds the ids from FIRST_SEGMENT_SIZE * (2^k - 1) on, i.e. the offset of id + FIRST_SEGMENT_SIZE
+	 * after its highest bit.
+	 */
+	protected static AtomicReferenceArray<PhotoId> getSegment(int id) {
+		int highestBit = 31 - Integer.numberOfLeadingZeros(id + FIRST_SEGMENT_SIZE);
+		int index = highestBit - FIRST_SEGMENT_BIT;
+		AtomicReferenceArray<PhotoId> result = segments.get(index);
+		if (result == null) {
+			segments.compareAndSet(index, null, new AtomicReferenceArray<PhotoId>(1 << highestBit));
+			result = segments.get(index);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected static int getOffset(int id) {
+		int position = id + FIRST_SEGMENT_SIZE;
+		return position - Integer.highestOneBit(position);
+	}
+
 	/**
 	 *
 	 */
@@ -135,10 +154,10 @@ public class PhotoId implements Serializable {
 	 */
 	public static PhotoId getRandomId() {
 		int max = getCurrentIdAsInt() - 1;
-		int id = randomNumber.nextInt();
-		id = (id == Integer.MIN_VALUE) ? id++ : id;
-		id = (Math.abs(id) % max) + 1;
-		return getIdFromInt(id);
+		if (max <= 0) {
+			return NULL_ID;
+		}
+		return getIdFromInt(ThreadLocalRandom.current().nextInt(max) + 1);
 	}
 
 	/**
@@ -208,46 +227,46 @@ public class PhotoId implements Serializable {
 	 *
 	 */
 	public static String getFromInt(int id) {
-		StringBuffer result = new StringBuffer(10);
+		char[] result = new char[MAX_STRING_LENGTH];
+		int start = result.length;
 
 		id += ID_START;
 		for (; id > 0; id = id / 36) {
-			char letterOrDigit;
-			int modulus = id % 36;
-			if (modulus < 10) {
-				letterOrDigit = (char) ((int) '0' + modulus);
-			} else {
-				letterOrDigit = (char) ((int) 'a' - 10 + modulus);
-			}
-			result.insert(0, letterOrDigit);
-
+			result[--start] = Character.forDigit(id % 36, 36);
 		}
+		result[--start] = 'x';
 
-		return "x" + result.toString();
+		return new String(result, start, result.length - start);
 	}
 
 	/**
-	 *
+	 * Returns 0 if the value is no valid id string.
 	 */
 	public static int getFromString(String value) {
-		int result = 0;
+		if ((value == null) || (value.length() > MAX_STRING_LENGTH)) {
+			return 0;
+		}
+
+		long result = 0;
 		for (int i = 1; i < value.length(); i++) {
-			int temp = 0;
+			int digit;
 			char letterOrDigit = value.charAt(i);
-			if (letterOrDigit < 'a') {
-				temp = (int) letterOrDigit - '0';
+			if ((letterOrDigit >= '0') && (letterOrDigit <= '9')) {
+				digit = letterOrDigit - '0';
+			} else if ((letterOrDigit >= 'a') && (letterOrDigit <= 'z')) {
+				digit = 10 + letterOrDigit - 'a';
 			} else {
-				temp = 10 + (int) letterOrDigit - 'a';
+				return 0;
 			}
-			result = result * 36 + temp;
+			result = result * 36 + digit;
 		}
 
 		result -= ID_START;
-		if (result < 0) {
+		if ((result < 0) || (result > Integer.MAX_VALUE)) {
 			result = 0;
 		}
 
-		return result;
+		return (int) result;
 	}
 
 }
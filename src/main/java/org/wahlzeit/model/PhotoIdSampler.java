@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A set of photo ids to pick uniformly random photos from. The ids are kept in a dense array, and a map from each id to
+ * its slot in the array allows to remove an id by moving the last id into its slot. Adding, removing and picking an id
+ * take constant time. Only the ids are serialized; the map is rebuilt from them.
+ */
+public class PhotoIdSampler implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 *
+	 */
+	protected transient int[] ids = new int[16];
+	protected int size = 0;
+
+	/**
+	 * Slot in ids per id
+	 */
+	protected transient Map<Integer, Integer> slots = new HashMap<Integer, Integer>();
+
+	/**
+	 * @methodtype command
+	 *
+	 * Returns false if the id was contained already.
+	 */
+	public boolean add(PhotoId photoId) {
+		int id = photoId.asInt();
+		if (slots.containsKey(id)) {
+			return false;
+		}
+
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, 2 * size);
+		}
+		ids[size] = id;
+		slots.put(id, size);
+		size++;
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void addAll(List<PhotoId> photoIds) {
+		for (PhotoId photoId : photoIds) {
+			add(photoId);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Returns false if the id was not contained.
+	 */
+	public boolean remove(PhotoId photoId) {
+		Integer slot = slots.remove(photoId.asInt());
+		if (slot == null) {
+			return false;
+		}
+
+		size--;
+		if (slot != size) {
+			int lastId = ids[size];
+			ids[slot] = lastId;
+			slots.put(lastId, slot);
+		}
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clear() {
+		size = 0;
+		slots.clear();
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean contains(PhotoId photoId) {
+		return slots.containsKey(photoId.asInt());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns each contained id with the same probability, or the null id if there is none.
+	 */
+	public PhotoId getRandom(Random random) {
+		if (size == 0) {
+			return PhotoId.NULL_ID;
+		}
+		return PhotoId.getIdFromInt(ids[random.nextInt(size)]);
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public List<PhotoId> asList() {
+		List<PhotoId> result = new ArrayList<PhotoId>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(PhotoId.getIdFromInt(ids[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		for (int i = 0; i < size; i++) {
+			out.writeInt(ids[i]);
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		ids = new int[Math.max(16, size)];
+		slots = new HashMap<Integer, Integer>(2 * size);
+		for (int i = 0; i < size; i++) {
+			ids[i] = in.readInt();
+			slots.put(ids[i], i);
+		}
+	}
+
+}
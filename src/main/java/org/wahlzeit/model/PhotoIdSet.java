@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import org.wahlzeit.utils.IntBitmap;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A set of photo ids that keeps only their int values in a compressed bitmap. It is serialized as the gaps between
+ * the ascending ids in a variable length encoding, so that a set of ids that are close to each other takes about one
+ * byte per id in the session or the datastore.
+ */
+public class PhotoIdSet implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 *
+	 */
+	protected transient IntBitmap ids = new IntBitmap();
+
+	/**
+	 *
+	 */
+	public PhotoIdSet() {
+		// do nothing
+	}
+
+	/**
+	 *
+	 */
+	public PhotoIdSet(Collection<PhotoId> photoIds) {
+		addAll(photoIds);
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Returns false if the id was contained already.
+	 */
+	public boolean add(PhotoId photoId) {
+		return ids.add(photoId.asInt());
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void addAll(Collection<PhotoId> photoIds) {
+		for (PhotoId photoId : photoIds) {
+			add(photoId);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Returns false if the id was not contained.
+	 */
+	public boolean remove(PhotoId photoId) {
+		return ids.remove(photoId.asInt());
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clear() {
+		ids = new IntBitmap();
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean contains(PhotoId photoId) {
+		return ids.contains(photoId.asInt());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int size() {
+		return ids.getCardinality();
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEmpty() {
+		return ids.isEmpty();
+	}
+
+	/**
+	 * @methodtype conversion
+	 *
+	 * Returns the underlying bitmap for set operations; it must not be changed.
+	 */
+	public IntBitmap asBitmap() {
+		return ids;
+	}
+
+	/**
+	 * @methodtype conversion
+	 *
+	 * Returns the ids in ascending order.
+	 */
+	public List<PhotoId> asList() {
+		List<PhotoId> result = new ArrayList<PhotoId>(ids.getCardinality());
+		ids.forEach(id -> result.add(PhotoId.getIdFromInt(id)));
+		return result;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public String asString() {
+		return ids.asString();
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		int[] values = ids.toArray();
+		writeVarInt(out, values.length);
+		int previous = 0;
+		for (int value : values) {
+			writeVarInt(out, value - previous);
+			previous = value;
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		ids = new IntBitmap();
+		int noIds = readVarInt(in);
+		int previous = 0;
+		for (int i = 0; i < noIds; i++) {
+			previous += readVarInt(in);
+			ids.add(previous);
+		}
+	}
+
+	/**
+	 * @methodtype helper
+	 *
+	 * Writes seven bits per byte, lowest bits first; the high bit of a byte tells whether more bytes follow.
+	 */
+	protected static void writeVarInt(ObjectOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static int readVarInt(ObjectInputStream in) throws IOException {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("malformed photo id set");
+	}
+
+}
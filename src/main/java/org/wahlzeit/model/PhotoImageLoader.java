@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+
+import java.io.IOException;
+
+/**
+ * A photo image loader materializes the image of a photo in a given size when it is first accessed.
+ *
+ * @see Photo#setImageLoader(PhotoImageLoader)
+ */
+public interface PhotoImageLoader {
+
+	/**
+	 * Returns the stored image of the photo in the given size, or null if there is none. Throws an IOException if the
+	 * storage could not be read, so that the photo tries again on the next access.
+	 * @methodtype get
+	 */
+	Image loadImage(Photo photo, PhotoSize photoSize) throws IOException;
+
+}
@@ -22,51 +22,89 @@ package org.wahlzeit.model;
 
 import com.google.appengine.api.images.Image;
 import com.googlecode.objectify.ObjectifyService;
-import com.googlecode.objectify.Work;
+import com.googlecode.objectify.VoidWork;
 import org.wahlzeit.model.persistence.ImageStorage;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.OfyService;
 import org.wahlzeit.services.Persistent;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.Logger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * A photo manager provides access to and manages photos.
  */
-public class PhotoManager extends ObjectManager {
+public class PhotoManager extends ObjectManager implements PhotoImageLoader, PhotoEvictionListener {
 
 	/**
 	 *
 	 */
 	protected static final PhotoManager instance = new PhotoManager();
 
-	private static final Logger log = Logger.getLogger(PhotoManager.class.getName());
+	/**
+	 * Whether all photos in the datastore use their PhotoId as datastore id; kept in the Globals
+	 */
+	protected static volatile boolean arePhotosKeyedById = false;
+
+	private static final LazyLogger log = LazyLogger.getLogger(PhotoManager.class);
 
 	/**
-	 * In-memory cache for photos
+	 * Bounded in-memory cache for photos; evicted photos are reloaded on demand
 	 */
-	protected Map<PhotoId, Photo> photoCache = new HashMap<PhotoId, Photo>();
+	protected PhotoCache photoCache = null;
+
+	/**
+	 * Ids of all known photos, whether they are cached or not
+	 */
+	protected Set<PhotoId> photoIds = Collections.newSetFromMap(new ConcurrentHashMap<PhotoId, Boolean>());
 
 	/**
 	 *
 	 */
 	protected PhotoTagCollector photoTagCollector = null;
 
+	/**
+	 * Ids of the photos by their tags, for filtering without querying the datastore
+	 */
+	protected PhotoTagIndex photoTagIndex = new PhotoTagIndex();
+
+	/**
+	 * If set, the thumbnails of all photos are prefetched in the background after loading the photos
+	 */
+	protected Executor thumbPrefetchExecutor = null;
+
+	/**
+	 * Sizes of a cached photo that are known to be in the ImageStorage already
+	 */
+	protected Map<PhotoId, Set<PhotoSize>> storedImageSizes = new ConcurrentHashMap<PhotoId, Set<PhotoSize>>();
+
+	/**
+	 * Images that are being created on demand, keyed by photo id and size, so that each is created only once
+	 */
+	protected ConcurrentMap<String, FutureTask<Image>> pendingImages = new ConcurrentHashMap<String, FutureTask<Image>>();
+
 	/**
 	 *
 	 */
 	public PhotoManager() {
 		photoTagCollector = PhotoFactory.getInstance().createPhotoTagCollector();
+		photoCache = PhotoFactory.getInstance().createPhotoCache();
+		photoCache.setEvictionListener(this);
 	}
 
 	/**
@@ -76,6 +114,20 @@ public class PhotoManager extends ObjectManager {
 		return instance;
 	}
 
+	/**
+	 * @methodtype get
+	 */
+	public static boolean getArePhotosKeyedById() {
+		return arePhotosKeyedById;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public static void setArePhotosKeyedById(boolean value) {
+		arePhotosKeyedById = value;
+	}
+
 	/**
 	 *
 	 */
@@ -107,10 +159,13 @@ public class PhotoManager extends ObjectManager {
 
 		Photo result = doGetPhotoFromId(id);
 
-		if (result == null) {
+		if (result == null && photoIds.contains(id)) {
 			result = PhotoFactory.getInstance().loadPhoto(id);
 			if (result != null) {
-				doAddPhoto(result);
+				log.config(lb -> lb.
+						addParameter("Reload evicted Photo", id.asString()));
+				result.setImageLoader(this);
+				result = doAddPhotoIfAbsent(result);
 			}
 		}
 
@@ -130,7 +185,46 @@ public class PhotoManager extends ObjectManager {
 	 * @methodproperties primitive
 	 */
 	protected void doAddPhoto(Photo myPhoto) {
-		photoCache.put(myPhoto.getId(), myPhoto);
+		photoIds.add(myPhoto.getId());
+		photoCache.put(myPhoto);
+		indexTags(myPhoto);
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Adds a photo read from the datastore unless another thread has added the same photo in the meantime; returns
+	 * the photo that is cached.
+	 */
+	protected Photo doAddPhotoIfAbsent(Photo myPhoto) {
+		Photo result = photoCache.putIfAbsent(myPhoto);
+		if (result == myPhoto) {
+			photoIds.add(myPhoto.getId());
+			indexTags(myPhoto);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Updates the tag index with the current tags and visibility of the photo and returns the tags.
+	 */
+	protected Set<String> indexTags(Photo photo) {
+		Set<String> tags = new HashSet<String>();
+		photoTagCollector.collect(tags, photo);
+		photoTagIndex.update(photo.getId(), tags, photo.isVisible());
+		return tags;
+	}
+
+	/**
+	 * @methodtype set
+	 *
+	 * Changes the status of the photo and its visibility in the tag index right away, i.e. before the photo is saved.
+	 */
+	public void setPhotoStatus(Photo photo, PhotoStatus status) {
+		photo.setStatus(status);
+		photoTagIndex.setVisible(photo.getId(), photo.isVisible());
 	}
 
 	/**
@@ -141,40 +235,110 @@ public class PhotoManager extends ObjectManager {
 	}
 
 	/**
-	 * @methodtype init Loads all Photos from the Datastore and holds them in the cache
+	 * @methodtype init Loads the ids and tags of all Photos; the Photos themselves are loaded into the cache on demand
 	 */
 	public void init() {
+		if (!arePhotosKeyedById) {
+			migratePhotoKeys();
+			setArePhotosKeyedById(true);
+			GlobalsManager.getInstance().saveGlobals();
+		}
+
 		loadPhotos();
+		prefetchThumbs();
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Stores the photos of earlier versions, which have a datastore generated id, under their PhotoId, so that every
+	 * photo can be reloaded after it has been evicted from the cache. Executed once; old entities whose id has become
+	 * the new id of another photo are overwritten rather than deleted.
+	 */
+	protected void migratePhotoKeys() {
+		ObjectifyService.run(new VoidWork() {
+			@Override
+			public void vrun() {
+				List<Photo> photos = new ArrayList<Photo>();
+				readObjects(photos, Photo.class);
+
+				List<Photo> migratedPhotos = new ArrayList<Photo>();
+				Set<Long> oldIds = new HashSet<Long>();
+				Set<Long> newIds = new HashSet<Long>();
+				for (Photo photo : photos) {
+					newIds.add((long) photo.getId().asInt());
+					if (!photo.hasIdAsKey()) {
+						oldIds.add(photo.useIdAsKey());
+						migratedPhotos.add(photo);
+					}
+				}
+				oldIds.removeAll(newIds);
+
+				if (!migratedPhotos.isEmpty()) {
+					OfyService.ofy().save().entities(migratedPhotos).now();
+				}
+				if (!oldIds.isEmpty()) {
+					deleteObjects(Photo.class, oldIds);
+				}
+				for (Photo photo : migratedPhotos) {
+					photo.resetWriteCount();
+				}
+
+				log.info(lb -> lb.
+						addParameter("Photos keyed by PhotoId", migratedPhotos.size()));
+			}
+		});
 	}
 
 	/**
 	 * @methodtype command
 	 *
-	 * Load all persisted photos. Executed when Wahlzeit is restarted.
+	 * Loads the ids of all persisted photos with a keys-only query, and builds the tag index from the persisted tags.
+	 * Executed when Wahlzeit is restarted. Photos are loaded when they are first accessed; until then, they count as
+	 * visible.
 	 */
 	public void loadPhotos() {
-		Collection<Photo> existingPhotos = ObjectifyService.run(new Work<Collection<Photo>>() {
+		List<Long> ids = new ArrayList<Long>();
+		List<Tag> tags = new ArrayList<Tag>();
+		ObjectifyService.run(new VoidWork() {
 			@Override
-			public Collection<Photo> run() {
-				Collection<Photo> existingPhotos = new ArrayList<Photo>();
-				readObjects(existingPhotos, Photo.class);
-				return existingPhotos;
+			public void vrun() {
+				readObjectIds(ids, Photo.class);
+				readObjects(tags, Tag.class);
 			}
 		});
 
-		for (Photo photo : existingPhotos) {
-			if (!doHasPhoto(photo.getId())) {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("Load Photo with ID", photo.getIdAsString()).toString());
-				loadScaledImages(photo);
-				doAddPhoto(photo);
-			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("Already loaded Photo", photo.getIdAsString()).toString());
+		int maxId = 0;
+		for (Long id : ids) {
+			maxId = Math.max(maxId, id.intValue());
+		}
+		if (maxId > PhotoId.getCurrentIdAsInt()) {
+			PhotoId.setCurrentIdFromInt(maxId);
+		}
+
+		Map<PhotoId, Set<String>> tagsByPhotoId = new HashMap<PhotoId, Set<String>>();
+		for (Long id : ids) {
+			PhotoId photoId = PhotoId.getIdFromInt(id.intValue());
+			if (!photoId.isNullId()) {
+				tagsByPhotoId.put(photoId, new HashSet<String>());
+			}
+		}
+		for (Tag tag : tags) {
+			Set<String> photoTags = tagsByPhotoId.get(PhotoId.getIdFromString(tag.getPhotoId()));
+			if (photoTags != null) {
+				photoTags.add(tag.getText());
+			}
+		}
+
+		// the status is only known once a photo is loaded, see getVisiblePhoto()
+		for (Map.Entry<PhotoId, Set<String>> entry : tagsByPhotoId.entrySet()) {
+			if (photoIds.add(entry.getKey())) {
+				photoTagIndex.update(entry.getKey(), entry.getValue(), true);
 			}
 		}
 
-		log.info(LogBuilder.createSystemMessage().addMessage("All photos loaded.").toString());
+		log.info(lb -> lb.
+				addParameter("All photo ids loaded", tagsByPhotoId.size()));
 	}
 
 	/**
@@ -182,40 +346,87 @@ public class PhotoManager extends ObjectManager {
 	 * @methodproperty primitive
 	 */
 	protected boolean doHasPhoto(PhotoId id) {
-		return photoCache.containsKey(id);
+		return photoCache.contains(id);
 	}
 
 	/**
-	 * @methodtype command
+	 * @methodtype get
 	 *
-	 * Loads all scaled Images of this Photo from Google Cloud Storage
+	 * Reads one scaled Image of the Photo from the ImageStorage; called by the Photo on first access of that size.
 	 */
-	protected void loadScaledImages(Photo photo) {
+	@Override
+	public Image loadImage(Photo photo, PhotoSize photoSize) throws IOException {
 		String photoIdAsString = photo.getId().asString();
-		ImageStorage imageStorage = ImageStorage.getInstance();
+		log.config(lb -> lb.
+				addAction("loading image").
+				addParameter("image size", photoSize.asString()).
+				addParameter("photo ID", photoIdAsString));
+
+		try {
+			Serializable rawImage = ImageStorage.getInstance().readImage(photoIdAsString, photoSize.asInt());
+			if (rawImage instanceof Image) {
+				getStoredImageSizes(photo.getId()).add(photoSize);
+				return (Image) rawImage;
+			}
+		} catch (IOException e) {
+			log.warning(lb -> lb.
+					addParameter("size", photoSize.asString()).
+					addParameter("photo ID", photoIdAsString).
+					addException("Could not load image", e));
+			throw e;
+		}
 
-		for (PhotoSize photoSize : PhotoSize.values()) {
-			log.config(LogBuilder.createSystemMessage().
-					addAction("loading image").
-					addParameter("image size", photoSize.asString()).
-					addParameter("photo ID", photoIdAsString).toString());
-			if (imageStorage.doesImageExist(photoIdAsString, photoSize.asInt())) {
-				try {
-					Serializable rawImage = imageStorage.readImage(photoIdAsString, photoSize.asInt());
-					if (rawImage != null && rawImage instanceof Image) {
-						photo.setImage(photoSize, (Image) rawImage);
+		log.config(lb -> lb.
+				addParameter("Size does not exist", photoSize.asString()));
+		return null;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Forgets the stored sizes of an evicted photo; they are looked up again in the ImageStorage after reloading it.
+	 */
+	@Override
+	public void photoEvicted(Photo photo) {
+		storedImageSizes.remove(photo.getId());
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setThumbPrefetchExecutor(Executor executor) {
+		thumbPrefetchExecutor = executor;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Loads as many photos as fit into the cache, and their thumbnails, in the background, if a prefetch executor has
+	 * been set.
+	 */
+	protected void prefetchThumbs() {
+		Executor executor = thumbPrefetchExecutor;
+		if (executor == null) {
+			return;
+		}
+
+		final List<PhotoId> ids = new ArrayList<PhotoId>(photoIds);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				int noPrefetched = 0;
+				for (Iterator<PhotoId> i = ids.iterator(); i.hasNext() && noPrefetched < photoCache.getMaxSize(); ) {
+					Photo photo = getPhotoFromId(i.next());
+					if (photo != null) {
+						photo.getImage(PhotoSize.THUMB);
+						noPrefetched++;
 					}
-				} catch (IOException e) {
-					log.warning(LogBuilder.createSystemMessage().
-							addParameter("size", photoSize.asString()).
-							addParameter("photo ID", photoIdAsString).
-							addException("Could not load image although it exists", e).toString());
 				}
-			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("Size does not exist", photoSize.asString()).toString());
+				int noPrefetchedThumbs = noPrefetched;
+				log.config(lb -> lb.
+						addParameter("Prefetched thumbnails", noPrefetchedThumbs));
 			}
-		}
+		});
 	}
 
 	/**
@@ -231,8 +442,24 @@ public class PhotoManager extends ObjectManager {
 			Photo photo = (Photo) obj;
 			saveScaledImages(photo);
 			updateTags(photo);
-			UserManager userManager = UserManager.getInstance();
-			Client owner = userManager.getClientById(photo.getOwnerId());
+			saveOwner(photo);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Saves the owner of the photo, but only if it has changed since it was last saved.
+	 */
+	protected void saveOwner(Photo photo) {
+		String ownerId = photo.getOwnerId();
+		if (ownerId == null) {
+			return;
+		}
+
+		UserManager userManager = UserManager.getInstance();
+		Client owner = userManager.getClientById(ownerId);
+		if (owner != null && owner.isDirty()) {
 			userManager.saveClient(owner);
 		}
 	}
@@ -249,100 +476,284 @@ public class PhotoManager extends ObjectManager {
 	 * @methodtype command
 	 *
 	 * Persists all available sizes of the Photo. If one size exceeds the limit of the persistence layer, e.g. > 1MB for
-	 * the Datastore, it is simply not persisted.
+	 * the Datastore, it is simply not persisted. Sizes that are known to be stored already, or that are not in memory,
+	 * are skipped.
 	 */
 	protected void saveScaledImages(Photo photo) {
 		String photoIdAsString = photo.getId().asString();
 		ImageStorage imageStorage = ImageStorage.getInstance();
-		PhotoSize photoSize;
-		int it = 0;
-		boolean moreSizesExist = true;
-		do{
-			photoSize = PhotoSize.values()[it];
-			it++;
-			Image image = photo.getImage(photoSize);
-			if (image != null) {
-				try {
-					if (!imageStorage.doesImageExist(photoIdAsString, photoSize.asInt())) {
-						imageStorage.writeImage(image, photoIdAsString, photoSize.asInt());
-					}
-				} catch (Exception e) {
-					log.warning(LogBuilder.createSystemMessage().
-							addException("Problem when storing image", e).toString());
-					moreSizesExist = false;
+		Set<PhotoSize> storedSizes = getStoredImageSizes(photo.getId());
+
+		Set<PhotoSize> existingSizes = null;
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			if (storedSizes.contains(photoSize)) {
+				continue;
+			}
+
+			Image image = photo.getLoadedImage(photoSize);
+			if (image == null) {
+				log.config(lb -> lb.
+						addParameter("No image for size", photoSize.asString()));
+				continue;
+			}
+
+			try {
+				if (existingSizes == null) {
+					existingSizes = imageStorage.getExistingImageSizes(photoIdAsString);
+				}
+				if (!existingSizes.contains(photoSize)) {
+					imageStorage.writeImage(image, photoIdAsString, photoSize.asInt());
 				}
-			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("No image for size", photoSize.asString()).toString());
-				moreSizesExist = false;
+				storedSizes.add(photoSize);
+			} catch (Exception e) {
+				log.warning(lb -> lb.
+						addException("Problem when storing image", e));
+				break;
 			}
-		} while (it < PhotoSize.values().length && moreSizesExist);
+		}
 	}
 
 	/**
-	 * Removes all tags of the Photo (obj) in the datastore that have been removed by the user and adds all new tags of
-	 * the photo to the datastore.
+	 * @methodtype get
+	 */
+	protected Set<PhotoSize> getStoredImageSizes(PhotoId id) {
+		Set<PhotoSize> result = storedImageSizes.get(id);
+		if (result == null) {
+			result = Collections.synchronizedSet(EnumSet.noneOf(PhotoSize.class));
+			Set<PhotoSize> previous = storedImageSizes.putIfAbsent(id, result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the difference between the current tags of the Photo and the tags persisted in the datastore. Removed
+	 * tags are deleted from the datastore in one batch, new tags are inserted in one batch. The tag index is updated as
+	 * well.
 	 */
 	protected void updateTags(Photo photo) {
-		// delete all existing tags, for the case that some have been removed
-		deleteObjects(Tag.class, Tag.PHOTO_ID, photo.getId().asString());
+		Set<String> tags = indexTags(photo);
+
+		synchronized (photo) {
+			List<Long> removedTagIds = new ArrayList<Long>();
+			Set<String> persistedTags = readPersistedTags(photo, tags, removedTagIds);
+
+			List<Tag> addedTags = new ArrayList<Tag>();
+			for (String text : tags) {
+				if (!persistedTags.contains(text)) {
+					Tag tag = new Tag(text, photo.getId().asString());
+					log.config(lb -> lb.addParameter("Writing Tag", tag.asString()));
+					addedTags.add(tag);
+				}
+			}
 
-		// add all current tags to the datastore
-		Set<String> tags = new HashSet<String>();
-		photoTagCollector.collect(tags, photo);
-		for (Iterator<String> i = tags.iterator(); i.hasNext(); ) {
-			Tag tag = new Tag(i.next(), photo.getId().asString());
-			log.config(LogBuilder.createSystemMessage().addParameter("Writing Tag", tag.asString()).toString());
-			writeObject(tag);
+			if (!removedTagIds.isEmpty()) {
+				deleteObjects(Tag.class, removedTagIds);
+			}
+
+			if (!addedTags.isEmpty()) {
+				writeObjectsNow(addedTags);
+			}
 		}
 	}
 
+	/**
+	 * @methodtype get
+	 *
+	 * Reads the Tag rows of the photo from the datastore and returns the texts of those that are still current. The ids
+	 * of rows for removed tags, and of redundant rows for the same tag text, are added to removedTagIds.
+	 */
+	protected Set<String> readPersistedTags(Photo photo, Set<String> tags, List<Long> removedTagIds) {
+		Set<String> result = new HashSet<String>();
+		List<Tag> persistedTags = new ArrayList<Tag>();
+		readObjects(persistedTags, Tag.class, Tag.PHOTO_ID, photo.getId().asString());
+		for (Tag tag : persistedTags) {
+			if (!tags.contains(tag.getText()) || !result.add(tag.getText())) {
+				removedTagIds.add(tag.getId());
+			}
+		}
+		return result;
+	}
+
 	/**
 	 *
 	 */
 	public void savePhotos() throws IOException{
-		updateObjects(photoCache.values());
+		updateObjects(photoCache.getPhotos());
+		photoCache.trim();
+		log.info(lb -> lb.
+				addParameter("Photo cache", photoCache.asString()));
 	}
 
 	/**
 	 * @methodtype get
 	 */
-	public Map<PhotoId, Photo> getPhotoCache() {
+	public PhotoCache getPhotoCache() {
 		return photoCache;
 	}
 
+	/**
+	 * @methodtype get
+	 */
+	public PhotoTagIndex getPhotoTagIndex() {
+		return photoTagIndex;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the ids of all photos known to this manager, including photos that have been evicted from the cache.
+	 */
+	public Set<PhotoId> getPhotoIds() {
+		return Collections.unmodifiableSet(photoIds);
+	}
+
 	/**
 	 *
 	 */
 	public Set<Photo> findPhotosByOwner(String ownerName) {
-		Set<Photo> result = new HashSet<Photo>();
-		readObjects(result, Photo.class, Photo.OWNER_ID, ownerName);
+		Set<Photo> readPhotos = new HashSet<Photo>();
+		readObjects(readPhotos, Photo.class, Photo.OWNER_ID, ownerName);
 
-		for (Iterator<Photo> i = result.iterator(); i.hasNext(); ) {
-			doAddPhoto(i.next());
+		Set<Photo> result = new HashSet<Photo>();
+		for (Photo photo : readPhotos) {
+			photo.setImageLoader(this);
+			result.add(doAddPhotoIfAbsent(photo));
 		}
 
 		return result;
 	}
 
 	/**
+	 * @methodtype get
 	 *
+	 * Picks a random displayable photo of the filter. The displayable photos are only generated again if the photos
+	 * have changed; photos that have become invisible since, or whose status was not known before loading them, are
+	 * dropped when they are picked.
 	 */
 	public Photo getVisiblePhoto(PhotoFilter filter) {
-		filter.generateDisplayablePhotoIds();
-		return getPhotoFromId(filter.getRandomDisplayablePhotoId());
+		filter.updateDisplayablePhotoIds();
+		PhotoId id = filter.getRandomDisplayablePhotoId();
+		while (!id.isNullId()) {
+			Photo result = getPhotoFromId(id);
+			if (result != null && result.isVisible()) {
+				return result;
+			}
+			filter.removeDisplayablePhotoId(id);
+			id = filter.getRandomDisplayablePhotoId();
+		}
+		return null;
 	}
 
 	/**
 	 *
 	 */
 	public Photo createPhoto(String filename, Image uploadedImage) throws Exception {
+		return createPhoto(filename, uploadedImage, PhotoSize.MEDIUM);
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Depending on the configuration, sizes other than the thumbnail and the given default size are only created when
+	 * they are first requested.
+	 */
+	public Photo createPhoto(String filename, Image uploadedImage, PhotoSize defaultSize) throws Exception {
 		PhotoId id = PhotoId.getNextId();
-		Photo result = PhotoUtil.createPhoto(filename, id, uploadedImage);
+		Photo result = PhotoUtil.createPhoto(filename, id, uploadedImage, PhotoUtil.getEagerSizes(defaultSize));
 		addPhoto(result);
 		return result;
 	}
 
+	/**
+	 * @methodtype factory
+	 *
+	 * Creates the photo from an upload and deletes the temporary file of the upload.
+	 */
+	public Photo createPhoto(String filename, UploadedImage uploadedImage, PhotoSize defaultSize) throws Exception {
+		try {
+			return createPhoto(filename, uploadedImage.asImage(), defaultSize);
+		} finally {
+			uploadedImage.delete();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the image of the photo in the given size, creating and storing it from the next larger size if it does
+	 * not exist yet. Concurrent requests for the same missing image wait for a single creation.
+	 */
+	public Image getOrCreateImage(Photo photo, PhotoSize photoSize) throws IOException {
+		if (!photo.hasPhotoSize(photoSize)) {
+			return null;
+		}
+
+		Image result = photo.getImage(photoSize);
+		if (result != null) {
+			return result;
+		}
+
+		String key = photo.getIdAsString() + "-" + photoSize.asInt();
+		FutureTask<Image> task = new FutureTask<Image>(() -> doCreateImage(photo, photoSize));
+		FutureTask<Image> pendingTask = pendingImages.putIfAbsent(key, task);
+		if (pendingTask == null) {
+			pendingTask = task;
+			try {
+				task.run();
+			} finally {
+				pendingImages.remove(key, task);
+			}
+		}
+
+		try {
+			return pendingTask.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for image", ex);
+		} catch (ExecutionException ex) {
+			throw (ex.getCause() instanceof IOException) ? (IOException) ex.getCause() : new IOException(ex.getCause());
+		}
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * The image may have been created by the time this runs, e.g. by a request that finished just before.
+	 */
+	protected Image doCreateImage(Photo photo, PhotoSize photoSize) throws IOException {
+		Image result = photo.getImage(photoSize);
+		if (result != null) {
+			return result;
+		}
+
+		Image source = null;
+		for (int i = photoSize.asInt() + 1; source == null && i <= photo.getMaxPhotoSize().asInt(); i++) {
+			source = photo.getImage(PhotoSize.getFromInt(i));
+		}
+		if (source == null) {
+			log.warning(lb -> lb.
+					addParameter("photo ID", photo.getIdAsString()).
+					addParameter("size", photoSize.asString()).
+					addMessage("no larger image to create image from"));
+			return null;
+		}
+
+		long startTime = System.nanoTime();
+		result = PhotoUtil.createImageFile(source, photo, photoSize);
+		photo.setImage(photoSize, result);
+		saveScaledImages(photo);
+
+		log.config(lb -> lb.
+				addAction("created image on demand").
+				addParameter("photo ID", photo.getIdAsString()).
+				addParameter("size", photoSize.asString()).
+				addParameter("ms", (System.nanoTime() - startTime) / 1000000));
+		return result;
+	}
+
 	/**
 	 * @methodtype command
 	 */
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import org.wahlzeit.utils.IntBitmap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory inverted index from the tags of photos, as collected by the <@link>PhotoTagCollector</@link>, e.g.
+ * "un:name" and "tg:tag", to the ids of the photos that carry them. The ids are kept in bitmaps of PhotoId.asInt().
+ * The index is updated photo by photo, and only the tags that changed are touched. It also knows which photos are
+ * visible, so that photos can be filtered without looking at them.
+ */
+public class PhotoTagIndex {
+
+	/**
+	 *
+	 */
+	protected Map<String, IntBitmap> photoIdsByTag = new HashMap<String, IntBitmap>();
+	protected Map<Integer, Set<String>> tagsByPhotoId = new HashMap<Integer, Set<String>>();
+	protected IntBitmap allPhotoIds = new IntBitmap();
+	protected IntBitmap visiblePhotoIds = new IntBitmap();
+
+	/**
+	 * Incremented with every change of the index, so that users can tell whether their results are outdated
+	 */
+	protected long version = 0;
+
+	/**
+	 * @methodtype command
+	 *
+	 * Sets the tags and the visibility of the photo to the given ones.
+	 */
+	public synchronized void update(PhotoId photoId, Set<String> tags, boolean isVisible) {
+		int id = photoId.asInt();
+		boolean isChanged = doUpdate(id, tags);
+		isChanged |= doSetVisible(id, isVisible);
+		if (isChanged) {
+			version++;
+		}
+	}
+
+	/**
+	 * @methodtype set
+	 *
+	 * Changes the visibility of an indexed photo, e.g. as soon as its status changes.
+	 */
+	public synchronized void setVisible(PhotoId photoId, boolean isVisible) {
+		int id = photoId.asInt();
+		if (allPhotoIds.contains(id) && doSetVisible(id, isVisible)) {
+			version++;
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized void remove(PhotoId photoId) {
+		int id = photoId.asInt();
+		if (!allPhotoIds.contains(id)) {
+			return;
+		}
+
+		doUpdate(id, Collections.<String>emptySet());
+		allPhotoIds.remove(id);
+		visiblePhotoIds.remove(id);
+		tagsByPhotoId.remove(id);
+		version++;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Returns whether the tags of the photo have changed; does not change the version.
+	 */
+	protected boolean doUpdate(int id, Set<String> tags) {
+		boolean isNewPhoto = allPhotoIds.add(id);
+
+		Set<String> oldTags = tagsByPhotoId.get(id);
+		if (oldTags == null) {
+			oldTags = Collections.emptySet();
+		}
+		if (!isNewPhoto && oldTags.equals(tags)) {
+			return false;
+		}
+
+		for (String tag : oldTags) {
+			if (!tags.contains(tag)) {
+				IntBitmap photoIds = photoIdsByTag.get(tag);
+				photoIds.remove(id);
+				if (photoIds.isEmpty()) {
+					photoIdsByTag.remove(tag);
+				}
+			}
+		}
+
+		for (String tag : tags) {
+			if (!oldTags.contains(tag)) {
+				IntBitmap photoIds = photoIdsByTag.get(tag);
+				if (photoIds == null) {
+					photoIds = new IntBitmap();
+					photoIdsByTag.put(tag, photoIds);
+				}
+				photoIds.add(id);
+			}
+		}
+
+		tagsByPhotoId.put(id, new HashSet<String>(tags));
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Returns whether the visibility of the photo has changed; does not change the version.
+	 */
+	protected boolean doSetVisible(int id, boolean isVisible) {
+		return isVisible ? visiblePhotoIds.add(id) : visiblePhotoIds.remove(id);
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the ids of the photos that carry at least one of the tags.
+	 */
+	public synchronized IntBitmap getPhotoIdsWithAnyTag(Collection<String> tags) {
+		IntBitmap result = new IntBitmap();
+		for (String tag : tags) {
+			IntBitmap photoIds = photoIdsByTag.get(tag);
+			if (photoIds != null) {
+				result = result.or(photoIds);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized IntBitmap getAllPhotoIds() {
+		return allPhotoIds.copy();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized IntBitmap getVisiblePhotoIds() {
+		return visiblePhotoIds.copy();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized int getNoTags() {
+		return photoIdsByTag.size();
+	}
+
+}
@@ -20,13 +20,27 @@
 
 package org.wahlzeit.model;
 
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.images.Image;
-import com.google.appengine.api.images.ImagesService;
-import com.google.appengine.api.images.ImagesServiceFactory;
-import com.google.appengine.api.images.Transform;
-import org.wahlzeit.services.LogBuilder;
+import com.google.apphosting.api.ApiProxy;
+import org.wahlzeit.services.LazyLogger;
 
-import java.util.logging.Logger;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * PhotoUtil provides a set of utility functions to create defined images.
@@ -34,16 +48,52 @@ import java.util.logging.Logger;
  */
 public class PhotoUtil {
 
-	private static final Logger log = Logger.getLogger(PhotoUtil.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(PhotoUtil.class);
+
+	/**
+	 * All uploads share at most two threads for scaling; if both are busy, the uploading thread scales itself
+	 */
+	public static final int MAX_RENDITION_THREADS = 2;
+	public static final long RENDITION_THREAD_KEEP_ALIVE = 60; // s
+
+	/**
+	 * System property that selects the image scaler, "images-service" (default) or "raster"
+	 */
+	public static final String IMAGE_SCALER_PROPERTY = "org.wahlzeit.imageScaler";
+	public static final String RASTER_IMAGE_SCALER = "raster";
+
+	/**
+	 * System property that selects which sizes are created on upload, "eager" (default) for all of them or "on-demand"
+	 */
+	public static final String RENDITIONS_PROPERTY = "org.wahlzeit.renditions";
+	public static final String ON_DEMAND_RENDITIONS = "on-demand";
+
+	/**
+	 *
+	 */
+	protected static ImageScaler imageScaler = null;
+
+	/**
+	 *
+	 */
+	protected static ExecutorService renditionExecutor = null;
 
 	/**
 	 * @methodtype creation
 	 */
 	public static Photo createPhoto(String filename, PhotoId id, Image uploadedImage) throws Exception {
+		return createPhoto(filename, id, uploadedImage, EnumSet.allOf(PhotoSize.class));
+	}
+
+	/**
+	 * @methodtype creation
+	 */
+	public static Photo createPhoto(String filename, PhotoId id, Image uploadedImage, Set<PhotoSize> sizes)
+			throws Exception {
 		Photo result = VolcanoPhotoFactory.getInstance().createPhoto(id);
 		result.setEnding(filename.substring(filename.lastIndexOf(".") + 1));
 
-		createImageFiles(uploadedImage, result);
+		createImageFiles(uploadedImage, result, sizes);
 
 		int sourceWidth = uploadedImage.getWidth();
 		int sourceHeight = uploadedImage.getHeight();
@@ -53,20 +103,113 @@ public class PhotoUtil {
 	}
 
 	/**
+	 * @methodtype get
+	 *
+	 * Returns the sizes to create on upload for a user who views photos in the given size.
+	 */
+	public static Set<PhotoSize> getEagerSizes(PhotoSize defaultSize) {
+		if (ON_DEMAND_RENDITIONS.equals(System.getProperty(RENDITIONS_PROPERTY))) {
+			return EnumSet.of(PhotoSize.THUMB, defaultSize);
+		}
+		return EnumSet.allOf(PhotoSize.class);
+	}
+
+	/**
+	 * @methodtype command
 	 *
+	 * Creates the images in all applicable sizes in parallel and sets them in the photo.
 	 */
 	public static void createImageFiles(Image source, Photo photo) throws Exception {
+		createImageFiles(source, photo, EnumSet.allOf(PhotoSize.class));
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Creates the images in the given sizes, as far as they are applicable, in parallel and sets them in the photo.
+	 * The largest applicable size is always created, as the upload is not kept and the other sizes are created from
+	 * it on demand.
+	 */
+	public static void createImageFiles(Image source, Photo photo, Set<PhotoSize> sizes) throws Exception {
 		assertIsValidImage(source);
 
 		int sourceWidth = source.getWidth();
 		int sourceHeight = source.getHeight();
 		assertHasValidSize(sourceWidth, sourceHeight);
 
-		for (PhotoSize size : PhotoSize.values()) {
-			if (!size.isWiderAndHigher(sourceWidth, sourceHeight)) {
-				scaleImage(ImagesServiceFactory.makeImage(source.getImageData()), size, photo);
+		Set<PhotoSize> createdSizes = EnumSet.copyOf(sizes);
+		createdSizes.add(PhotoSize.getFromWidthHeight(sourceWidth, sourceHeight));
+
+		long startTime = System.nanoTime();
+		List<Rendition> renditions = createRenditions(source, sourceWidth, sourceHeight, createdSizes);
+
+		for (Rendition rendition : renditions) {
+			photo.setImage(rendition.size, rendition.image);
+		}
+
+		long totalMillis = (System.nanoTime() - startTime) / 1000000;
+		log.config(lb -> {
+			lb.addMessage("Created image files");
+			for (Rendition rendition : renditions) {
+				lb.addParameter(rendition.size.asString() + " ms", rendition.getScalingTimeMillis());
+			}
+			lb.addParameter("total ms", totalMillis);
+		});
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Scales the source into every size it is not smaller than, largest size first. A size is scaled from the
+	 * smallest larger rendition that is at least twice as wide and high, or from the source if there is none. This
+	 * keeps the quality of a direct downscale but lets the small sizes work on small inputs, and sizes that do not
+	 * depend on each other are scaled at the same time.
+	 */
+	protected static List<Rendition> createRenditions(Image source, int sourceWidth, int sourceHeight,
+			Set<PhotoSize> createdSizes) throws Exception {
+
+		ExecutorService executor = getRenditionExecutor();
+		CompletableFuture<Rendition> original = CompletableFuture.completedFuture(new Rendition(source));
+		List<CompletableFuture<Rendition>> futures = new ArrayList<CompletableFuture<Rendition>>();
+		List<Integer> widths = new ArrayList<Integer>();
+		List<Integer> heights = new ArrayList<Integer>();
+		List<PhotoSize> sizes = new ArrayList<PhotoSize>(Arrays.asList(PhotoSize.values()));
+		Collections.reverse(sizes);
+
+		for (PhotoSize size : sizes) {
+			if (!createdSizes.contains(size) || size.isWiderAndHigher(sourceWidth, sourceHeight)) {
+				continue;
+			}
+
+			int width = size.calcAdjustedWidth(sourceWidth, sourceHeight);
+			int height = size.calcAdjustedHeight(sourceWidth, sourceHeight);
+
+			CompletableFuture<Rendition> parent = original;
+			for (int i = futures.size() - 1; i >= 0; i--) {
+				if (widths.get(i) >= 2 * width && heights.get(i) >= 2 * height) {
+					parent = futures.get(i);
+					break;
+				}
+			}
+
+			futures.add(parent.thenApplyAsync(from -> scaleRendition(from, size, width, height), executor));
+			widths.add(width);
+			heights.add(height);
+		}
+
+		List<Rendition> result = new ArrayList<Rendition>();
+		for (CompletableFuture<Rendition> future : futures) {
+			try {
+				result.add(future.get());
+			} catch (ExecutionException ex) {
+				Throwable cause = ex.getCause();
+				if (cause instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) cause).getCause();
+				}
+				throw (cause instanceof Exception) ? (Exception) cause : ex;
 			}
 		}
+		return result;
 	}
 
 	/**
@@ -88,23 +231,133 @@ public class PhotoUtil {
 	}
 
 	/**
-	 * @methodtype command Scale the source picture to the given size, store it in the datastore and reference it in the
-	 * photo.
+	 * @methodtype factory
+	 *
+	 * Creates the image of the photo in the given size from an image of the photo in a larger size.
 	 */
-	protected static void scaleImage(Image source, PhotoSize size, Photo photo) throws Exception {
-		int sourceWidth = source.getWidth();
-		int sourceHeight = source.getHeight();
+	public static Image createImageFile(Image source, Photo photo, PhotoSize size) throws IOException {
+		int targetWidth = size.calcAdjustedWidth(photo.getWidth(), photo.getHeight());
+		int targetHeight = size.calcAdjustedHeight(photo.getWidth(), photo.getHeight());
+		return getImageScaler().scale(source, targetWidth, targetHeight);
+	}
 
-		int targetWidth = size.calcAdjustedWidth(sourceWidth, sourceHeight);
-		int targetHeight = size.calcAdjustedHeight(sourceWidth, sourceHeight);
+	/**
+	 * @methodtype factory
+	 */
+	protected static Rendition scaleRendition(Rendition from, PhotoSize size, int width, int height) {
+		long startTime = System.nanoTime();
+		try {
+			Image image = getImageScaler().scale(from.image, width, height);
+			return new Rendition(size, image, System.nanoTime() - startTime);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
 
-		ImagesService imagesService = ImagesServiceFactory.getImagesService();
-		Transform resize = ImagesServiceFactory.makeResize(targetWidth, targetHeight);
-		Image newImage = imagesService.applyTransform(resize, source);
+	/**
+	 * @methodtype get
+	 */
+	public static synchronized ImageScaler getImageScaler() {
+		if (imageScaler == null) {
+			imageScaler = createImageScaler(System.getProperty(IMAGE_SCALER_PROPERTY));
+		}
+		return imageScaler;
+	}
 
-		photo.setImage(size, newImage);
+	/**
+	 * @methodtype set
+	 */
+	public static synchronized void setImageScaler(ImageScaler scaler) {
+		imageScaler = scaler;
+	}
 
-		log.config(LogBuilder.createSystemMessage().addParameter("Scaled image to size", size.asString()).toString());
+	/**
+	 * @methodtype factory
+	 */
+	protected static ImageScaler createImageScaler(String name) {
+		ImageScaler result = RASTER_IMAGE_SCALER.equals(name) ? new RasterImageScaler() : new ImagesServiceScaler();
+		log.config(lb -> lb.
+				addParameter("image scaler", result.getClass().getSimpleName()));
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the executor shared by all uploads. Idle threads end after RENDITION_THREAD_KEEP_ALIVE seconds; if no
+	 * thread is available, the scaling runs on the thread that hands it in.
+	 */
+	protected static synchronized ExecutorService getRenditionExecutor() {
+		if (renditionExecutor == null) {
+			renditionExecutor = new ThreadPoolExecutor(0, MAX_RENDITION_THREADS, RENDITION_THREAD_KEEP_ALIVE,
+					TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), getRenditionThreadFactory(),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return renditionExecutor;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Shared threads must outlive the request that creates them, i.e. on App Engine they have to be background threads.
+	 * Where App Engine does not allow those, e.g. on automatically scaled instances, no thread is created.
+	 */
+	protected static ThreadFactory getRenditionThreadFactory() {
+		final ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				if (ApiProxy.getCurrentEnvironment() == null) {
+					Thread result = defaultThreadFactory.newThread(runnable);
+					result.setDaemon(true);
+					return result;
+				}
+
+				try {
+					return ThreadManager.backgroundThreadFactory().newThread(runnable);
+				} catch (RuntimeException ex) {
+					log.config(lb -> lb.
+							addException("no background thread for scaling, scaling on the calling thread", ex));
+					return null;
+				}
+			}
+		};
+	}
+
+	/**
+	 * An image in one size and how long it took to scale it.
+	 */
+	protected static class Rendition {
+
+		/**
+		 *
+		 */
+		protected final PhotoSize size;
+		protected final Image image;
+		protected final long scalingTime;
+
+		/**
+		 * The original image, not scaled at all
+		 */
+		protected Rendition(Image image) {
+			this(null, image, 0);
+		}
+
+		/**
+		 *
+		 */
+		protected Rendition(PhotoSize size, Image image, long scalingTime) {
+			this.size = size;
+			this.image = image;
+			this.scalingTime = scalingTime;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected long getScalingTimeMillis() {
+			return scalingTime / 1000000;
+		}
 	}
 
 }
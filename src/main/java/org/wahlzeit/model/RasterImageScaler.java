@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Scales images in plain Java, without any service. The source is decoded with ImageIO into an int[] raster of ARGB
+ * pixels, halved with a 2x2 box filter as long as it is at least twice the target size, and then brought to the exact
+ * target size by area averaging. The result is encoded as PNG, as the images service does. Rasters of up to
+ * MAX_RETAINED_RASTER_LENGTH pixels are kept per thread and reused by the next scaling on the same thread; larger ones
+ * are allocated per call, so that a single huge upload does not pin its rasters to a thread.
+ */
+public class RasterImageScaler implements ImageScaler {
+
+	/**
+	 *
+	 */
+	public static final String OUTPUT_FORMAT = "png";
+
+	/**
+	 * 1M pixels, i.e. at most 2 * 4MB kept per thread
+	 */
+	public static final int MAX_RETAINED_RASTER_LENGTH = 1024 * 1024;
+
+	/**
+	 * Two rasters per thread, to scale from one into the other
+	 */
+	protected final ThreadLocal<int[][]> rasters = ThreadLocal.withInitial(() -> new int[2][0]);
+
+	@Override
+	public Image scale(Image source, int width, int height) throws IOException {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("invalid target size: " + width + "x" + height);
+		}
+
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(source.getImageData()));
+		if (decoded == null) {
+			throw new IOException("unsupported image format");
+		}
+
+		int sourceWidth = decoded.getWidth();
+		int sourceHeight = decoded.getHeight();
+		int current = 0;
+		int[] pixels = getRaster(current, sourceWidth * sourceHeight);
+		readPixels(decoded, pixels);
+
+		while (sourceWidth / 2 >= width && sourceHeight / 2 >= height) {
+			current = 1 - current;
+			int[] halved = getRaster(current, (sourceWidth / 2) * (sourceHeight / 2));
+			halve(pixels, sourceWidth, sourceHeight, halved);
+			pixels = halved;
+			sourceWidth /= 2;
+			sourceHeight /= 2;
+		}
+
+		int[] columns = getRaster(1 - current, width * sourceHeight);
+		averageRows(pixels, sourceWidth, sourceHeight, columns, width);
+		int[] result = new int[width * height];
+		averageColumns(columns, width, sourceHeight, result, height);
+
+		boolean hasAlpha = decoded.getColorModel().hasAlpha();
+		BufferedImage scaled = new BufferedImage(width, height,
+				hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		scaled.setRGB(0, 0, width, height, result, 0, width);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(scaled, OUTPUT_FORMAT, out);
+		return ImagesServiceFactory.makeImage(out.toByteArray());
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the raster of this thread with the given index, grown to at least the given length if necessary. Rasters
+	 * above MAX_RETAINED_RASTER_LENGTH are not kept.
+	 */
+	protected int[] getRaster(int index, int length) {
+		if (length > MAX_RETAINED_RASTER_LENGTH) {
+			return new int[length];
+		}
+
+		int[][] threadRasters = rasters.get();
+		if (threadRasters[index].length < length) {
+			threadRasters[index] = new int[length];
+		}
+		return threadRasters[index];
+	}
+
+	/**
+	 * @methodtype helper
+	 *
+	 * Copies the ARGB pixels of the image into the raster. The pixel layouts ImageIO decodes JPEG and PNG images into
+	 * are read directly, as BufferedImage.getRGB() converts each pixel through the color model.
+	 */
+	protected static void readPixels(BufferedImage image, int[] pixels) {
+		int noPixels = image.getWidth() * image.getHeight();
+		Raster raster = image.getRaster();
+		boolean isPacked = raster.getDataBuffer().getNumBanks() == 1 &&
+				raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+
+		if (isPacked && image.getType() == BufferedImage.TYPE_INT_ARGB) {
+			int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+			System.arraycopy(data, 0, pixels, 0, noPixels);
+		} else if (isPacked && image.getType() == BufferedImage.TYPE_INT_RGB) {
+			int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+			for (int i = 0; i < noPixels; i++) {
+				pixels[i] = 0xFF000000 | data[i];
+			}
+		} else if (isPacked && image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+			byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+			for (int i = 0, j = 0; i < noPixels; i++, j += 3) {
+				pixels[i] = 0xFF000000 | (data[j + 2] & 0xFF) << 16 | (data[j + 1] & 0xFF) << 8 | (data[j] & 0xFF);
+			}
+		} else if (isPacked && image.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
+			byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+			for (int i = 0, j = 0; i < noPixels; i++, j += 4) {
+				pixels[i] = (data[j] & 0xFF) << 24 | (data[j + 3] & 0xFF) << 16 | (data[j + 2] & 0xFF) << 8 |
+						(data[j + 1] & 0xFF);
+			}
+		} else {
+			image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+		}
+	}
+
+	/**
+	 * @methodtype helper
+	 *
+	 * Averages every 2x2 block of pixels into one; an odd last row or column is dropped.
+	 */
+	protected static void halve(int[] source, int width, int height, int[] target) {
+		int targetWidth = width / 2;
+		int targetHeight = height / 2;
+		for (int y = 0; y < targetHeight; y++) {
+			int row = 2 * y * width;
+			for (int x = 0; x < targetWidth; x++) {
+				int i = row + 2 * x;
+				int p0 = source[i];
+				int p1 = source[i + 1];
+				int p2 = source[i + width];
+				int p3 = source[i + width + 1];
+
+				int result = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					int sum = ((p0 >>> shift) & 0xFF) + ((p1 >>> shift) & 0xFF) + ((p2 >>> shift) & 0xFF) +
+							((p3 >>> shift) & 0xFF);
+					result |= ((sum + 2) >> 2) << shift;
+				}
+				target[y * targetWidth + x] = result;
+			}
+		}
+	}
+
+	/**
+	 * @methodtype helper
+	 *
+	 * Scales every row to the target width; each target pixel is the average of the source pixels it covers, weighted
+	 * by how much of them it covers.
+	 */
+	protected static void averageRows(int[] source, int width, int height, int[] target, int targetWidth) {
+		average(source, width, 1, width, height, target, targetWidth, 1, targetWidth);
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static void averageColumns(int[] source, int width, int height, int[] target, int targetHeight) {
+		average(source, height, width, 1, width, target, targetHeight, width, 1);
+	}
+
+	/**
+	 * @methodtype helper
+	 *
+	 * Area averaging along one axis. A line is a row or a column, pixels of a line are step apart, and lines are
+	 * lineStep apart, in the source as well as in the target.
+	 */
+	protected static void average(int[] source, int length, int step, int lineStep, int noLines,
+			int[] target, int targetLength, int targetStep, int targetLineStep) {
+
+		// weights of the covered source pixels in 1/256, computed once for all lines
+		double scale = (double) length / targetLength;
+		int[] firsts = new int[targetLength + 1];
+		int[] weights = new int[targetLength * ((int) Math.ceil(scale) + 1)];
+		int[] totals = new int[targetLength];
+		for (int i = 0, k = 0; i < targetLength; i++) {
+			double start = i * scale;
+			double end = Math.min(length, (i + 1) * scale);
+			int last = Math.min(length - 1, (int) Math.ceil(end) - 1);
+
+			firsts[i] = k;
+			for (int j = (int) start; j <= last; j++, k++) {
+				weights[k] = (int) Math.round(256 * (Math.min(end, j + 1) - Math.max(start, j)));
+				totals[i] += weights[k];
+			}
+			firsts[i + 1] = k;
+		}
+
+		for (int line = 0; line < noLines; line++) {
+			int lineStart = line * lineStep;
+			for (int i = 0; i < targetLength; i++) {
+				int j = lineStart + (int) (i * scale) * step;
+				int blue = 0, green = 0, red = 0, alpha = 0;
+				for (int k = firsts[i]; k < firsts[i + 1]; k++, j += step) {
+					int weight = weights[k];
+					int pixel = source[j];
+					blue += weight * (pixel & 0xFF);
+					green += weight * ((pixel >>> 8) & 0xFF);
+					red += weight * ((pixel >>> 16) & 0xFF);
+					alpha += weight * (pixel >>> 24);
+				}
+
+				int total = totals[i];
+				int half = total / 2;
+				target[line * targetLineStep + i * targetStep] = ((alpha + half) / total) << 24 |
+						((red + half) / total) << 16 | ((green + half) / total) << 8 | ((blue + half) / total);
+			}
+		}
+	}
+
+}
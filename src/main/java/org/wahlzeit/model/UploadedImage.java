@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+/**
+ * An uploaded image that has been streamed into a temporary file. Its size is known from the image header, without
+ * decoding the image. The image data is read into memory only once a photo is created from it, and the temporary file
+ * is deleted afterwards.
+ */
+public class UploadedImage {
+
+	/**
+	 * Uploads larger than this are rejected while they are being received
+	 */
+	public static final long MAX_LENGTH = 16 * 1024 * 1024;
+
+	/**
+	 * Images with more pixels than this would exhaust the memory when they are decoded for scaling
+	 */
+	public static final long MAX_PIXELS = 40 * 1000 * 1000;
+
+	/**
+	 *
+	 */
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Copy buffer per thread, reused by all uploads on that thread
+	 */
+	protected static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+	/**
+	 *
+	 */
+	protected final File file;
+	protected final long length;
+	protected final String formatName;
+	protected final int width;
+	protected final int height;
+
+	/**
+	 *
+	 */
+	protected UploadedImage(File file, long length, String formatName, int width, int height) {
+		this.file = file;
+		this.length = length;
+		this.formatName = formatName;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static UploadedImage createFrom(InputStream in) throws IOException {
+		return createFrom(in, MAX_LENGTH);
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Streams the upload into a temporary file and checks its format and size. The stream is not closed.
+	 */
+	public static UploadedImage createFrom(InputStream in, long maxLength) throws IOException {
+		File file = File.createTempFile("upload", ".tmp");
+		boolean isValid = false;
+		try {
+			long length = copy(in, file, maxLength);
+			UploadedImage result = readHeader(file, length);
+			isValid = true;
+			return result;
+		} finally {
+			if (!isValid) {
+				Files.deleteIfExists(file.toPath());
+			}
+		}
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static long copy(InputStream in, File file, long maxLength) throws IOException {
+		byte[] buffer = buffers.get();
+		long result = 0;
+		try (OutputStream out = new FileOutputStream(file)) {
+			for (int noBytes = in.read(buffer); noBytes != -1; noBytes = in.read(buffer)) {
+				result += noBytes;
+				if (result > maxLength) {
+					throw new IOException("upload exceeds " + maxLength + " bytes");
+				}
+				out.write(buffer, 0, noBytes);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Reads only the header of the image to learn its format and size.
+	 */
+	protected static UploadedImage readHeader(File file, long length) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+			Iterator<ImageReader> readers = (in == null) ? null : ImageIO.getImageReaders(in);
+			if (readers == null || !readers.hasNext()) {
+				throw new IOException("unsupported image format");
+			}
+
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				assertIsValidSize(width, height);
+				return new UploadedImage(file, length, reader.getFormatName(), width, height);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * @methodtype assertion
+	 */
+	protected static void assertIsValidSize(int width, int height) {
+		PhotoUtil.assertHasValidSize(width, height);
+		if ((long) width * height > MAX_PIXELS) {
+			throw new IllegalArgumentException("Photo too large: " + width + "x" + height);
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 *
+	 * Reads the image data into memory, as needed by the images service.
+	 */
+	public Image asImage() throws IOException {
+		return ImagesServiceFactory.makeImage(Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void delete() {
+		try {
+			Files.deleteIfExists(file.toPath());
+		} catch (IOException ex) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getFormatName() {
+		return formatName;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+}
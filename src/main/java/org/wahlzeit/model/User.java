@@ -20,19 +20,17 @@
 
 package org.wahlzeit.model;
 
-import com.google.appengine.api.images.Image;
 import com.googlecode.objectify.annotation.Ignore;
 import com.googlecode.objectify.annotation.Subclass;
 import org.wahlzeit.services.EmailAddress;
 import org.wahlzeit.services.Language;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.logging.Logger;
 
 /**
  * A User is a client that is logged-in, that is, has registered with the system.
@@ -59,7 +57,7 @@ public class User extends Client {
 	public static final String MEMBER_SINCE = "memberSince";
 	public static final String NO_PHOTOS = "noPhotos";
 
-	private static final Logger log = Logger.getLogger(User.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(User.class);
 
 	/**
 	 *
@@ -74,7 +72,7 @@ public class User extends Client {
 	protected Photo userPhoto = null;
 	protected Set<Photo> photos = new HashSet<Photo>();
 	@Ignore // only used as temporary variable
-	protected Image uploadedImage = null;
+	protected transient UploadedImage uploadedImage = null;
 
 	/**
 	 *
@@ -110,11 +108,11 @@ public class User extends Client {
 							  Client previousClient) {
 		super.initialize(id, nickName, emailAddress, accessRights, previousClient);
 
-		log.config(LogBuilder.createSystemMessage().
+		log.config(lb -> lb.
 				addAction("initialize user").
 				addParameter("id", id).
 				addParameter("name", nickName).
-				addParameter("E-Mail", emailAddress.asString()).toString());
+				addParameter("E-Mail", emailAddress.asString()));
 		incWriteCount();
 	}
 
@@ -218,7 +216,7 @@ public class User extends Client {
 	 */
 	public void setUserPhoto(Photo newPhoto) {
 		userPhoto = newPhoto;
-		log.info("SetUserPhoto: " + newPhoto.getIdAsString());
+		log.info(lb -> lb.addParameter("SetUserPhoto", newPhoto.getIdAsString()));
 		incWriteCount();
 	}
 
@@ -297,15 +295,20 @@ public class User extends Client {
 
 	/**
 	 * @methodtype set
+	 *
+	 * The temporary file of a previous upload is deleted.
 	 */
-	public void setUploadedImage(Image image) {
+	public void setUploadedImage(UploadedImage image) {
+		if (uploadedImage != null && uploadedImage != image) {
+			uploadedImage.delete();
+		}
 		uploadedImage = image;
 	}
 
 	/**
 	 * @methodtype get
 	 */
-	public Image getUploadedImage() {
+	public UploadedImage getUploadedImage() {
 		return uploadedImage;
 	}
 }
@@ -24,7 +24,7 @@ import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Work;
 import org.wahlzeit.PatternInstance;
 import org.wahlzeit.services.EmailAddress;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.mailing.EmailService;
 import org.wahlzeit.services.mailing.EmailServiceManager;
 
@@ -32,7 +32,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.logging.Logger;
 
 
 /**
@@ -46,7 +45,7 @@ import java.util.logging.Logger;
 )
 public class UserManager extends ClientManager {
 
-	private static final Logger log = Logger.getLogger(UserManager.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(UserManager.class);
 	/**
 	 * Reserved names that cannot be registered by regular users
 	 *
@@ -99,15 +98,14 @@ public class UserManager extends ClientManager {
 					if (!hasClientById(user.getId())) {
 						doAddClient(user);
 					} else {
-						log.config(LogBuilder.createSystemMessage().addParameter("user has been loaded", user.getId())
-								.toString());
+						log.config(lb -> lb.addParameter("user has been loaded", user.getId()));
 					}
 				}
 				return null;
 			}
 		});
 
-		log.info(LogBuilder.createSystemMessage().addMessage("loaded all clients").toString());
+		log.info(lb -> lb.addMessage("loaded all clients"));
 	}
 
 	/**
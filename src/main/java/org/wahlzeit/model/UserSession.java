@@ -21,21 +21,28 @@
 package org.wahlzeit.model;
 
 import org.wahlzeit.services.Language;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.Session;
 import org.wahlzeit.utils.HtmlUtil;
 
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.Logger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 
 /**
  * Wrapper class for {@link HttpSession} to provide a readable interface for Wahlzeit.
  *
- * {@link HttpSession}s are managed automatically by Google App Engine.
+ * {@link HttpSession}s are managed automatically by Google App Engine. Every setAttribute() call makes the container
+ * store the session again, so a user session only lives for one request and works on a copy of the attributes; the
+ * changed ones are written back once by {@link #writeBack()} at the end of the request.
  */
 public class UserSession extends Session implements Serializable {
 
@@ -54,19 +61,32 @@ public class UserSession extends Session implements Serializable {
 	public static final String ANONYMOUS_CLIENT = "anon";
 
 
-	private static Logger log = Logger.getLogger(UserSession.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(UserSession.class);
+
+	/**
+	 * Statistics over all requests
+	 */
+	protected static final AtomicLong noWriteBacks = new AtomicLong();
+	protected static final AtomicLong noWrittenAttributes = new AtomicLong();
+	protected static final AtomicLong noWrittenBytes = new AtomicLong();
 
 	protected HttpSession httpSession;
 
+	/**
+	 * Working copy of the attributes read or set during this request
+	 */
+	protected Map<String, Object> attributes = new HashMap<String, Object>();
+	protected Set<String> changedAttributeNames = new HashSet<String>();
+
 	/**
 	 *
 	 */
 	public UserSession(String myName, String mySiteUrl, HttpSession myHttpSession, String myLanguage) {
 		httpSession = myHttpSession;
 		initialize(myName);
-		if (httpSession.getAttribute(INITIALIZED) == null) {
-			httpSession.setAttribute(SITE_URL, mySiteUrl);
-			httpSession.setAttribute(PHOTO_FILTER, PhotoFactory.getInstance().createPhotoFilter());
+		if (getAttribute(INITIALIZED) == null) {
+			setAttribute(SITE_URL, mySiteUrl);
+			setAttribute(PHOTO_FILTER, PhotoFactory.getInstance().createPhotoFilter());
 
 			setClient(new Guest());
 			try {
@@ -79,7 +99,7 @@ public class UserSession extends Session implements Serializable {
 			clearDisplayedPhotos();
 			clearPraisedPhotos();
 			clearSavedArgs();
-			httpSession.setAttribute(INITIALIZED, INITIALIZED);
+			setAttribute(INITIALIZED, INITIALIZED);
 
 		}
 	}
@@ -88,12 +108,12 @@ public class UserSession extends Session implements Serializable {
 	 *
 	 */
 	public void clearDisplayedPhotos() {
-		PhotoFilter photoFilter = (PhotoFilter) httpSession.getAttribute(PHOTO_FILTER);
+		PhotoFilter photoFilter = (PhotoFilter) getAttribute(PHOTO_FILTER);
 		if (photoFilter != null) {
 			photoFilter.clear();
-			httpSession.setAttribute(PHOTO_FILTER, photoFilter);
+			setAttribute(PHOTO_FILTER, photoFilter);
 		} else {
-			log.warning("No PhotoFilter found in HttpSession to clear.");
+			log.warning(lb -> lb.addMessage("No PhotoFilter found in HttpSession to clear."));
 		}
 	}
 
@@ -101,14 +121,14 @@ public class UserSession extends Session implements Serializable {
 	 *
 	 */
 	public void clearPraisedPhotos() {
-		httpSession.setAttribute(PRAISED_PHOTOS, new HashSet<Photo>());
+		setAttribute(PRAISED_PHOTOS, new PhotoIdSet());
 	}
 
 	/**
 	 * @methodtype init
 	 */
 	public void clearSavedArgs() {
-		httpSession.setAttribute(SAVED_ARGS, new HashMap<String, Object>());
+		setAttribute(SAVED_ARGS, new HashMap<String, Object>());
 	}
 
 	/**
@@ -123,31 +143,31 @@ public class UserSession extends Session implements Serializable {
 	 * @methodtype get
 	 */
 	public String getSiteUrl() {
-		return (String) httpSession.getAttribute(SITE_URL);
+		return (String) getAttribute(SITE_URL);
 	}
 
 	@Override
 	protected void notifyNameChanged() {
-		httpSession.setAttribute(Session.NAME, super.getName());
+		setAttribute(Session.NAME, super.getName());
 	}
 
 	/**
 	 * @methodtype convert Returns some signifier of current user
 	 */
 	public String getClientId() {
-		return (String) httpSession.getAttribute(CLIENT_ID);
+		return (String) getAttribute(CLIENT_ID);
 	}
 
 	@Override
 	protected void notifyProcessingTimeChanged() {
-		httpSession.setAttribute(Session.PROCESSING_TIME, super.getProcessingTime());
+		setAttribute(Session.PROCESSING_TIME, super.getProcessingTime());
 	}
 
 	/**
 	 * @methodtype get
 	 */
 	public Client getClient() {
-		String clientName = (String) httpSession.getAttribute(CLIENT_ID);
+		String clientName = (String) getAttribute(CLIENT_ID);
 		return UserManager.getInstance().getClientById(clientName);
 	}
 
@@ -155,7 +175,7 @@ public class UserSession extends Session implements Serializable {
 	 * @methodtype set
 	 */
 	public void setClient(Client newClient) {
-		String previousClientId = (String) httpSession.getAttribute(CLIENT_ID);
+		String previousClientId = (String) getAttribute(CLIENT_ID);
 		if (previousClientId != null) {
 			Client previousClient = UserManager.getInstance().getClientById(previousClientId);
 			if (previousClient instanceof Guest) {
@@ -163,7 +183,7 @@ public class UserSession extends Session implements Serializable {
 			}
 		}
 
-		httpSession.setAttribute(CLIENT_ID, newClient.getId());
+		setAttribute(CLIENT_ID, newClient.getId());
 		UserManager.getInstance().addHttpSessionIdToClientMapping(httpSession.getId(), newClient);
 	}
 
@@ -171,32 +191,45 @@ public class UserSession extends Session implements Serializable {
 	 *
 	 */
 	public PhotoFilter getPhotoFilter() {
-		return (PhotoFilter) httpSession.getAttribute(PHOTO_FILTER);
+		return (PhotoFilter) getAttribute(PHOTO_FILTER);
 	}
 
 	/**
 	 * @methodtype boolean query
 	 */
 	public boolean hasPraisedPhoto(Photo photo) {
-		Set praisedPhotos = (Set) httpSession.getAttribute(PRAISED_PHOTOS);
+		PhotoIdSet praisedPhotos = (PhotoIdSet) getAttribute(PRAISED_PHOTOS);
 		if (praisedPhotos != null) {
-			return praisedPhotos.contains(photo);
+			return praisedPhotos.contains(photo.getId());
 		} else {
-			log.warning("Found no set of praised Photos to search for Photo.");
+			log.warning(lb -> lb.addMessage("Found no set of praised Photos to search for Photo."));
 			return false;
 		}
 	}
 
+	/**
+	 * @methodtype set
+	 */
+	public void addPraisedPhoto(Photo photo) {
+		PhotoIdSet praisedPhotos = (PhotoIdSet) getAttribute(PRAISED_PHOTOS);
+		if (praisedPhotos != null) {
+			praisedPhotos.add(photo.getId());
+			setAttribute(PRAISED_PHOTOS, praisedPhotos);
+		} else {
+			log.warning(lb -> lb.addMessage("Found no set of praised Photos to add Photo."));
+		}
+	}
+
 	/**
 	 *
 	 */
 	public void addProcessedPhoto(Photo photo) {
-		PhotoFilter photoFilter = (PhotoFilter) httpSession.getAttribute(PHOTO_FILTER);
+		PhotoFilter photoFilter = (PhotoFilter) getAttribute(PHOTO_FILTER);
 		if (photoFilter != null) {
 			photoFilter.addProcessedPhoto(photo);
-			httpSession.setAttribute(PHOTO_FILTER, photoFilter);
+			setAttribute(PHOTO_FILTER, photoFilter);
 		} else {
-			log.warning("No PhotoFilter found in HttpSession to add Photo.");
+			log.warning(lb -> lb.addMessage("No PhotoFilter found in HttpSession to add Photo."));
 		}
 	}
 
@@ -204,70 +237,70 @@ public class UserSession extends Session implements Serializable {
 	 * @methodtype get
 	 */
 	public String getHeading() {
-		return (String) httpSession.getAttribute(HEADING);
+		return (String) getAttribute(HEADING);
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setHeading(String myHeading) {
-		httpSession.setAttribute(HEADING, myHeading);
+		setAttribute(HEADING, myHeading);
 	}
 
 	/**
 	 * @methodtype get
 	 */
 	public String getMessage() {
-		return (String) httpSession.getAttribute(MESSAGE);
+		return (String) getAttribute(MESSAGE);
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setMessage(String myMessage) {
-		httpSession.setAttribute(MESSAGE, HtmlUtil.asP(myMessage));
+		setAttribute(MESSAGE, HtmlUtil.asP(myMessage));
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setTwoLineMessage(String msg1, String msg2) {
-		httpSession.setAttribute(MESSAGE, HtmlUtil.asP(msg1) + HtmlUtil.asP(msg2));
+		setAttribute(MESSAGE, HtmlUtil.asP(msg1) + HtmlUtil.asP(msg2));
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setThreeLineMessage(String msg1, String msg2, String msg3) {
-		httpSession.setAttribute(MESSAGE, HtmlUtil.asP(msg1) + HtmlUtil.asP(msg2) + HtmlUtil.asP(msg3));
+		setAttribute(MESSAGE, HtmlUtil.asP(msg1) + HtmlUtil.asP(msg2) + HtmlUtil.asP(msg3));
 	}
 
 	/**
 	 * @methodtype get
 	 */
 	public PhotoId getPhotoId() {
-		return (PhotoId) httpSession.getAttribute(Photo.ID);
+		return (PhotoId) getAttribute(Photo.ID);
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setPhotoId(PhotoId newPhotoId) {
-		httpSession.setAttribute(Photo.ID, newPhotoId);
+		setAttribute(Photo.ID, newPhotoId);
 	}
 
 	/**
 	 * @methodtype get
 	 */
 	public PhotoCase getPhotoCase() {
-		return (PhotoCase) httpSession.getAttribute(PHOTO_CASE);
+		return (PhotoCase) getAttribute(PHOTO_CASE);
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setPhotoCase(PhotoCase photoCase) {
-		httpSession.setAttribute(PHOTO_CASE, photoCase);
+		setAttribute(PHOTO_CASE, photoCase);
 	}
 
 	/**
@@ -287,7 +320,7 @@ public class UserSession extends Session implements Serializable {
 	 * @methodtype get
 	 */
 	public Object getSavedArg(String key) {
-		Map<String, Object> savedArgs = (Map<String, Object>) httpSession.getAttribute(SAVED_ARGS);
+		Map<String, Object> savedArgs = (Map<String, Object>) getAttribute(SAVED_ARGS);
 		return savedArgs.get(key);
 	}
 
@@ -335,14 +368,156 @@ public class UserSession extends Session implements Serializable {
 	public void setSavedArg(String key, Object value) {
 		Map<String, Object> savedArgs = getSavedArgs();
 		savedArgs.put(key, value);
-		httpSession.setAttribute(SAVED_ARGS, savedArgs);
+		setAttribute(SAVED_ARGS, savedArgs);
 	}
 
 	/**
 	 * @methodtype get
 	 */
 	public Map<String, Object> getSavedArgs() {
-		return (Map<String, Object>) httpSession.getAttribute(SAVED_ARGS);
+		return (Map<String, Object>) getAttribute(SAVED_ARGS);
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Reads an attribute from the http session only the first time it is accessed during this request.
+	 */
+	protected Object getAttribute(String name) {
+		if (!attributes.containsKey(name)) {
+			attributes.put(name, httpSession.getAttribute(name));
+		}
+		return attributes.get(name);
+	}
+
+	/**
+	 * @methodtype set
+	 *
+	 * Setting an attribute to an equal immutable value does not change it. Mutable values are always considered to be
+	 * changed, as they are usually set again after they have been modified.
+	 */
+	protected void setAttribute(String name, Object value) {
+		if (isImmutable(value) && value.equals(getAttribute(name))) {
+			return;
+		}
+
+		attributes.put(name, value);
+		changedAttributeNames.add(name);
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected static boolean isImmutable(Object value) {
+		return value instanceof String || value instanceof Number || value instanceof Boolean ||
+				value instanceof PhotoId;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasChangedAttributes() {
+		return !changedAttributeNames.isEmpty();
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Writes the changed attributes to the http session and returns their serialized size in bytes, which is what the
+	 * container will have to store. Measuring serializes every attribute once more, so it is only done while the
+	 * sizes are logged at CONFIG; otherwise 0 is returned.
+	 */
+	public long writeBack() {
+		if (changedAttributeNames.isEmpty()) {
+			return 0;
+		}
+
+		boolean isMeasured = log.isLoggable(Level.CONFIG);
+		long noBytes = 0;
+		for (String name : changedAttributeNames) {
+			Object value = attributes.get(name);
+			if (value == null) {
+				httpSession.removeAttribute(name);
+			} else {
+				httpSession.setAttribute(name, value);
+				if (isMeasured) {
+					noBytes += getSerializedLength(value);
+				}
+			}
+		}
+
+		noWriteBacks.incrementAndGet();
+		noWrittenAttributes.addAndGet(changedAttributeNames.size());
+		noWrittenBytes.addAndGet(noBytes);
+		long writtenBytes = noBytes;
+		log.config(lb -> lb.
+				addParameter("written session attributes", changedAttributeNames).
+				addParameter("written session bytes", writtenBytes));
+
+		changedAttributeNames.clear();
+		return writtenBytes;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected static long getSerializedLength(Object value) {
+		ByteCountingOutputStream counter = new ByteCountingOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+			out.writeObject(value);
+		} catch (IOException ex) {
+			log.warning(lb -> lb.addException("session attribute not serializable", ex));
+		}
+		return counter.getCount();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public static long getNoWriteBacks() {
+		return noWriteBacks.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public static long getNoWrittenAttributes() {
+		return noWrittenAttributes.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public static long getNoWrittenBytes() {
+		return noWrittenBytes.get();
+	}
+
+	/**
+	 * Only counts the bytes written to it.
+	 */
+	protected static class ByteCountingOutputStream extends OutputStream {
+
+		/**
+		 *
+		 */
+		protected long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected long getCount() {
+			return count;
+		}
 	}
 
 }
@@ -0,0 +1,480 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model.persistence;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.wahlzeit.model.PhotoSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.security.InvalidParameterException;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decorator for another ImageStorage that keeps recently read image bytes in memory. Every PhotoSize has its own byte
+ * budget, so that large images cannot push the frequently requested thumbnails out of the cache. The bytes can be
+ * kept in direct ByteBuffers outside of the garbage collected heap.
+ */
+public class CachingImageStorage extends ImageStorage {
+
+	/**
+	 * Byte budgets per PhotoSize, indexed by PhotoSize.asInt(); thumbnails get the largest share per image
+	 */
+	public static final long[] DEFAULT_BUDGETS = {
+			16 * 1024 * 1024, // THUMB
+			4 * 1024 * 1024, // EXTRA_SMALL
+			4 * 1024 * 1024, // SMALL
+			8 * 1024 * 1024, // MEDIUM
+			4 * 1024 * 1024, // LARGE
+			4 * 1024 * 1024 // EXTRA_LARGE
+	};
+
+	/**
+	 *
+	 */
+	protected final ImageStorage storage;
+	protected final boolean isOffHeap;
+
+	/**
+	 *
+	 */
+	protected final Segment[] segments = new Segment[PhotoSize.values().length];
+
+	/**
+	 *
+	 */
+	public CachingImageStorage(ImageStorage storage) {
+		this(storage, DEFAULT_BUDGETS, false);
+	}
+
+	/**
+	 *
+	 */
+	public CachingImageStorage(ImageStorage storage, long[] budgets, boolean isOffHeap) {
+		if (storage == null || budgets.length != segments.length) {
+			throw new IllegalArgumentException("invalid image cache configuration");
+		}
+
+		this.storage = storage;
+		this.isOffHeap = isOffHeap;
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment(budgets[i]);
+		}
+	}
+
+	@Override
+	protected void doWriteImage(Serializable image, String photoIdAsString, int size)
+			throws IOException, InvalidParameterException {
+		segments[size].remove(photoIdAsString);
+		storage.doWriteImage(image, photoIdAsString, size);
+	}
+
+	@Override
+	protected Serializable doReadImage(String photoIdAsString, int size) throws IOException {
+		Segment segment = segments[size];
+		byte[] imageData = segment.get(photoIdAsString);
+		if (imageData != null) {
+			return ImagesServiceFactory.makeImage(imageData);
+		}
+
+		Serializable result = storage.doReadImage(photoIdAsString, size);
+		if (result instanceof Image) {
+			segment.put(photoIdAsString, ((Image) result).getImageData(), isOffHeap);
+		}
+		return result;
+	}
+
+	@Override
+	protected boolean doStreamImage(String photoIdAsString, int size, OutputStream out, ImageRangeSelector selector)
+			throws IOException {
+
+		Segment segment = segments[size];
+		ByteBuffer imageData = segment.getBuffer(photoIdAsString);
+		if (imageData != null) {
+			ImageRange range = selector.selectRange(ImageMetadata.getFromImageData(imageData));
+			if (range != null) {
+				writeRange(imageData, out, range.getOffset(), range.getLength());
+			}
+			return true;
+		}
+
+		CapturingOutputStream capturingOut = new CapturingOutputStream(out, segment.budget);
+		boolean result = storage.doStreamImage(photoIdAsString, size, capturingOut, metadata -> {
+			ImageRange range = selector.selectRange(metadata);
+			if (range == null || !range.isComplete(metadata)) {
+				capturingOut.stopCapturing(); // only the whole image is worth caching
+			}
+			return range;
+		});
+		if (result && capturingOut.isComplete()) {
+			segment.put(photoIdAsString, capturingOut.getCapturedBytes(), isOffHeap);
+		}
+		return result;
+	}
+
+	@Override
+	protected ImageMetadata doGetImageMetadata(String photoIdAsString, int size) throws IOException {
+		ImageMetadata result = segments[size].getMetadata(photoIdAsString);
+		if (result != null) {
+			return result;
+		}
+		return storage.doGetImageMetadata(photoIdAsString, size);
+	}
+
+	@Override
+	protected boolean doDoesImageExist(String photoIdAsString, int size) {
+		return segments[size].contains(photoIdAsString) || storage.doDoesImageExist(photoIdAsString, size);
+	}
+
+	@Override
+	protected Set<PhotoSize> doGetExistingImageSizes(String photoIdAsString) {
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			if (!segments[photoSize.asInt()].contains(photoIdAsString)) {
+				return storage.doGetExistingImageSizes(photoIdAsString);
+			}
+		}
+		return EnumSet.allOf(PhotoSize.class);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public ImageStorage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getNoHits(PhotoSize photoSize) {
+		return segments[photoSize.asInt()].getNoHits();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getNoMisses(PhotoSize photoSize) {
+		return segments[photoSize.asInt()].getNoMisses();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getNoEvictions(PhotoSize photoSize) {
+		return segments[photoSize.asInt()].getNoEvictions();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getWeight(PhotoSize photoSize) {
+		return segments[photoSize.asInt()].getWeight();
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the hit rate over all sizes, or 0 if no image has been read yet.
+	 */
+	public double getHitRate() {
+		long noHits = 0;
+		long noReads = 0;
+		for (Segment segment : segments) {
+			long segmentHits = segment.getNoHits();
+			noHits += segmentHits;
+			noReads += segmentHits + segment.getNoMisses();
+		}
+		return noReads == 0 ? 0 : (double) noHits / noReads;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public String asString() {
+		StringBuilder result = new StringBuilder();
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			Segment segment = segments[photoSize.asInt()];
+			result.append(photoSize.asString()).append(": ").append(segment.asString()).append("; ");
+		}
+		return result.append("hit rate=").append(getHitRate()).toString();
+	}
+
+	/**
+	 * Passes all bytes on to the wrapped stream and keeps a copy of them, unless they exceed the limit.
+	 */
+	protected static class CapturingOutputStream extends FilterOutputStream {
+
+		/**
+		 *
+		 */
+		protected final long limit;
+		protected ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+		/**
+		 *
+		 */
+		protected CapturingOutputStream(OutputStream out, long limit) {
+			super(out);
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			capture(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			capture(b, off, len);
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected void capture(byte[] b, int off, int len) {
+			if (captured != null && captured.size() + len <= limit) {
+				captured.write(b, off, len);
+			} else {
+				captured = null;
+			}
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected void stopCapturing() {
+			captured = null;
+		}
+
+		/**
+		 * @methodtype boolean-query
+		 */
+		protected boolean isComplete() {
+			return captured != null;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected byte[] getCapturedBytes() {
+			return captured.toByteArray();
+		}
+	}
+
+	/**
+	 * The cached images of one size, least recently used first, bounded by the sum of their byte lengths.
+	 */
+	protected static class Segment {
+
+		/**
+		 *
+		 */
+		protected final long budget;
+
+		/**
+		 * Values are byte[] on the heap or direct ByteBuffers off the heap
+		 */
+		protected Map<String, Object> images = new LinkedHashMap<String, Object>(16, 0.75f, true);
+
+		/**
+		 *
+		 */
+		protected long weight = 0;
+		protected long noHits = 0;
+		protected long noMisses = 0;
+		protected long noEvictions = 0;
+
+		/**
+		 *
+		 */
+		protected Segment(long budget) {
+			this.budget = budget;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected synchronized byte[] get(String photoIdAsString) {
+			Object image = images.get(photoIdAsString);
+			if (image == null) {
+				noMisses++;
+				return null;
+			}
+
+			noHits++;
+			return asBytes(image);
+		}
+
+		/**
+		 * @methodtype get
+		 *
+		 * Returns a view of the cached bytes that shares the memory of the cache, so that off-heap images can be written
+		 * without copying them to the heap. The view stays valid if the image is evicted meanwhile.
+		 */
+		protected synchronized ByteBuffer getBuffer(String photoIdAsString) {
+			Object image = images.get(photoIdAsString);
+			if (image == null) {
+				noMisses++;
+				return null;
+			}
+
+			noHits++;
+			if (image instanceof ByteBuffer) {
+				return ((ByteBuffer) image).asReadOnlyBuffer();
+			}
+			return ByteBuffer.wrap((byte[]) image);
+		}
+
+		/**
+		 * @methodtype get
+		 *
+		 * Only looks at the first bytes of the image and does not change the statistics.
+		 */
+		protected synchronized ImageMetadata getMetadata(String photoIdAsString) {
+			Object image = images.get(photoIdAsString);
+			if (image instanceof ByteBuffer) {
+				return ImageMetadata.getFromImageData((ByteBuffer) image);
+			}
+			return image == null ? null : ImageMetadata.getFromImageData((byte[]) image);
+		}
+
+		/**
+		 * @methodtype conversion
+		 */
+		protected byte[] asBytes(Object image) {
+			if (image instanceof ByteBuffer) {
+				ByteBuffer buffer = ((ByteBuffer) image).duplicate();
+				byte[] result = new byte[buffer.remaining()];
+				buffer.get(result);
+				return result;
+			}
+			return (byte[]) image;
+		}
+
+		/**
+		 * @methodtype command
+		 *
+		 * Images larger than the whole budget are not cached at all.
+		 */
+		protected synchronized void put(String photoIdAsString, byte[] imageData, boolean isOffHeap) {
+			if (imageData == null || imageData.length > budget) {
+				return;
+			}
+
+			Object image = imageData;
+			if (isOffHeap) {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(imageData.length);
+				buffer.put(imageData);
+				buffer.flip();
+				image = buffer;
+			}
+
+			doRemove(photoIdAsString);
+			images.put(photoIdAsString, image);
+			weight += imageData.length;
+
+			for (Iterator<Object> i = images.values().iterator(); weight > budget && i.hasNext(); ) {
+				weight -= getWeightOf(i.next());
+				i.remove();
+				noEvictions++;
+			}
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected synchronized void remove(String photoIdAsString) {
+			doRemove(photoIdAsString);
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected void doRemove(String photoIdAsString) {
+			Object image = images.remove(photoIdAsString);
+			if (image != null) {
+				weight -= getWeightOf(image);
+			}
+		}
+
+		/**
+		 * @methodtype boolean-query
+		 */
+		protected synchronized boolean contains(String photoIdAsString) {
+			return images.containsKey(photoIdAsString);
+		}
+
+		/**
+		 * @methodtype helper
+		 */
+		protected int getWeightOf(Object image) {
+			return image instanceof ByteBuffer ? ((ByteBuffer) image).capacity() : ((byte[]) image).length;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected synchronized long getWeight() {
+			return weight;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected synchronized long getNoHits() {
+			return noHits;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected synchronized long getNoMisses() {
+			return noMisses;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected synchronized long getNoEvictions() {
+			return noEvictions;
+		}
+
+		/**
+		 * @methodtype conversion
+		 */
+		protected synchronized String asString() {
+			return "hits=" + noHits + ", misses=" + noMisses + ", evictions=" + noEvictions + ", bytes=" + weight +
+					"/" + budget;
+		}
+	}
+
+}
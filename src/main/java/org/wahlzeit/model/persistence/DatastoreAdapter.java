@@ -22,17 +22,30 @@ package org.wahlzeit.model.persistence;
 
 import com.google.appengine.api.images.Image;
 import com.google.appengine.api.images.ImagesServiceFactory;
+import com.googlecode.objectify.Key;
 import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.VoidWork;
 import com.googlecode.objectify.Work;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
-import org.wahlzeit.services.LogBuilder;
+import com.googlecode.objectify.annotation.Parent;
+import org.wahlzeit.model.PhotoSize;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.OfyService;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.security.InvalidParameterException;
-import java.util.logging.Logger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 /**
  * Adapter for the Google Datastore. Use default constructor to create an instance.
@@ -41,7 +54,12 @@ import java.util.logging.Logger;
  */
 public class DatastoreAdapter extends ImageStorage {
 
-	private static final Logger log = Logger.getLogger(DatastoreAdapter.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(DatastoreAdapter.class);
+
+	/**
+	 *
+	 */
+	protected ExistenceCache existenceCache = new ExistenceCache();
 
 
 	@Override
@@ -49,21 +67,34 @@ public class DatastoreAdapter extends ImageStorage {
 			throws IOException, InvalidParameterException {
 		if (image instanceof Image) {
 			final ImageWrapper imageWrapper = new ImageWrapper(photoIdAsString + size);
-			imageWrapper.setImage((Image) image);
+			final List<ImageChunk> chunks = imageWrapper.setImage((Image) image);
 
-			ObjectifyService.run(new Work<Boolean>() {
+			ObjectifyService.run(new VoidWork() {
 				@Override
-				public Boolean run() {
-					OfyService.ofy().save().entity(imageWrapper).now();
-					return null;
+				public void vrun() {
+					OfyService.ofy().transact(new VoidWork() {
+						@Override
+						public void vrun() {
+							ImageWrapper previous = OfyService.ofy().load().entity(imageWrapper).now();
+							if (previous != null && previous.getNoChunks() > chunks.size()) {
+								OfyService.ofy().delete().keys(
+										previous.getChunkKeys().subList(chunks.size(), previous.getNoChunks()));
+							}
+							OfyService.ofy().save().entities(chunks);
+							OfyService.ofy().save().entity(imageWrapper);
+						}
+					});
 				}
 			});
+			existenceCache.put(imageWrapper.id, true);
 
-			log.config(LogBuilder.createSystemMessage().addMessage("image successfully written").toString());
+			log.config(lb -> lb.
+					addMessage("image successfully written").
+					addParameter("number of chunks", chunks.size()));
 		} else {
-			log.warning(LogBuilder.createSystemMessage().
+			log.warning(lb -> lb.
 					addMessage("did not get an Image type to store").
-					addParameter("image type", image.toString()).toString());
+					addParameter("image type", image.toString()));
 		}
 	}
 
@@ -71,46 +102,209 @@ public class DatastoreAdapter extends ImageStorage {
 	protected Image doReadImage(final String photoIdAsString, final int size) throws IOException {
 		Image result = null;
 
-		ImageWrapper imageWrapper = ObjectifyService.run(new Work<ImageWrapper>() {
+		ImageWrapper imageWrapper = loadImageWrapper(photoIdAsString, size);
+		if (imageWrapper != null) {
+			if (imageWrapper.isChunked()) {
+				ByteArrayOutputStream imageData = new ByteArrayOutputStream(imageWrapper.getLength());
+				imageWrapper.writeChunksTo(imageData, loadChunks(imageWrapper.getChunkKeys()));
+				result = ImagesServiceFactory.makeImage(imageData.toByteArray());
+			} else {
+				result = imageWrapper.getImage();
+			}
+
+			if (result != null) {
+				log.config(lb -> lb.addMessage("image successfully read"));
+			} else {
+				log.warning(lb -> lb.addMessage("ImageWrapper contains no Image"));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	protected boolean doStreamImage(String photoIdAsString, int size, OutputStream out, ImageRangeSelector selector)
+			throws IOException {
+
+		ImageWrapper imageWrapper = loadImageWrapper(photoIdAsString, size);
+		if (imageWrapper == null) {
+			return false;
+		}
+
+		ImageRange range = selector.selectRange(getMetadataOf(imageWrapper));
+		if (range == null) {
+			return true;
+		}
+
+		long offset = range.getOffset();
+		long length = range.getLength();
+		if (!imageWrapper.isChunked()) {
+			writeRange(imageWrapper.getImageData(), out, offset, length);
+		} else if (offset == 0 && length >= imageWrapper.getLength()) {
+			imageWrapper.writeChunksTo(out, loadChunks(imageWrapper.getChunkKeys()));
+		} else {
+			List<Key<ImageChunk>> chunkKeys = imageWrapper.getChunkKeys(offset, length);
+			imageWrapper.writeChunkRangeTo(out, loadChunks(chunkKeys), offset, length);
+		}
+		return true;
+	}
+
+	@Override
+	protected ImageMetadata doGetImageMetadata(String photoIdAsString, int size) throws IOException {
+		ImageWrapper imageWrapper = loadImageWrapper(photoIdAsString, size);
+		return (imageWrapper == null) ? null : getMetadataOf(imageWrapper);
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected ImageMetadata getMetadataOf(ImageWrapper imageWrapper) {
+		if (!imageWrapper.isChunked()) {
+			return ImageMetadata.getFromImageData(imageWrapper.getImageData());
+		}
+		return new ImageMetadata(imageWrapper.getLength(), imageWrapper.getContentType());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected ImageWrapper loadImageWrapper(final String photoIdAsString, final int size) {
+		ImageWrapper result = ObjectifyService.run(new Work<ImageWrapper>() {
 			@Override
 			public ImageWrapper run() {
 				return OfyService.ofy().load().type(ImageWrapper.class).id(photoIdAsString + size).now();
 			}
 		});
 
-		if (imageWrapper == null) {
-			log.info(LogBuilder.createSystemMessage().addMessage("does not exist!").toString());
-		} else {
-			result = imageWrapper.getImage();
-			if (result != null) {
-				log.config(LogBuilder.createSystemMessage().addMessage("image successfully read").toString());
-			} else {
-				log.warning(LogBuilder.createSystemMessage().addMessage("ImageWrapper contains no Image").toString());
-			}
+		existenceCache.put(photoIdAsString + size, result != null);
+		if (result == null) {
+			log.info(lb -> lb.addMessage("does not exist!"));
 		}
 		return result;
 	}
 
+	/**
+	 * @methodtype get
+	 *
+	 * Loads the chunks with one batched get.
+	 */
+	protected Map<Key<ImageChunk>, ImageChunk> loadChunks(final List<Key<ImageChunk>> chunkKeys) {
+		return ObjectifyService.run(new Work<Map<Key<ImageChunk>, ImageChunk>>() {
+			@Override
+			public Map<Key<ImageChunk>, ImageChunk> run() {
+				return OfyService.ofy().load().keys(chunkKeys);
+			}
+		});
+	}
+
+	@Override
+	protected boolean doDoesImageExist(final String photoIdAsString, final int size) {
+		final String imageId = photoIdAsString + size;
+		Boolean result = existenceCache.get(imageId);
+		if (result == null) {
+			result = ObjectifyService.run(new Work<Boolean>() {
+				@Override
+				public Boolean run() {
+					return OfyService.ofy().load().type(ImageWrapper.class).
+							filterKey(Key.create(ImageWrapper.class, imageId)).keys().first().now() != null;
+				}
+			});
+			existenceCache.put(imageId, result);
+		}
+
+		boolean doesExist = result;
+		log.config(lb -> lb.addParameter("does image exist", doesExist));
+		return doesExist;
+	}
+
 	@Override
-	protected boolean doDoesImageExist(String photoIdAsString, int size) {
-		Image image = null;
-		boolean result = false;
-		try {
-			image = doReadImage(photoIdAsString, size);
-		} catch (IOException e) {
-			log.warning(
-					LogBuilder.createSystemMessage().addException("IOException when checking for Image existance", e)
-							.toString());
-		}
-		if (image != null) {
-			result = true;
-		}
-		log.config(LogBuilder.createSystemMessage().addParameter("does image exist", result).toString());
+	protected Set<PhotoSize> doGetExistingImageSizes(final String photoIdAsString) {
+		Set<PhotoSize> result = EnumSet.noneOf(PhotoSize.class);
+		final List<Key<ImageWrapper>> unknownKeys = new ArrayList<Key<ImageWrapper>>();
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			Boolean exists = existenceCache.get(photoIdAsString + photoSize.asInt());
+			if (exists == null) {
+				unknownKeys.add(Key.create(ImageWrapper.class, photoIdAsString + photoSize.asInt()));
+			} else if (exists) {
+				result.add(photoSize);
+			}
+		}
+
+		if (!unknownKeys.isEmpty()) {
+			List<Key<ImageWrapper>> existingKeys = ObjectifyService.run(new Work<List<Key<ImageWrapper>>>() {
+				@Override
+				public List<Key<ImageWrapper>> run() {
+					return OfyService.ofy().load().type(ImageWrapper.class).
+							filterKey("in", unknownKeys).keys().list();
+				}
+			});
+
+			for (Key<ImageWrapper> key : unknownKeys) {
+				boolean exists = existingKeys.contains(key);
+				existenceCache.put(key.getName(), exists);
+				if (exists) {
+					int size = Integer.parseInt(key.getName().substring(photoIdAsString.length()));
+					result.add(PhotoSize.getFromInt(size));
+				}
+			}
+		}
+
 		return result;
 	}
 
 	/**
-	 * Wrapper class to store {@link Image}s in the Google Datastore with Objectify.
+	 * Remembers whether images exist, so that repeated checks do not hit the Datastore. Images are never deleted, so
+	 * positive entries stay valid; negative entries expire, since another instance may write the image meanwhile.
+	 */
+	protected static class ExistenceCache {
+
+		/**
+		 *
+		 */
+		public static final int MAX_SIZE = 6000;
+		public static final long NEGATIVE_ENTRY_LIFETIME = 10000; // ms
+
+		/**
+		 * Expiration times per image id, least recently used first
+		 */
+		protected Map<String, Long> expirationTimes = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > MAX_SIZE;
+			}
+		};
+
+		/**
+		 * @methodtype get
+		 *
+		 * Returns null if the existence of the image is unknown.
+		 */
+		protected synchronized Boolean get(String imageId) {
+			Long expirationTime = expirationTimes.get(imageId);
+			if (expirationTime == null) {
+				return null;
+			} else if (expirationTime == Long.MAX_VALUE) {
+				return true;
+			} else if (expirationTime > System.currentTimeMillis()) {
+				return false;
+			}
+
+			expirationTimes.remove(imageId);
+			return null;
+		}
+
+		/**
+		 * @methodtype set
+		 */
+		protected synchronized void put(String imageId, boolean exists) {
+			long expirationTime = exists ? Long.MAX_VALUE : System.currentTimeMillis() + NEGATIVE_ENTRY_LIFETIME;
+			expirationTimes.put(imageId, expirationTime);
+		}
+	}
+
+	/**
+	 * Wrapper class to store {@link Image}s in the Google Datastore with Objectify. Images that do not fit into one
+	 * entity are split into ImageChunks; the wrapper then only holds the manifest, i.e. the length of the image, the
+	 * number of chunks, and a checksum over all bytes.
 	 * 
  	 * @review
 	 */
@@ -120,11 +314,21 @@ public class DatastoreAdapter extends ImageStorage {
 		// see https://cloud.google.com/datastore/docs/tools/administration
 		public final int maxEntitySize = 1024 * 1024; // = 1 MB
 
+		/**
+		 * Leaves room for the key and properties of the entity
+		 */
+		public static final int CHUNK_SIZE = 1000 * 1000;
+
 		@Id
 		private String id;
 
 		private byte[] imageData;
 
+		private int length = 0;
+		private int noChunks = 0;
+		private long checksum = 0;
+		private String contentType = null;
+
 		public ImageWrapper() {
 			// just for Objectify to load it from Datastore
 		}
@@ -140,18 +344,191 @@ public class DatastoreAdapter extends ImageStorage {
 			return ImagesServiceFactory.makeImage(imageData);
 		}
 
+		/**
+		 * @methodtype get
+		 */
+		public byte[] getImageData() {
+			return imageData;
+		}
+
 		/**
 		 * @methodtype set
 		 *
-		 * Can not handle images >= 1 MB because this is the upper limit of entities in Google Datastore.
+		 * Images < CHUNK_SIZE are stored in the wrapper itself, larger images are split into the returned chunks, which
+		 * have to be saved along with the wrapper.
+		 */
+		public List<ImageChunk> setImage(Image image) {
+			byte[] data = image.getImageData();
+			List<ImageChunk> result = new ArrayList<ImageChunk>();
+
+			length = data.length;
+			checksum = getChecksumOf(data);
+			contentType = ImageMetadata.getContentTypeOf(data);
+			if (data.length < CHUNK_SIZE) {
+				imageData = data;
+				noChunks = 0;
+			} else {
+				imageData = null;
+				Key<ImageWrapper> key = Key.create(ImageWrapper.class, id);
+				for (int from = 0; from < data.length; from += CHUNK_SIZE) {
+					byte[] chunkData = Arrays.copyOfRange(data, from, Math.min(from + CHUNK_SIZE, data.length));
+					result.add(new ImageChunk(key, result.size() + 1, chunkData));
+				}
+				noChunks = result.size();
+			}
+
+			return result;
+		}
+
+		/**
+		 * @methodtype boolean-query
+		 */
+		public boolean isChunked() {
+			return noChunks > 0;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public String getContentType() {
+			return contentType;
+		}
+
+		/**
+		 * @methodtype get
 		 */
-		public void setImage(Image image) throws ArrayIndexOutOfBoundsException {
-			if(image.getImageData().length >= maxEntitySize) {
-				throw new ArrayIndexOutOfBoundsException("Can not store images >= 1 MB in the Google Datastore.");
+		public int getNoChunks() {
+			return noChunks;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public List<Key<ImageChunk>> getChunkKeys() {
+			Key<ImageWrapper> key = Key.create(ImageWrapper.class, id);
+			List<Key<ImageChunk>> result = new ArrayList<Key<ImageChunk>>(noChunks);
+			for (int index = 1; index <= noChunks; index++) {
+				result.add(Key.create(key, ImageChunk.class, index));
 			}
-			else {
-				imageData = image.getImageData();
+			return result;
+		}
+
+		/**
+		 * @methodtype get
+		 *
+		 * Returns the keys of the chunks that hold at least one byte of the range.
+		 */
+		public List<Key<ImageChunk>> getChunkKeys(long offset, long length) {
+			List<Key<ImageChunk>> result = new ArrayList<Key<ImageChunk>>();
+			long end = offset + Math.min(length, this.length - offset);
+			if (offset < end) {
+				List<Key<ImageChunk>> chunkKeys = getChunkKeys();
+				result.addAll(chunkKeys.subList((int) (offset / CHUNK_SIZE), (int) ((end - 1) / CHUNK_SIZE) + 1));
 			}
+			return result;
+		}
+
+		/**
+		 * @methodtype command
+		 *
+		 * Writes the part of the range that each of the given chunks holds. The checksum covers the whole image, so
+		 * only the completeness of the chunks can be checked.
+		 */
+		public void writeChunkRangeTo(OutputStream out, Map<Key<ImageChunk>, ImageChunk> chunks, long offset,
+				long length) throws IOException {
+
+			long end = offset + Math.min(length, this.length - offset);
+			for (Key<ImageChunk> key : getChunkKeys(offset, length)) {
+				ImageChunk chunk = chunks.get(key);
+				long chunkStart = (key.getId() - 1) * CHUNK_SIZE;
+				long expectedLength = Math.min(CHUNK_SIZE, this.length - chunkStart);
+				if (chunk == null || chunk.getData().length != expectedLength) {
+					throw new IOException("missing or incomplete chunk " + key.getId() + " of image " + id);
+				}
+
+				int from = (int) (Math.max(offset, chunkStart) - chunkStart);
+				int to = (int) (Math.min(end, chunkStart + expectedLength) - chunkStart);
+				out.write(chunk.getData(), from, to - from);
+			}
+		}
+
+		/**
+		 * @methodtype command
+		 *
+		 * Checks that all chunks are complete and match the checksum, then writes them to the stream one by one.
+		 */
+		public void writeChunksTo(OutputStream out, Map<Key<ImageChunk>, ImageChunk> chunks) throws IOException {
+			List<byte[]> chunkData = new ArrayList<byte[]>(noChunks);
+			CRC32 crc = new CRC32();
+			int noBytes = 0;
+			for (Key<ImageChunk> key : getChunkKeys()) {
+				ImageChunk chunk = chunks.get(key);
+				if (chunk == null) {
+					throw new IOException("missing chunk " + key.getId() + " of image " + id);
+				}
+				crc.update(chunk.getData());
+				noBytes += chunk.getData().length;
+				chunkData.add(chunk.getData());
+			}
+
+			if (noBytes != length || crc.getValue() != checksum) {
+				throw new IOException("chunks of image " + id + " do not match the manifest");
+			}
+
+			for (byte[] data : chunkData) {
+				out.write(data);
+			}
+		}
+
+		/**
+		 * @methodtype helper
+		 */
+		protected static long getChecksumOf(byte[] data) {
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			return crc.getValue();
+		}
+	}
+
+	/**
+	 * One part of an image that is too large for a single entity; child of its ImageWrapper.
+	 */
+	@Entity
+	public static class ImageChunk {
+
+		@Parent
+		private Key<ImageWrapper> wrapper;
+
+		/**
+		 * 1-based, as the Datastore does not accept 0 as id
+		 */
+		@Id
+		private Long index;
+
+		private byte[] data;
+
+		public ImageChunk() {
+			// just for Objectify to load it from Datastore
+		}
+
+		public ImageChunk(Key<ImageWrapper> wrapper, long index, byte[] data) {
+			this.wrapper = wrapper;
+			this.index = index;
+			this.data = data;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public byte[] getData() {
+			return data;
 		}
 	}
 }
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model.persistence;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.wahlzeit.services.LazyLogger;
+import org.wahlzeit.services.SysConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adapter for the local file system. Images are stored as one file per photo and size in a sharded directory layout,
+ * i.e. rootDir/&lt;shard&gt;/&lt;photo id&gt;-&lt;size&gt;.img with 256 shards, so that no directory grows too large.
+ * Writes go to a temporary file first that is renamed atomically. Reads map the file into memory. Which images exist
+ * is answered from an in-memory index that is built once from the directory tree.
+ */
+public class FileSystemImageStorage extends ImageStorage {
+
+	private static final LazyLogger log = LazyLogger.getLogger(FileSystemImageStorage.class);
+
+	/**
+	 *
+	 */
+	public static final String IMAGE_FILE_ENDING = ".img";
+	public static final String TEMP_FILE_ENDING = ".tmp";
+	public static final int NO_SHARDS = 256;
+
+	/**
+	 *
+	 */
+	protected final Path rootDir;
+
+	/**
+	 * File names of all stored images
+	 */
+	protected Set<String> index = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Uses the photos directory of the SysConfig
+	 */
+	public FileSystemImageStorage() throws IOException {
+		this(new File(SysConfig.getPhotosDir().asString()));
+	}
+
+	/**
+	 *
+	 */
+	public FileSystemImageStorage(File rootDir) throws IOException {
+		this.rootDir = rootDir.toPath();
+		Files.createDirectories(this.rootDir);
+		buildIndex();
+	}
+
+	/**
+	 * @methodtype initialization
+	 *
+	 * Indexes all image files; temporary files left over by interrupted writes are deleted.
+	 */
+	protected void buildIndex() throws IOException {
+		try (DirectoryStream<Path> shardDirs = Files.newDirectoryStream(rootDir)) {
+			for (Path shardDir : shardDirs) {
+				if (!Files.isDirectory(shardDir)) {
+					continue;
+				}
+
+				try (DirectoryStream<Path> files = Files.newDirectoryStream(shardDir)) {
+					for (Path file : files) {
+						String fileName = file.getFileName().toString();
+						if (fileName.endsWith(IMAGE_FILE_ENDING)) {
+							index.add(fileName);
+						} else if (fileName.endsWith(TEMP_FILE_ENDING)) {
+							Files.deleteIfExists(file);
+						}
+					}
+				}
+			}
+		}
+
+		log.config(lb -> lb.
+				addParameter("indexed images", index.size()).
+				addParameter("directory", rootDir));
+	}
+
+	@Override
+	protected void doWriteImage(Serializable image, String photoIdAsString, int size)
+			throws IOException, InvalidParameterException {
+		if (!(image instanceof Image)) {
+			log.warning(lb -> lb.
+					addMessage("did not get an Image type to store").
+					addParameter("image type", image.toString()));
+			return;
+		}
+
+		String fileName = getFileName(photoIdAsString, size);
+		Path target = getPath(fileName);
+		Files.createDirectories(target.getParent());
+
+		Path tempFile = Files.createTempFile(target.getParent(), fileName, TEMP_FILE_ENDING);
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap(((Image) image).getImageData());
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+
+			try {
+				Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+
+		index.add(fileName);
+		log.config(lb -> lb.addMessage("image successfully written"));
+	}
+
+	@Override
+	protected Serializable doReadImage(String photoIdAsString, int size) throws IOException {
+		MappedByteBuffer buffer = mapImage(photoIdAsString, size);
+		if (buffer == null) {
+			return null;
+		}
+
+		byte[] imageData = new byte[buffer.remaining()];
+		buffer.get(imageData);
+		return ImagesServiceFactory.makeImage(imageData);
+	}
+
+	@Override
+	protected boolean doStreamImage(String photoIdAsString, int size, OutputStream out, ImageRangeSelector selector)
+			throws IOException {
+
+		MappedByteBuffer buffer = mapImage(photoIdAsString, size);
+		if (buffer == null) {
+			return false;
+		}
+
+		ImageRange range = selector.selectRange(ImageMetadata.getFromImageData(buffer));
+		if (range != null) {
+			writeRange(buffer, out, range.getOffset(), range.getLength());
+		}
+		return true;
+	}
+
+	@Override
+	protected ImageMetadata doGetImageMetadata(String photoIdAsString, int size) throws IOException {
+		String fileName = getFileName(photoIdAsString, size);
+		if (!index.contains(fileName)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(getPath(fileName), StandardOpenOption.READ)) {
+			ByteBuffer head = ByteBuffer.allocate((int) Math.min(16, channel.size()));
+			while (head.hasRemaining() && channel.read(head) >= 0) {
+				// only the first bytes are needed to tell the content type
+			}
+			return new ImageMetadata(channel.size(), ImageMetadata.getContentTypeOf(head.array()));
+		} catch (NoSuchFileException ex) {
+			log.warning(lb -> lb.
+					addParameter("file name", fileName).
+					addMessage("indexed image file has been removed"));
+			index.remove(fileName);
+			return null;
+		}
+	}
+
+	@Override
+	protected boolean doDoesImageExist(String photoIdAsString, int size) {
+		return index.contains(getFileName(photoIdAsString, size));
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Maps the image into memory. Returns null if the image does not exist. Mapping a file does not read it yet, and
+	 * the mapping stays valid after the channel has been closed.
+	 */
+	protected MappedByteBuffer mapImage(String photoIdAsString, int size) throws IOException {
+
+		String fileName = getFileName(photoIdAsString, size);
+		if (!index.contains(fileName)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(getPath(fileName), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (NoSuchFileException ex) {
+			log.warning(lb -> lb.
+					addParameter("file name", fileName).
+					addMessage("indexed image file has been removed"));
+			index.remove(fileName);
+			return null;
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected String getFileName(String photoIdAsString, int size) {
+		return photoIdAsString + "-" + size + IMAGE_FILE_ENDING;
+	}
+
+	/**
+	 * @methodtype conversion
+	 *
+	 * All sizes of a photo end up in the same shard.
+	 */
+	protected Path getPath(String fileName) {
+		String photoIdAsString = fileName.substring(0, fileName.lastIndexOf('-'));
+		int shard = (photoIdAsString.hashCode() & Integer.MAX_VALUE) % NO_SHARDS;
+		return rootDir.resolve(String.format("%02x", shard)).resolve(fileName);
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model.persistence;
+
+import java.nio.ByteBuffer;
+
+/**
+ * What needs to be known about a stored image before streaming it, i.e. its length in bytes and its content type.
+ */
+public class ImageMetadata {
+
+	/**
+	 *
+	 */
+	public static final String JPEG = "image/jpeg";
+	public static final String PNG = "image/png";
+	public static final String GIF = "image/gif";
+	public static final String WEBP = "image/webp";
+	public static final String UNKNOWN = "application/octet-stream";
+
+	/**
+	 *
+	 */
+	protected final long length;
+	protected final String contentType;
+
+	/**
+	 *
+	 */
+	public ImageMetadata(long length, String contentType) {
+		this.length = length;
+		this.contentType = contentType;
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static ImageMetadata getFromImageData(byte[] imageData) {
+		return new ImageMetadata(imageData.length, getContentTypeOf(imageData));
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Only looks at the first bytes of the remaining image data.
+	 */
+	public static ImageMetadata getFromImageData(ByteBuffer imageData) {
+		ByteBuffer buffer = imageData.duplicate();
+		byte[] head = new byte[Math.min(16, buffer.remaining())];
+		buffer.get(head);
+		return new ImageMetadata(imageData.remaining(), getContentTypeOf(head));
+	}
+
+	/**
+	 * @methodtype conversion
+	 *
+	 * Derives the content type from the magic number at the start of the image data.
+	 */
+	public static String getContentTypeOf(byte[] imageData) {
+		if (imageData == null) {
+			return UNKNOWN;
+		} else if (startsWith(imageData, 0, 0xFF, 0xD8, 0xFF)) {
+			return JPEG;
+		} else if (startsWith(imageData, 0, 0x89, 'P', 'N', 'G')) {
+			return PNG;
+		} else if (startsWith(imageData, 0, 'G', 'I', 'F', '8')) {
+			return GIF;
+		} else if (startsWith(imageData, 0, 'R', 'I', 'F', 'F') && startsWith(imageData, 8, 'W', 'E', 'B', 'P')) {
+			return WEBP;
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected static boolean startsWith(byte[] data, int offset, int... magicNumber) {
+		if (data.length < offset + magicNumber.length) {
+			return false;
+		}
+
+		for (int i = 0; i < magicNumber.length; i++) {
+			if ((data[offset + i] & 0xFF) != magicNumber[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model.persistence;
+
+/**
+ * The bytes of a stored image that are to be written, from offset (inclusive), at most length bytes.
+ */
+public class ImageRange {
+
+	/**
+	 *
+	 */
+	public static final ImageRange ALL = new ImageRange(0, Long.MAX_VALUE);
+
+	/**
+	 *
+	 */
+	protected final long offset;
+	protected final long length;
+
+	/**
+	 *
+	 */
+	public ImageRange(long offset, long length) {
+		if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException("Invalid range: offset " + offset + ", length " + length);
+		}
+
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isComplete(ImageMetadata metadata) {
+		return offset == 0 && length >= metadata.getLength();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getLength() {
+		return length;
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model.persistence;
+
+import java.io.IOException;
+
+/**
+ * An image range selector decides which bytes of a stored image to write once the storage has found the image, so
+ * that a client can be answered with a single read of the storage.
+ *
+ * @see ImageStorage#streamImage(String, int, java.io.OutputStream, ImageRangeSelector)
+ */
+public interface ImageRangeSelector {
+
+	/**
+	 * Called with the metadata of the image before any of its bytes are written. Returns the range to write, or null
+	 * to write nothing, e.g. if the requested range cannot be satisfied.
+	 * @methodtype get
+	 */
+	ImageRange selectRange(ImageMetadata metadata) throws IOException;
+
+}
@@ -1,12 +1,18 @@
 package org.wahlzeit.model.persistence;
 
+import com.google.appengine.api.images.Image;
 import org.wahlzeit.model.PhotoSize;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.security.InvalidParameterException;
-import java.util.logging.Logger;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Abstract super class that offers a convenient interface for all kinds of storage types to store images.
@@ -15,7 +21,7 @@ import java.util.logging.Logger;
  */
 public abstract class ImageStorage {
 
-	private static final Logger log = Logger.getLogger(ImageStorage.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(ImageStorage.class);
 	private static ImageStorage instance = null;
 
 	/**
@@ -34,9 +40,9 @@ public abstract class ImageStorage {
 	 * @methodtype set
 	 */
 	public static void setInstance(ImageStorage newInstance) {
-		log.config(LogBuilder.createSystemMessage().
+		log.config(lb -> lb.
 				addAction("set ImageStorage instance").
-				addParameter("instance", newInstance).toString());
+				addParameter("instance", newInstance));
 		instance = newInstance;
 	}
 
@@ -57,11 +63,11 @@ public abstract class ImageStorage {
 		assertValidPhotoId(photoIdAsString);
 		PhotoSize.assertIsValidPhotoSizeAsInt(size);
 
-		log.config(LogBuilder.createSystemMessage().
+		log.config(lb -> lb.
 				addAction("write image to storage").
 				addParameter("image", image).
 				addParameter("photo id", photoIdAsString).
-				addParameter("size", size).toString());
+				addParameter("size", size));
 
 		doWriteImage(image, photoIdAsString, size);
 	}
@@ -90,10 +96,10 @@ public abstract class ImageStorage {
 		assertValidPhotoId(photoIdAsString);
 		PhotoSize.assertIsValidPhotoSizeAsInt(size);
 
-		log.config(LogBuilder.createSystemMessage().
+		log.config(lb -> lb.
 				addAction("read image from storage").
 				addParameter("photo id", photoIdAsString).
-				addParameter("size", size).toString());
+				addParameter("size", size));
 
 		return doReadImage(photoIdAsString, size);
 	}
@@ -107,6 +113,143 @@ public abstract class ImageStorage {
 	protected abstract Serializable doReadImage(String filename, int size)
 			throws IOException;
 
+	/**
+	 * Writes the bytes of the specified image to the output stream. Returns false without writing anything if the
+	 * image is not found.
+	 *
+	 * @methodtype command
+	 * @methodproperty convenience
+	 */
+	public boolean streamImage(String photoIdAsString, int size, OutputStream out)
+			throws IllegalArgumentException, IOException {
+
+		return streamImage(photoIdAsString, size, out, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Writes at most length bytes of the specified image, starting at offset, to the output stream. Returns false
+	 * without writing anything if the image is not found.
+	 *
+	 * @methodtype command
+	 * @methodproperty convenience
+	 */
+	public boolean streamImage(String photoIdAsString, int size, OutputStream out, long offset, long length)
+			throws IllegalArgumentException, IOException {
+
+		assertValidRange(offset, length);
+		ImageRange range = new ImageRange(offset, length);
+		return streamImage(photoIdAsString, size, out, metadata -> range);
+	}
+
+	/**
+	 * Writes the range of the specified image that the selector picks, once it knows the metadata of the image, to the
+	 * output stream. The storage is read only once. Returns false without calling the selector if the image is not
+	 * found.
+	 *
+	 * @methodtype command
+	 * @methodproperty wrapper
+	 */
+	public boolean streamImage(String photoIdAsString, int size, OutputStream out, ImageRangeSelector selector)
+			throws IllegalArgumentException, IOException {
+
+		assertValidPhotoId(photoIdAsString);
+		PhotoSize.assertIsValidPhotoSizeAsInt(size);
+
+		log.config(lb -> lb.
+				addAction("stream image from storage").
+				addParameter("photo id", photoIdAsString).
+				addParameter("size", size));
+
+		return doStreamImage(photoIdAsString, size, out, selector);
+	}
+
+	/**
+	 * Actually streams the image; storages that can avoid materializing the whole image override this default
+	 *
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	protected boolean doStreamImage(String photoIdAsString, int size, OutputStream out, ImageRangeSelector selector)
+			throws IOException {
+
+		Serializable image = doReadImage(photoIdAsString, size);
+		if (!(image instanceof Image)) {
+			return false;
+		}
+
+		byte[] imageData = ((Image) image).getImageData();
+		ImageRange range = selector.selectRange(ImageMetadata.getFromImageData(imageData));
+		if (range != null) {
+			writeRange(imageData, out, range.getOffset(), range.getLength());
+		}
+		return true;
+	}
+
+	/**
+	 * Returns length and content type of the specified image, or null if it is not found
+	 *
+	 * @methodtype get
+	 * @methodproperty wrapper
+	 */
+	public ImageMetadata getImageMetadata(String photoIdAsString, int size)
+			throws IllegalArgumentException, IOException {
+
+		assertValidPhotoId(photoIdAsString);
+		PhotoSize.assertIsValidPhotoSizeAsInt(size);
+
+		return doGetImageMetadata(photoIdAsString, size);
+	}
+
+	/**
+	 * Actually determines the metadata; storages that keep the metadata separately override this default
+	 *
+	 * @methodtype get
+	 * @methodproperty hook
+	 */
+	protected ImageMetadata doGetImageMetadata(String photoIdAsString, int size) throws IOException {
+		Serializable image = doReadImage(photoIdAsString, size);
+		if (!(image instanceof Image)) {
+			return null;
+		}
+
+		return ImageMetadata.getFromImageData(((Image) image).getImageData());
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static void writeRange(byte[] imageData, OutputStream out, long offset, long length) throws IOException {
+		if (offset < imageData.length) {
+			out.write(imageData, (int) offset, (int) Math.min(length, imageData.length - offset));
+		}
+	}
+
+	/**
+	 * @methodtype helper
+	 *
+	 * Writes the range of a direct buffer through a channel, i.e. without copying the whole image to the heap.
+	 */
+	protected static void writeRange(ByteBuffer imageData, OutputStream out, long offset, long length)
+			throws IOException {
+
+		if (offset >= imageData.remaining()) {
+			return;
+		}
+
+		ByteBuffer range = imageData.duplicate();
+		range.position(range.position() + (int) offset);
+		range.limit(range.position() + (int) Math.min(length, range.remaining()));
+		if (range.hasArray()) {
+			out.write(range.array(), range.arrayOffset() + range.position(), range.remaining());
+			return;
+		}
+
+		WritableByteChannel channel = Channels.newChannel(out);
+		while (range.hasRemaining()) {
+			channel.write(range);
+		}
+	}
+
 
 	// exist method ----------------------------------------------------------------------------------------------------
 
@@ -122,10 +265,10 @@ public abstract class ImageStorage {
 		assertValidPhotoId(photoIdAsString);
 		PhotoSize.assertIsValidPhotoSizeAsInt(size);
 
-		log.config(LogBuilder.createSystemMessage().
+		log.config(lb -> lb.
 				addAction("check if image exists in storage").
 				addParameter("photo id", photoIdAsString).
-				addParameter("size", size).toString());
+				addParameter("size", size));
 
 		return doDoesImageExist(photoIdAsString, size);
 	}
@@ -139,6 +282,41 @@ public abstract class ImageStorage {
 	 */
 	protected abstract boolean doDoesImageExist(String photoIdAsString, int size);
 
+	/**
+	 * Returns the sizes of the photo that exist in the storage, checking all sizes at once
+	 *
+	 * @methodtype get
+	 * @methodproperty wrapper
+	 */
+	public Set<PhotoSize> getExistingImageSizes(String photoIdAsString)
+			throws IllegalArgumentException {
+
+		assertValidPhotoId(photoIdAsString);
+
+		log.config(lb -> lb.
+				addAction("check which images exist in storage").
+				addParameter("photo id", photoIdAsString));
+
+		return doGetExistingImageSizes(photoIdAsString);
+	}
+
+	/**
+	 * Actually checks which sizes of the photo exist; storages that can check several images in one round trip
+	 * override this default, which checks size by size
+	 *
+	 * @methodtype get
+	 * @methodproperty hook
+	 */
+	protected Set<PhotoSize> doGetExistingImageSizes(String photoIdAsString) {
+		Set<PhotoSize> result = EnumSet.noneOf(PhotoSize.class);
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			if (doDoesImageExist(photoIdAsString, photoSize.asInt())) {
+				result.add(photoSize);
+			}
+		}
+		return result;
+	}
+
 
 	// assertion methods -----------------------------------------------------------------------------------------------
 
@@ -153,6 +331,17 @@ public abstract class ImageStorage {
 		}
 	}
 
+	/**
+	 * @methodtype assert
+	 */
+	protected void assertValidRange(long offset, long length)
+			throws IllegalArgumentException {
+
+		if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException("Invalid range: offset " + offset + ", length " + length);
+		}
+	}
+
 	/**
 	 * @methodtype assert
 	 */
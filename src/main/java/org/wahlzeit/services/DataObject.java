@@ -21,6 +21,7 @@
 package org.wahlzeit.services;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A simple abstract implementation of Persistent with write count and dirty bit.
@@ -33,11 +34,21 @@ public abstract class DataObject implements Persistent, Serializable {
 	 */
 	public static final String ID = "id";
 
+	/**
+	 * Source of the write versions, which are unique over all data objects
+	 */
+	protected static final AtomicLong lastWriteVersion = new AtomicLong();
+
 	/**
 	 *
 	 */
 	protected transient int writeCount = 0;
 
+	/**
+	 * 0 until it is first needed
+	 */
+	protected transient long writeVersion = 0;
+
 	/**
 	 *
 	 */
@@ -48,15 +59,57 @@ public abstract class DataObject implements Persistent, Serializable {
 	/**
 	 *
 	 */
-	public final void resetWriteCount() {
+	public final synchronized void resetWriteCount() {
 		writeCount = 0;
 	}
 
 	/**
 	 *
 	 */
-	public final void incWriteCount() {
+	public final synchronized int getWriteCount() {
+		return writeCount;
+	}
+
+	/**
+	 *
+	 */
+	public final synchronized boolean resetWriteCount(int writeCount) {
+		if (this.writeCount != writeCount) {
+			return false;
+		}
+		this.writeCount = 0;
+		return true;
+	}
+
+	/**
+	 *
+	 */
+	public final synchronized void incWriteCount() {
 		writeCount++;
+		writeVersion = lastWriteVersion.incrementAndGet();
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Changes whenever the object is changed. Unlike the write count it is not reset when the object is written, and
+	 * an object read from storage gets a new one, so whatever was derived from an object is current as long as its
+	 * write version has not changed.
+	 */
+	public final long getWriteVersion() {
+		if (writeVersion == 0) {
+			writeVersion = lastWriteVersion.incrementAndGet();
+		}
+		return writeVersion;
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Hands out write versions to persistent objects that are not data objects, e.g. clients.
+	 */
+	public static long getNextWriteVersion() {
+		return lastWriteVersion.incrementAndGet();
 	}
 
 	/**
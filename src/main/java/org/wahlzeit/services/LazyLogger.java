@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Facade for a {@link Logger} that builds log messages only if their level is enabled. The message parts are added
+ * by a {@link LogMessage} to a {@link LogBuilder} that is reused by the current thread, so logging at a disabled level
+ * neither looks up the session and client nor concatenates any strings. Enabled messages are logged as a
+ * {@link StructuredLogRecord}, whose text is put together only if a handler asks for it.
+ */
+public class LazyLogger {
+
+	/**
+	 *
+	 */
+	protected static final ThreadLocal<LogBuilder> builders = ThreadLocal.withInitial(LogBuilder::new);
+
+	/**
+	 * Marks builders that are in use, e.g. while a parameter's toString() logs itself
+	 */
+	protected static final ThreadLocal<Boolean> isBuilderInUse = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+	/**
+	 *
+	 */
+	protected final Logger logger;
+
+	/**
+	 *
+	 */
+	protected LazyLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static LazyLogger getLogger(Class<?> type) {
+		return new LazyLogger(Logger.getLogger(type.getName()));
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public Logger getLogger() {
+		return logger;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isLoggable(Level level) {
+		return logger.isLoggable(level);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void fine(LogMessage message) {
+		log(Level.FINE, LogBuilder.SYSTEM_LEVEL, message);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void config(LogMessage message) {
+		log(Level.CONFIG, LogBuilder.SYSTEM_LEVEL, message);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void info(LogMessage message) {
+		log(Level.INFO, LogBuilder.SYSTEM_LEVEL, message);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void warning(LogMessage message) {
+		log(Level.WARNING, LogBuilder.SYSTEM_LEVEL, message);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void severe(LogMessage message) {
+		log(Level.SEVERE, LogBuilder.SYSTEM_LEVEL, message);
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Logs an action of the user, see {@link LogBuilder#createUserMessage()}.
+	 */
+	public void userConfig(LogMessage message) {
+		log(Level.CONFIG, LogBuilder.USER_LEVEL, message);
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Logs an action of the user, see {@link LogBuilder#createUserMessage()}.
+	 */
+	public void userInfo(LogMessage message) {
+		log(Level.INFO, LogBuilder.USER_LEVEL, message);
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Logs a plain message that is only computed if the level is enabled.
+	 */
+	public void log(Level level, Supplier<String> message) {
+		if (logger.isLoggable(level)) {
+			logger.log(level, message.get());
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void log(Level level, String builderLevel, LogMessage message) {
+		if (!logger.isLoggable(level)) {
+			return;
+		}
+
+		if (isBuilderInUse.get()) {
+			LogBuilder builder = LogBuilder.doCreateMessage(builderLevel);
+			message.addTo(builder);
+			logger.log(new StructuredLogRecord(level, logger.getName(), builder));
+			return;
+		}
+
+		isBuilderInUse.set(Boolean.TRUE);
+		try {
+			LogBuilder builder = builders.get();
+			builder.initialize(builderLevel);
+			message.addTo(builder);
+			logger.log(new StructuredLogRecord(level, logger.getName(), builder.copy()));
+		} finally {
+			isBuilderInUse.set(Boolean.FALSE);
+		}
+	}
+
+	/**
+	 * The parts of a log message, added only when the message is going to be logged.
+	 */
+	@FunctionalInterface
+	public interface LogMessage {
+
+		/**
+		 * @methodtype command
+		 */
+		void addTo(LogBuilder builder);
+
+	}
+
+}
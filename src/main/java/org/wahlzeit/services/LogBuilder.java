@@ -7,6 +7,7 @@ import org.wahlzeit.model.UserSession;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 
 /**
  * Builder class for log messages, that ensures that log messages are all formatted equally.
@@ -38,10 +39,29 @@ public class LogBuilder {
 	protected static final String EXCEPTION_REASON = "exception reason";
 	protected static final String STACKTRACE = "stacktrace";
 
+	/**
+	 * Reused builders drop their buffers once they have grown beyond this, e.g. after a stack trace
+	 */
+	protected static final int MAX_RETAINED_CAPACITY = 4 * 1024;
+	protected static final int MAX_RETAINED_FIELDS = 32;
+
+	/**
+	 * The parts of the message as name/value pairs; messages have no name, stack traces are rendered when needed
+	 */
+	protected String[] names;
+	protected Object[] values;
+	protected int noFields = 0;
+
 	protected StringBuilder logMessage;
 
 
 	protected LogBuilder() {
+		this(8);
+	}
+
+	protected LogBuilder(int capacity) {
+		names = new String[capacity];
+		values = new Object[capacity];
 		logMessage = new StringBuilder();
 	}
 
@@ -66,42 +86,63 @@ public class LogBuilder {
 	 */
 	protected static LogBuilder doCreateMessage(String level) {
 		LogBuilder result = new LogBuilder();
-		Session session = SessionManager.getThreadLocalSession();
-		String sessionName;
-		String clientName;
-		if (session != null) {
-			sessionName = session.getName();
-			Client client = UserManager.getInstance().getClientById(session.getClientId());
-			if (client != null) {
-				clientName = client.getNickName();
-			} else {
-				clientName = UserSession.ANONYMOUS_CLIENT;
-			}
+		result.initialize(level);
+		return result;
+	}
+
+	/**
+	 * @methodtype init
+	 *
+	 * Clears the message, so that the builder can be reused, and adds the level, session, and client.
+	 */
+	protected void initialize(String level) {
+		if (names.length > MAX_RETAINED_FIELDS) {
+			names = new String[8];
+			values = new Object[8];
 		} else {
-			sessionName = Session.NO_SESSION;
-			clientName = UserSession.ANONYMOUS_CLIENT;
+			Arrays.fill(values, 0, noFields, null);
 		}
+		noFields = 0;
 
-		result.add(LEVEL + NAME_VALUE_SEPARATOR + level);
-		result.add(SESSION + NAME_VALUE_SEPARATOR + sessionName);
-		result.add(CLIENT + NAME_VALUE_SEPARATOR + clientName);
+		Session session = SessionManager.getThreadLocalSession();
+		add(LEVEL, level);
+		add(SESSION, (session != null) ? session.getName() : Session.NO_SESSION);
+		add(CLIENT, getClientName(session));
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Resolving the client is a lookup in the UserManager, so the client name is cached in the session until its
+	 * client id changes. Sessions are created anew for every request.
+	 */
+	protected static String getClientName(Session session) {
+		if (session == null) {
+			return UserSession.ANONYMOUS_CLIENT;
+		}
 
+		String clientId = session.getClientId();
+		String result = session.getLogClientName(clientId);
+		if (result == null) {
+			Client client = UserManager.getInstance().getClientById(clientId);
+			result = (client != null) ? client.getNickName() : UserSession.ANONYMOUS_CLIENT;
+			session.setLogClientName(clientId, result);
+		}
 		return result;
 	}
 
 	/**
 	 * @methodtype set
 	 */
-	protected void add(String logMessagePart) {
-
-		assert logMessage != null;
-
-		if (logMessage.length() == 0) {
-			logMessage.append(logMessagePart);
-		} else {
-			logMessage.append(INFO_SEPARATOR);
-			logMessage.append(logMessagePart);
+	protected void add(String name, Object value) {
+		if (noFields == names.length) {
+			names = Arrays.copyOf(names, 2 * noFields);
+			values = Arrays.copyOf(values, 2 * noFields);
 		}
+
+		names[noFields] = name;
+		values[noFields] = value;
+		noFields++;
 	}
 
 
@@ -123,7 +164,7 @@ public class LogBuilder {
 	 * Adds the following to the LogMessage: ", <name>=<value>".
 	 */
 	public LogBuilder addParameter(String name, int value) {
-		add(name + NAME_VALUE_SEPARATOR + String.valueOf(value));
+		add(String.valueOf(name), String.valueOf(value));
 		return this;
 	}
 
@@ -133,7 +174,7 @@ public class LogBuilder {
 	 * Adds the following to the LogMessage: ", <name>=<value>".
 	 */
 	public LogBuilder addParameter(String name, boolean value) {
-		add(name + NAME_VALUE_SEPARATOR + String.valueOf(value));
+		add(String.valueOf(name), String.valueOf(value));
 		return this;
 	}
 
@@ -143,17 +184,18 @@ public class LogBuilder {
 	 * Adds the following to the LogMessage: ", <name>=<value>".
 	 */
 	public LogBuilder addParameter(String name, String value) {
-		add(name + NAME_VALUE_SEPARATOR + value);
+		add(String.valueOf(name), String.valueOf(value));
 		return this;
 	}
 
 	/**
 	 * @methodtype mutate
 	 *
-	 * Adds the following to the LogMessage: ", <name>=<value>.toString()".
+	 * Adds the following to the LogMessage: ", <name>=<value>.toString()". The value is converted right away, as it
+	 * may change before the message is written.
 	 */
 	public LogBuilder addParameter(String name, Object value) {
-		add(name + NAME_VALUE_SEPARATOR + value.toString());
+		add(String.valueOf(name), value.toString());
 		return this;
 	}
 
@@ -163,20 +205,19 @@ public class LogBuilder {
 	 * Adds the message to the LogMessage: ", <message>".
 	 */
 	public LogBuilder addMessage(String message) {
-		add(message);
+		add(null, String.valueOf(message));
 		return this;
 	}
 
 	/**
 	 * @methodtype mutate
 	 *
-	 * Adds the stacktrace and the <code>exceptionMessage</code> to the log message.
+	 * Adds the stacktrace and the <code>exceptionMessage</code> to the log message. The stacktrace is only rendered
+	 * when the message is, which may be on another thread.
 	 */
 	public LogBuilder addException(String exceptionMessage, Throwable throwable) {
-		add(EXCEPTION_REASON + NAME_VALUE_SEPARATOR + exceptionMessage);
-		StringWriter sw = new StringWriter();
-		throwable.printStackTrace(new PrintWriter(sw));
-		add(STACKTRACE + NAME_VALUE_SEPARATOR + sw.toString());
+		add(EXCEPTION_REASON, String.valueOf(exceptionMessage));
+		add(STACKTRACE, throwable);
 		return this;
 	}
 
@@ -189,13 +230,55 @@ public class LogBuilder {
 	 * Adds the info that the action is performed the log message: "action=<action>".
 	 */
 	public LogBuilder addAction(String action) {
-		add(ACTION + NAME_VALUE_SEPARATOR + action);
+		add(ACTION, String.valueOf(action));
 		return this;
 	}
 
 
 	// hidden setter and getter methods --------------------------------------------------------------------------------
 
+	/**
+	 * @methodtype factory
+	 *
+	 * Returns a builder with the fields added so far, that is not affected by reusing this one.
+	 */
+	public LogBuilder copy() {
+		LogBuilder result = new LogBuilder(noFields);
+		System.arraycopy(names, 0, result.names, 0, noFields);
+		System.arraycopy(values, 0, result.values, 0, noFields);
+		result.noFields = noFields;
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoFields() {
+		return noFields;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the name of the field, or null if the field is a message.
+	 */
+	public String getFieldName(int i) {
+		return names[i];
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getFieldValue(int i) {
+		Object value = values[i];
+		if (value instanceof Throwable) {
+			StringWriter sw = new StringWriter();
+			((Throwable) value).printStackTrace(new PrintWriter(sw));
+			return sw.toString();
+		}
+		return (String) value;
+	}
+
 	/**
 	 * @methodtype conversion
 	 *
@@ -204,8 +287,23 @@ public class LogBuilder {
 	@Override
 	public String toString() {
 
-		assert logMessage != null;
-		assert logMessage.length() > 0;
+		assert noFields > 0;
+
+		if (logMessage.capacity() > MAX_RETAINED_CAPACITY) {
+			logMessage = new StringBuilder();
+		} else {
+			logMessage.setLength(0);
+		}
+
+		for (int i = 0; i < noFields; i++) {
+			if (i > 0) {
+				logMessage.append(INFO_SEPARATOR);
+			}
+			if (names[i] != null) {
+				logMessage.append(names[i]).append(NAME_VALUE_SEPARATOR);
+			}
+			logMessage.append(getFieldValue(i));
+		}
 
 		return logMessage.toString();
 	}
@@ -23,9 +23,9 @@ package org.wahlzeit.services;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.logging.Logger;
 
 /**
  * An ObjectManager creates/reads/updates/deletes Persistent (objects) from Google Datastore.
@@ -38,7 +38,80 @@ public abstract class ObjectManager {
 	 */
 	public static final Key applicationRootKey = KeyFactory.createKey("Application", "Wahlzeit");
 
-	private static final Logger log = Logger.getLogger(ObjectManager.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(ObjectManager.class);
+
+	/**
+	 * If set, writes are queued and flushed in bulk instead of being written one by one; shared by all managers
+	 */
+	protected static WriteBehindQueue writeBehindQueue = null;
+
+	/**
+	 * @methodtype set
+	 */
+	public static synchronized void enableWriteBehind(WriteBehindQueue queue) {
+		if (queue == null) {
+			throw new IllegalArgumentException("queue should not be null");
+		}
+
+		log.config(lb -> lb.addAction("enable write-behind"));
+		writeBehindQueue = queue;
+	}
+
+	/**
+	 * @methodtype set
+	 *
+	 * Flushes all pending writes and switches back to immediate writes.
+	 */
+	public static synchronized void disableWriteBehind() {
+		flushWriteBehind();
+		writeBehindQueue = null;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public static WriteBehindQueue getWriteBehindQueue() {
+		return writeBehindQueue;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Writes all pending objects of the write-behind queue, if any.
+	 */
+	public static void flushWriteBehind() {
+		WriteBehindQueue queue = writeBehindQueue;
+		if (queue != null) {
+			queue.flush();
+			log.info(lb -> lb.
+					addParameter("Datastore: write-behind statistics", queue.asString()));
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Writes all pending objects of the write-behind queue, if the current thread has queued any, e.g. at the end of
+	 * the request that changed them, or if they have been waiting for too long.
+	 */
+	public static void flushWriteBehindOfCurrentThread() {
+		WriteBehindQueue queue = writeBehindQueue;
+		if (queue != null) {
+			queue.flushIfEnqueuedByCurrentThread();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Writes all pending objects of the write-behind queue, if they have been waiting for too long.
+	 */
+	public static void flushWriteBehindIfDue() {
+		WriteBehindQueue queue = writeBehindQueue;
+		if (queue != null) {
+			queue.flushIfDue();
+		}
+	}
 
 
 	/**
@@ -48,8 +121,8 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(type, "type");
 		assertIsNonNullArgument(id, "id");
 
-		log.config(LogBuilder.createSystemMessage().
-				addMessage("Load Type " + type.toString() + " with ID " + id + " from datastore.").toString());
+		log.config(lb -> lb.
+				addMessage("Load Type " + type.toString() + " with ID " + id + " from datastore."));
 		return OfyService.ofy().load().type(type).id(id).now();
 	}
 
@@ -69,8 +142,8 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(type, "type");
 		assertIsNonNullArgument(id, "id");
 
-		log.config(LogBuilder.createSystemMessage().
-				addMessage("Load Type " + type.toString() + " with ID " + id + " from datastore.").toString());
+		log.config(lb -> lb.
+				addMessage("Load Type " + type.toString() + " with ID " + id + " from datastore."));
 		return OfyService.ofy().load().type(type).id(id).now();
 	}
 
@@ -83,9 +156,9 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(parameterName, "parameterName");
 		assertIsNonNullArgument(value, "value");
 
-		log.config(LogBuilder.createSystemMessage().
+		log.config(lb -> lb.
 				addMessage("Load Type " + type.toString() + " with parameter " +
-						parameterName + " == " + value + " from datastore.").toString());
+						parameterName + " == " + value + " from datastore."));
 
 		return OfyService.ofy().load().type(type).ancestor(applicationRootKey).filter(parameterName, value).first()
 				.now();
@@ -98,14 +171,30 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(result, "result");
 		assertIsNonNullArgument(type, "type");
 
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Datastore: load all entities of type", type.getName()).toString());
+		log.config(lb -> lb.
+				addParameter("Datastore: load all entities of type", type.getName()));
 		List<E> objects = OfyService.ofy().load().type(type).ancestor(applicationRootKey).list();
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Datastore: number of loaded objects", objects.size()).toString());
+		log.config(lb -> lb.
+				addParameter("Datastore: number of loaded objects", objects.size()));
 		result.addAll(objects);
 	}
 
+	/**
+	 * Reads the ids of all Entities of the specified type with a keys-only query, i.e. without loading the Entities
+	 */
+	protected <E> void readObjectIds(Collection<Long> result, Class<E> type) {
+		assertIsNonNullArgument(result, "result");
+		assertIsNonNullArgument(type, "type");
+
+		List<com.googlecode.objectify.Key<E>> keys = OfyService.ofy().load().type(type).
+				ancestor(applicationRootKey).keys().list();
+		log.config(lb -> lb.
+				addParameter("Datastore: number of loaded keys", keys.size()));
+		for (com.googlecode.objectify.Key<E> key : keys) {
+			result.add(key.getId());
+		}
+	}
+
 	/**
 	 * Reads all Entities of the specified type, where the given property matches the wanted value e.g.
 	 * readObject(User.class) to get a list of all clients
@@ -116,13 +205,13 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(propertyName, "propertyName");
 		assertIsNonNullArgument(value, "value");
 
-		log.info(LogBuilder.createSystemMessage().
+		log.info(lb -> lb.
 				addMessage("Datastore: Load all Entities of type " + type.toString() + " where parameter "
-						+ propertyName + " = " + value.toString() + " from datastore.").toString());
+						+ propertyName + " = " + value.toString() + " from datastore."));
 		List<E> objects = OfyService.ofy().load().type(type).
 				ancestor(applicationRootKey).filter(propertyName, value).list();
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("Datastore: number of loaded objects", objects.size()).toString());
+		log.config(lb -> lb.
+				addParameter("Datastore: number of loaded objects", objects.size()));
 		result.addAll(objects);
 	}
 
@@ -130,8 +219,26 @@ public abstract class ObjectManager {
 	 * Updates all entities of the given collection in the datastore.
 	 */
 	protected void updateObjects(Collection<? extends Persistent> collection) {
+		assertIsNonNullArgument(collection, "collection");
+
+		List<Persistent> dirtyObjects = new ArrayList<Persistent>();
 		for (Persistent object : collection) {
-			updateObject(object);
+			if (object.isDirty()) {
+				dirtyObjects.add(object);
+			}
+		}
+
+		if (dirtyObjects.isEmpty()) {
+			return;
+		}
+
+		WriteBehindQueue queue = writeBehindQueue;
+		if (queue != null) {
+			for (Persistent object : dirtyObjects) {
+				queue.enqueue(this, object);
+			}
+		} else {
+			writeObjectsNow(dirtyObjects);
 		}
 	}
 
@@ -149,14 +256,59 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(object, "object");
 
 		if (object.isDirty()) {
-			log.info(LogBuilder.createSystemMessage().
-					addParameter("Datastore: Write object of type", object).toString());
+			WriteBehindQueue queue = writeBehindQueue;
+			if (queue != null) {
+				queue.enqueue(this, object);
+				return;
+			}
+
+			log.info(lb -> lb.
+					addParameter("Datastore: Write object of type", object));
+			int writeCount = object.getWriteCount();
 			OfyService.ofy().save().entity(object).now();
 			updateDependents(object);
-			object.resetWriteCount();
+			markWritten(object, writeCount);
 		} else {
-			log.info(LogBuilder.createSystemMessage().
-					addParameter("Datastore: No need to update object", object).toString());
+			log.info(lb -> lb.
+					addParameter("Datastore: No need to update object", object));
+		}
+	}
+
+	/**
+	 * Writes the given entities to the datastore in one bulk call, then updates their dependents.
+	 */
+	protected void writeObjectsNow(List<? extends Persistent> objects) {
+		log.info(lb -> lb.
+				addParameter("Datastore: Write objects in bulk", objects.size()));
+		int[] writeCounts = new int[objects.size()];
+		for (int i = 0; i < writeCounts.length; i++) {
+			writeCounts[i] = objects.get(i).getWriteCount();
+		}
+
+		OfyService.ofy().save().entities(objects).now();
+		for (int i = 0; i < writeCounts.length; i++) {
+			updateDependents(objects.get(i));
+			markWritten(objects.get(i), writeCounts[i]);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Marks the object as clean if it has not been changed since its write count was taken before writing it.
+	 * Otherwise the written state may lack the change, e.g. a praise by a concurrent request, so the object stays dirty
+	 * and is queued again if writes are queued.
+	 */
+	protected void markWritten(Persistent object, int writeCount) {
+		if (object.resetWriteCount(writeCount)) {
+			return;
+		}
+
+		log.config(lb -> lb.
+				addParameter("Datastore: Object changed while written", object));
+		WriteBehindQueue queue = writeBehindQueue;
+		if (queue != null) {
+			queue.enqueue(this, object);
 		}
 	}
 
@@ -173,7 +325,7 @@ public abstract class ObjectManager {
 	protected <E> void deleteObject(E object) {
 		assertIsNonNullArgument(object, "object");
 
-		log.config(LogBuilder.createSystemMessage().addParameter("Datastore: delete entity", object).toString());
+		log.config(lb -> lb.addParameter("Datastore: delete entity", object));
 		OfyService.ofy().delete().entity(object).now();
 	}
 
@@ -186,14 +338,31 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(propertyName, "propertyName");
 		assertIsNonNullArgument(value, "value");
 
-		log.info(LogBuilder.createSystemMessage().
+		log.info(lb -> lb.
 				addMessage("Datastore: delete entities of type " + type
-						+ " where property " + propertyName + " == " + value).toString());
+						+ " where property " + propertyName + " == " + value));
 		List<com.googlecode.objectify.Key<E>> keys = OfyService.ofy().load().type(type).
 				ancestor(applicationRootKey).filter(propertyName, value).keys().list();
 		OfyService.ofy().delete().keys(keys);
 	}
 
+	/**
+	 * Deletes all entities of the type with the given ids in one bulk call, e.g. deleteObjects(Tag.class, tagIds).
+	 */
+	protected <E> void deleteObjects(Class<E> type, Collection<Long> ids) {
+		assertIsNonNullArgument(type, "type");
+		assertIsNonNullArgument(ids, "ids");
+
+		log.config(lb -> lb.
+				addMessage("Datastore: delete " + ids.size() + " entities of type " + type));
+		com.googlecode.objectify.Key<Object> parent = com.googlecode.objectify.Key.create(applicationRootKey);
+		List<com.googlecode.objectify.Key<E>> keys = new ArrayList<com.googlecode.objectify.Key<E>>(ids.size());
+		for (Long id : ids) {
+			keys.add(com.googlecode.objectify.Key.create(parent, type, id));
+		}
+		OfyService.ofy().delete().keys(keys).now();
+	}
+
 	/**
 	 *
 	 */
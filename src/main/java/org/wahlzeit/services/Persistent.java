@@ -41,4 +41,17 @@ public interface Persistent {
 	 */
 	void resetWriteCount();
 
+	/**
+	 * @methodtype get
+	 */
+	int getWriteCount();
+
+	/**
+	 * @methodtype set
+	 *
+	 * Resets the write count only if it still is the given one, i.e. if the object has not been changed since, and
+	 * returns whether it did.
+	 */
+	boolean resetWriteCount(int writeCount);
+
 }
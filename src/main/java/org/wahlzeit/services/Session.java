@@ -20,6 +20,8 @@
 
 package org.wahlzeit.services;
 
+import java.util.Objects;
+
 
 /**
  * A Session object maintains a DatabaseConnection and helps track processing time. Typically, there is one for each
@@ -42,6 +44,12 @@ public class Session {
 	 */
 	protected long processingTime = 0;
 
+	/**
+	 * Client name for log messages, valid as long as the client id stays the same
+	 */
+	protected transient String logClientName = null;
+	protected transient String logClientNameId = null;
+
 	/**
 	 *
 	 */
@@ -113,4 +121,21 @@ public class Session {
 		return processingTime;
 	}
 
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the cached client name for log messages if it belongs to the given client id, null otherwise.
+	 */
+	public String getLogClientName(String clientId) {
+		return (logClientName != null && Objects.equals(clientId, logClientNameId)) ? logClientName : null;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setLogClientName(String clientId, String newLogClientName) {
+		logClientNameId = clientId;
+		logClientName = newLogClientName;
+	}
+
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A log record that keeps the fields of its {@link LogBuilder}, so that handlers can write them as key/value pairs.
+ * The message text is only put together when a handler asks for it.
+ */
+public class StructuredLogRecord extends LogRecord {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 *
+	 */
+	protected final transient LogBuilder fields;
+
+	/**
+	 *
+	 */
+	protected String message = null;
+
+	/**
+	 * @param fields must not be changed anymore
+	 */
+	public StructuredLogRecord(Level level, String loggerName, LogBuilder fields) {
+		super(level, null);
+		this.fields = fields;
+		setLoggerName(loggerName);
+		setSourceClassName(loggerName);
+		setSourceMethodName(null);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public LogBuilder getFields() {
+		return fields;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	@Override
+	public synchronized String getMessage() {
+		if (message == null) {
+			message = fields.toString();
+		}
+		return message;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	@Override
+	public synchronized void setMessage(String newMessage) {
+		message = newMessage;
+	}
+
+}
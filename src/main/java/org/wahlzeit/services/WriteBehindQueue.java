@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A write-behind queue collects dirty Persistent objects instead of writing them one by one. Objects are grouped by
+ * their entity kind (class) and handed back to their ObjectManager in bulk, either when the queue holds
+ * maxBatchSize objects, when the oldest queued object is older than maxDelay, or when flush() is called explicitly.
+ * Servlets flush at the end of every request that queued objects, so that nothing waits for a later request that may
+ * never come to this instance. Objects of a failed batch are queued again and retried with the next flush, up to
+ * MAX_WRITE_ATTEMPTS times. The queue is bounded: if it holds capacity objects, the enqueuing thread has to flush first.
+ *
+ * @see ObjectManager#enableWriteBehind(WriteBehindQueue)
+ */
+public class WriteBehindQueue {
+
+	private static final LazyLogger log = LazyLogger.getLogger(WriteBehindQueue.class);
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+	public static final long DEFAULT_MAX_DELAY = 2000; // ms
+	public static final int DEFAULT_CAPACITY = 1000;
+	public static final int MAX_WRITE_ATTEMPTS = 3;
+
+	/**
+	 *
+	 */
+	protected final int maxBatchSize;
+	protected final long maxDelay;
+	protected final int capacity;
+
+	/**
+	 * Dirty objects per entity kind; an object is queued at most once and remembers its manager
+	 */
+	protected Map<Class<?>, Map<Persistent, ObjectManager>> dirtyObjects =
+			new LinkedHashMap<Class<?>, Map<Persistent, ObjectManager>>();
+
+	/**
+	 *
+	 */
+	protected int size = 0;
+	protected long oldestEnqueueTime = 0;
+	protected Thread flushingThread = null;
+
+	/**
+	 * Objects of failed batches, queued again after the flush, and the number of failed writes per object
+	 */
+	protected Map<Persistent, ObjectManager> failedObjects = new IdentityHashMap<Persistent, ObjectManager>();
+	protected Map<Persistent, Integer> noFailedAttempts = new IdentityHashMap<Persistent, Integer>();
+
+	/**
+	 * Whether the current thread has queued objects since its last flush
+	 */
+	protected final ThreadLocal<Boolean> hasEnqueued = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+	/**
+	 * Statistics, only changed while holding the lock of this queue
+	 */
+	protected long noQueuedWrites = 0;
+	protected long noFlushedWrites = 0;
+	protected long noFailedWrites = 0;
+	protected long noFlushes = 0;
+
+	/**
+	 *
+	 */
+	public WriteBehindQueue() {
+		this(DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 *
+	 */
+	public WriteBehindQueue(int maxBatchSize, long maxDelay, int capacity) {
+		if (maxBatchSize < 1 || capacity < maxBatchSize || maxDelay < 0) {
+			throw new IllegalArgumentException("invalid write-behind configuration");
+		}
+
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelay = maxDelay;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Queues the object for a later bulk write by the given manager. Flushes the queue if it is full or due.
+	 */
+	public void enqueue(ObjectManager manager, Persistent object) {
+		hasEnqueued.set(Boolean.TRUE);
+
+		boolean isToFlush;
+		synchronized (this) {
+			while (size >= capacity && flushingThread != null && flushingThread != Thread.currentThread()) {
+				if (!waitForFlush()) {
+					break;
+				}
+			}
+
+			if (doEnqueue(manager, object)) {
+				noQueuedWrites++;
+			}
+
+			isToFlush = size >= maxBatchSize || isOverdue();
+		}
+
+		if (isToFlush) {
+			flush();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Returns false if the object has been queued already.
+	 */
+	protected boolean doEnqueue(ObjectManager manager, Persistent object) {
+		Map<Persistent, ObjectManager> objects = dirtyObjects.get(object.getClass());
+		if (objects == null) {
+			objects = new IdentityHashMap<Persistent, ObjectManager>();
+			dirtyObjects.put(object.getClass(), objects);
+		}
+
+		if (objects.put(object, manager) != null) {
+			return false;
+		}
+
+		if (size == 0) {
+			oldestEnqueueTime = System.currentTimeMillis();
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Flushes the queue if the current thread has queued objects since its last flush, e.g. at the end of a request,
+	 * or if the queue is due anyway.
+	 */
+	public void flushIfEnqueuedByCurrentThread() {
+		if (hasEnqueued.get()) {
+			flush();
+		} else {
+			flushIfDue();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Flushes the queue if the oldest queued object has waited for longer than maxDelay.
+	 */
+	public void flushIfDue() {
+		boolean isToFlush;
+		synchronized (this) {
+			isToFlush = size > 0 && isOverdue();
+		}
+
+		if (isToFlush) {
+			flush();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Writes all queued objects, kind by kind. Objects queued while flushing (e.g. dependents) are written as well.
+	 */
+	public void flush() {
+		hasEnqueued.set(Boolean.FALSE);
+
+		synchronized (this) {
+			if (flushingThread != null) {
+				return; // the flushing thread picks up everything queued in the meantime
+			}
+			flushingThread = Thread.currentThread();
+		}
+
+		try {
+			for (Map<Class<?>, Map<Persistent, ObjectManager>> batch = takeAllOrStopFlushing(); !batch.isEmpty();
+				 batch = takeAllOrStopFlushing()) {
+				for (Map.Entry<Class<?>, Map<Persistent, ObjectManager>> entry : batch.entrySet()) {
+					writeKind(entry.getKey(), entry.getValue());
+				}
+			}
+		} finally {
+			synchronized (this) {
+				if (flushingThread == Thread.currentThread()) {
+					stopFlushing(); // after an exception
+				}
+			}
+		}
+	}
+
+	/**
+	 * @methodtype helper
+	 *
+	 * Takes all queued objects, or stops flushing if there are none. Both happen under the same lock as queueing, so an
+	 * object queued by a thread whose flush returned early is either taken by the flushing thread or flushed by the
+	 * queueing thread itself, as nobody is flushing anymore.
+	 */
+	protected synchronized Map<Class<?>, Map<Persistent, ObjectManager>> takeAllOrStopFlushing() {
+		Map<Class<?>, Map<Persistent, ObjectManager>> result = takeAll();
+		if (result.isEmpty()) {
+			stopFlushing();
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected synchronized void stopFlushing() {
+		requeueFailedObjects();
+		flushingThread = null;
+		notifyAll();
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Queues the objects of failed batches again, unless they have failed too often; these stay dirty, so that they
+	 * are queued again with their next change.
+	 */
+	protected void requeueFailedObjects() {
+		for (Map.Entry<Persistent, ObjectManager> entry : failedObjects.entrySet()) {
+			Persistent object = entry.getKey();
+			if (noFailedAttempts.get(object) < MAX_WRITE_ATTEMPTS) {
+				doEnqueue(entry.getValue(), object);
+			} else {
+				noFailedAttempts.remove(object);
+				log.severe(lb -> lb.
+						addParameter("dropped object", object).
+						addParameter("write attempts", MAX_WRITE_ATTEMPTS));
+			}
+		}
+		failedObjects.clear();
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected void writeKind(Class<?> kind, Map<Persistent, ObjectManager> objects) {
+		Map<ObjectManager, List<Persistent>> objectsByManager = new LinkedHashMap<ObjectManager, List<Persistent>>();
+		for (Map.Entry<Persistent, ObjectManager> entry : objects.entrySet()) {
+			List<Persistent> managed = objectsByManager.get(entry.getValue());
+			if (managed == null) {
+				managed = new ArrayList<Persistent>();
+				objectsByManager.put(entry.getValue(), managed);
+			}
+			managed.add(entry.getKey());
+		}
+
+		for (Map.Entry<ObjectManager, List<Persistent>> entry : objectsByManager.entrySet()) {
+			List<Persistent> managed = entry.getValue();
+			for (int from = 0; from < managed.size(); from += maxBatchSize) {
+				List<Persistent> batch = managed.subList(from, Math.min(from + maxBatchSize, managed.size()));
+				try {
+					entry.getKey().writeObjectsNow(batch);
+					synchronized (this) {
+						noFlushedWrites += batch.size();
+						for (Persistent object : batch) {
+							noFailedAttempts.remove(object);
+						}
+					}
+				} catch (RuntimeException ex) {
+					addFailedObjects(entry.getKey(), batch);
+					log.warning(lb -> lb.
+							addParameter("entity kind", kind.getName()).
+							addParameter("number of objects", batch.size()).
+							addException("write-behind batch failed, objects are retried", ex));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected synchronized void addFailedObjects(ObjectManager manager, Collection<Persistent> objects) {
+		noFailedWrites += objects.size();
+		for (Persistent object : objects) {
+			failedObjects.put(object, manager);
+			Integer noAttempts = noFailedAttempts.get(object);
+			noFailedAttempts.put(object, (noAttempts == null) ? 1 : noAttempts + 1);
+		}
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected synchronized Map<Class<?>, Map<Persistent, ObjectManager>> takeAll() {
+		Map<Class<?>, Map<Persistent, ObjectManager>> result = dirtyObjects;
+		if (size > 0) {
+			dirtyObjects = new LinkedHashMap<Class<?>, Map<Persistent, ObjectManager>>();
+			size = 0;
+			noFlushes++;
+			notifyAll();
+		} else {
+			result = new LinkedHashMap<Class<?>, Map<Persistent, ObjectManager>>();
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected boolean isOverdue() {
+		return System.currentTimeMillis() - oldestEnqueueTime >= maxDelay;
+	}
+
+	/**
+	 * @methodtype helper
+	 *
+	 * Returns false if the waiting thread has been interrupted.
+	 */
+	protected boolean waitForFlush() {
+		try {
+			wait();
+			return true;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized int getSize() {
+		return size;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoQueuedWrites() {
+		return noQueuedWrites;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoFlushedWrites() {
+		return noFlushedWrites;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoFailedWrites() {
+		return noFailedWrites;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoFlushes() {
+		return noFlushes;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public synchronized String asString() {
+		return "queued=" + noQueuedWrites + ", flushed=" + noFlushedWrites + ", failed=" + noFailedWrites +
+				", flushes=" + noFlushes + ", pending=" + size;
+	}
+
+}
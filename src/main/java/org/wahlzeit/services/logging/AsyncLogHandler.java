@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+/**
+ * A log handler that hands log records over to a single writer thread through a ring buffer of fixed capacity, so
+ * that request threads neither format nor write log messages, nor wait for each other on a handler lock. If the
+ * buffer is full, records are dropped and counted rather than blocking the logging thread.
+ *
+ * Configured in logging.properties like a FileHandler, e.g.
+ * <pre>
+ * handlers = org.wahlzeit.services.logging.AsyncLogHandler
+ * org.wahlzeit.services.logging.AsyncLogHandler.file = /tmp/wahlzeit.jsonl
+ * org.wahlzeit.services.logging.AsyncLogHandler.capacity = 8192
+ * </pre>
+ * Without a file, records go to standard output, which is where App Engine collects them; its file system is
+ * read-only except for /tmp, which does not outlive the instance.
+ */
+public class AsyncLogHandler extends Handler {
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/**
+	 * Longest time the writer thread sleeps before it looks for new records again
+	 */
+	protected static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	protected static final long MAX_CLOSE_WAIT_MILLIS = 5000;
+
+	/**
+	 *
+	 */
+	protected final LogAppender appender;
+
+	/**
+	 * Slot i holds a record to write if its sequence is position + 1, and is free if it is position, where position
+	 * is the number of records claimed before it; capacity is a power of two
+	 */
+	protected final LogRecord[] records;
+	protected final AtomicLongArray sequences;
+	protected final int mask;
+
+	/**
+	 * Next position to claim by logging threads, and next position to write by the writer thread
+	 */
+	protected final AtomicLong tail = new AtomicLong(0);
+	protected volatile long head = 0;
+
+	/**
+	 * Position up to which all records have been passed to the appender and flushed
+	 */
+	protected volatile long flushedPosition = 0;
+
+	/**
+	 *
+	 */
+	protected final AtomicLong noDroppedRecords = new AtomicLong(0);
+
+	/**
+	 *
+	 */
+	protected final Thread writerThread;
+	protected volatile boolean isWriterWaiting = false;
+	protected volatile boolean isClosed = false;
+
+	/**
+	 * Configures itself from the LogManager properties, like the handlers of java.util.logging
+	 */
+	public AsyncLogHandler() throws IOException {
+		this(createAppender(getProperty("file", null)),
+				Integer.parseInt(getProperty("capacity", String.valueOf(DEFAULT_CAPACITY))));
+
+		String level = getProperty("level", null);
+		if (level != null) {
+			setLevel(Level.parse(level));
+		}
+	}
+
+	/**
+	 *
+	 */
+	public AsyncLogHandler(LogAppender appender, int capacity) {
+		if (appender == null || capacity < 1) {
+			throw new IllegalArgumentException("invalid log handler configuration");
+		}
+
+		this.appender = appender;
+
+		int roundedCapacity = Integer.highestOneBit(capacity);
+		if (roundedCapacity < capacity) {
+			roundedCapacity <<= 1;
+		}
+		records = new LogRecord[roundedCapacity];
+		sequences = new AtomicLongArray(roundedCapacity);
+		for (int i = 0; i < roundedCapacity; i++) {
+			sequences.set(i, i);
+		}
+		mask = roundedCapacity - 1;
+
+		writerThread = new Thread(this::writeRecords, "wahlzeit-log-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected static LogAppender createAppender(String fileName) throws IOException {
+		if (fileName == null || fileName.isEmpty()) {
+			return JsonLinesFileAppender.createStandardOutputAppender();
+		}
+		return new JsonLinesFileAppender(new File(fileName));
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected static String getProperty(String name, String defaultValue) {
+		String result = LogManager.getLogManager().getProperty(AsyncLogHandler.class.getName() + "." + name);
+		return (result != null) ? result.trim() : defaultValue;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Claims a free slot and puts the record into it; never blocks.
+	 */
+	@Override
+	public void publish(LogRecord record) {
+		if (isClosed || !isLoggable(record)) {
+			return;
+		}
+
+		long position;
+		while (true) {
+			position = tail.get();
+			long difference = sequences.get((int) position & mask) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+			} else if (difference < 0) {
+				noDroppedRecords.incrementAndGet();
+				return;
+			}
+		}
+
+		int index = (int) position & mask;
+		records[index] = record;
+		sequences.set(index, position + 1);
+
+		if (isWriterWaiting) {
+			LockSupport.unpark(writerThread);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Runs on the writer thread until the handler is closed and all claimed records are written.
+	 */
+	protected void writeRecords() {
+		while (!isClosed || head < tail.get()) {
+			LogRecord record = takeRecord();
+			if (record != null) {
+				appendRecord(record);
+				continue;
+			}
+
+			flushAppender();
+			isWriterWaiting = true;
+			if (!isReadyToTake() && !isClosed) {
+				LockSupport.parkNanos(this, MAX_WAIT_NANOS);
+			}
+			isWriterWaiting = false;
+		}
+
+		flushAppender();
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected boolean isReadyToTake() {
+		return sequences.get((int) head & mask) == head + 1;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the next record and frees its slot, or null if it has not been put yet.
+	 */
+	protected LogRecord takeRecord() {
+		if (!isReadyToTake()) {
+			return null;
+		}
+
+		long position = head;
+		int index = (int) position & mask;
+		LogRecord result = records[index];
+		records[index] = null;
+		sequences.set(index, position + records.length);
+		head = position + 1;
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void appendRecord(LogRecord record) {
+		try {
+			appender.append(record);
+		} catch (IOException | RuntimeException ex) {
+			reportError("could not append log record", ex, ErrorManager.WRITE_FAILURE);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void flushAppender() {
+		long position = head;
+		try {
+			appender.flush();
+		} catch (IOException ex) {
+			reportError("could not flush log records", ex, ErrorManager.FLUSH_FAILURE);
+		}
+		flushedPosition = position;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Waits until the records published so far have been written and flushed, or until the writer thread is gone.
+	 */
+	@Override
+	public void flush() {
+		long position = tail.get();
+		while (flushedPosition < position && writerThread.isAlive()) {
+			LockSupport.unpark(writerThread);
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Writes the records published so far and closes the appender; later records are ignored.
+	 */
+	@Override
+	public void close() {
+		isClosed = true;
+		LockSupport.unpark(writerThread);
+		try {
+			writerThread.join(MAX_CLOSE_WAIT_MILLIS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+
+		try {
+			appender.close();
+		} catch (IOException ex) {
+			reportError("could not close log appender", ex, ErrorManager.CLOSE_FAILURE);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getCapacity() {
+		return records.length;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getNoDroppedRecords() {
+		return noDroppedRecords.get();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getNoWrittenRecords() {
+		return head;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoPendingRecords() {
+		return (int) (tail.get() - head);
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services.logging;
+
+import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.StructuredLogRecord;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Appends log records to a file or to standard output as JSON lines, i.e. one JSON object per line. The fields of a
+ * {@link StructuredLogRecord} (level, session, client, action, parameters, ...) become keys of their own; fields with
+ * the same name, e.g. several messages, are joined into one value.
+ */
+public class JsonLinesFileAppender implements LogAppender {
+
+	/**
+	 *
+	 */
+	public static final String TIME = "time";
+	public static final String SEVERITY = "severity";
+	public static final String LOGGER = "logger";
+	public static final String MESSAGE = "message";
+	public static final String THROWN = "thrown";
+	public static final String VALUE_SEPARATOR = ", ";
+
+	/**
+	 *
+	 */
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 *
+	 */
+	protected final Writer writer;
+
+	/**
+	 * Only used by the writer thread
+	 */
+	protected final StringBuilder line = new StringBuilder(256);
+
+	/**
+	 * For plain log records with parameters or resource bundles
+	 */
+	protected final Formatter messageFormatter = new SimpleFormatter();
+
+	/**
+	 * Appends to the file if it already exists
+	 */
+	public JsonLinesFileAppender(File file) throws IOException {
+		this(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 *
+	 */
+	public JsonLinesFileAppender(Writer writer) {
+		this.writer = new BufferedWriter(writer, BUFFER_SIZE);
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Appends to standard output, which App Engine collects into the logs of the application; closing the appender
+	 * only flushes it and leaves standard output open.
+	 */
+	public static JsonLinesFileAppender createStandardOutputAppender() {
+		return new JsonLinesFileAppender(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		};
+	}
+
+	@Override
+	public void append(LogRecord record) throws IOException {
+		line.setLength(0);
+		asJson(record, line);
+		line.append('\n');
+		writer.append(line);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public void asJson(LogRecord record, StringBuilder result) {
+		result.append('{');
+		appendField(result, TIME, Instant.ofEpochMilli(record.getMillis()).toString());
+		appendField(result, SEVERITY, record.getLevel().getName());
+		appendField(result, LOGGER, record.getLoggerName());
+
+		if (record instanceof StructuredLogRecord) {
+			appendFields(result, ((StructuredLogRecord) record).getFields());
+		} else {
+			appendField(result, MESSAGE, messageFormatter.formatMessage(record));
+		}
+
+		if (record.getThrown() != null) {
+			StringWriter sw = new StringWriter();
+			record.getThrown().printStackTrace(new PrintWriter(sw));
+			appendField(result, THROWN, sw.toString());
+		}
+		result.append('}');
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected void appendFields(StringBuilder result, LogBuilder fields) {
+		int noFields = fields.getNoFields();
+		for (int i = 0; i < noFields; i++) {
+			String name = getFieldName(fields, i);
+			if (indexOfField(fields, name, i) < i) {
+				continue; // already joined into an earlier field of the same name
+			}
+
+			appendString(result.append(','), name);
+			result.append(":\"");
+			appendEscaped(result, fields.getFieldValue(i));
+			for (int j = i + 1; j < noFields; j++) {
+				if (name.equals(getFieldName(fields, j))) {
+					appendEscaped(result.append(VALUE_SEPARATOR), fields.getFieldValue(j));
+				}
+			}
+			result.append('"');
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected String getFieldName(LogBuilder fields, int i) {
+		String result = fields.getFieldName(i);
+		return (result != null) ? result : MESSAGE;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected int indexOfField(LogBuilder fields, String name, int limit) {
+		for (int i = 0; i < limit; i++) {
+			if (name.equals(getFieldName(fields, i))) {
+				return i;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected void appendField(StringBuilder result, String name, String value) {
+		if (result.length() > 1) {
+			result.append(',');
+		}
+		appendString(result, name);
+		result.append(':');
+		appendString(result, value);
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected void appendString(StringBuilder result, String value) {
+		if (value == null) {
+			result.append("null");
+		} else {
+			appendEscaped(result.append('"'), value).append('"');
+		}
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected StringBuilder appendEscaped(StringBuilder result, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					result.append("\\\"");
+					break;
+				case '\\':
+					result.append("\\\\");
+					break;
+				case '\n':
+					result.append("\\n");
+					break;
+				case '\r':
+					result.append("\\r");
+					break;
+				case '\t':
+					result.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						result.append(String.format("\\u%04x", (int) c));
+					} else {
+						result.append(c);
+					}
+			}
+		}
+		return result;
+	}
+
+}
@@ -22,10 +22,13 @@ package org.wahlzeit.servlets;
 
 import org.wahlzeit.main.ServiceMain;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
+import org.wahlzeit.services.ObjectManager;
 import org.wahlzeit.services.Session;
 import org.wahlzeit.services.SessionManager;
 import org.wahlzeit.utils.StringUtil;
+import org.wahlzeit.webparts.GzipPartOutputStream;
+import org.wahlzeit.webparts.PooledBufferedOutputStream;
 import org.wahlzeit.webparts.WebPart;
 
 import javax.servlet.ServletException;
@@ -34,18 +37,18 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.logging.Logger;
 
 /**
  * A servlet class.
  */
 public abstract class AbstractServlet extends HttpServlet {
 
-	private static final Logger log = Logger.getLogger(AbstractServlet.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(AbstractServlet.class);
 	private static final long serialVersionUID = 42L; // any does; class never serialized
 	/**
 	 *
@@ -83,13 +86,15 @@ public abstract class AbstractServlet extends HttpServlet {
 		UserSession us = ensureUserSession(request);
 		SessionManager.setThreadLocalSession(us);
 
-		if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
-			displayNullPage(request, response);
-		} else {
-			myGet(request, response);
+		try {
+			if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
+				displayNullPage(request, response);
+			} else {
+				myGet(request, response);
+			}
+		} finally {
+			endRequest(us);
 		}
-
-		SessionManager.dropThreadLocalSession();
 	}
 
 	/**
@@ -102,13 +107,32 @@ public abstract class AbstractServlet extends HttpServlet {
 		UserSession us = ensureUserSession(request);
 		SessionManager.setThreadLocalSession(us);
 
-		if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
-			displayNullPage(request, response);
-		} else {
-			myPost(request, response);
+		try {
+			if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
+				displayNullPage(request, response);
+			} else {
+				myPost(request, response);
+			}
+		} finally {
+			endRequest(us);
 		}
+	}
 
-		SessionManager.dropThreadLocalSession();
+	/**
+	 * @methodtype command
+	 *
+	 * Writes the changed session attributes back even if the request failed, as the http session would have kept them
+	 * if they had been set right away, then flushes the objects the request has changed.
+	 */
+	protected void endRequest(UserSession us) {
+		try {
+			if (us != null) {
+				us.writeBack();
+			}
+		} finally {
+			ObjectManager.flushWriteBehindOfCurrentThread();
+			SessionManager.dropThreadLocalSession();
+		}
 	}
 
 	/**
@@ -170,26 +194,73 @@ public abstract class AbstractServlet extends HttpServlet {
 	protected void redirectRequest(HttpServletResponse response, String link) throws IOException {
 		response.setContentType("text/html");
 		String newTarget = new String("/" + link + ".html");
-		log.config(LogBuilder.createSystemMessage().addParameter("Redirect to", newTarget).toString());
+		log.config(lb -> lb.addParameter("Redirect to", newTarget));
 		response.sendRedirect(newTarget);
 	}
 
 	/**
 	 *
 	 */
-	protected void configureResponse(Session ctx, HttpServletResponse response, WebPart result) throws IOException {
+	protected void configureResponse(Session ctx, HttpServletRequest request, HttpServletResponse response,
+									 WebPart result) throws IOException {
 		long processingTime = ctx.getProcessingTime();
 		result.addString("processingTime", StringUtil.asStringInSeconds((processingTime == 0) ? 1 : processingTime));
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("proctime", String.valueOf(processingTime)).toString());
+		log.config(lb -> lb.
+				addParameter("proctime", String.valueOf(processingTime)));
 
 		response.setContentType("text/html");
+		response.addHeader("Vary", "Accept-Encoding");
+		response.setStatus(HttpServletResponse.SC_OK);
+		boolean isGzipped = isGzipAccepted(request);
+		if (isGzipped) {
+			response.setHeader("Content-Encoding", "gzip");
+		}
 
-		PrintWriter out = response.getWriter();
+		// deferred parts may flush what has been written before them, so all headers are set before writing
+		OutputStream out = new PooledBufferedOutputStream(response.getOutputStream());
+		if (isGzipped) {
+			out = new GzipPartOutputStream(out);
+		}
 		result.writeOn(out);
 		out.close();
+	}
 
-		response.setStatus(HttpServletResponse.SC_OK);
+	/**
+	 * @methodtype boolean-query
+	 *
+	 * Brotli would need a native library, so gzip is the only encoding offered.
+	 */
+	protected static boolean isGzipAccepted(HttpServletRequest request) {
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (acceptEncoding == null) {
+			return false;
+		}
+
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parameters = coding.split(";");
+			String name = parameters[0].trim();
+			if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+				return !hasZeroQuality(parameters);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected static boolean hasZeroQuality(String[] parameters) {
+		for (int i = 1; i < parameters.length; i++) {
+			String parameter = parameters[i].trim();
+			if (parameter.startsWith("q=")) {
+				try {
+					return Double.parseDouble(parameter.substring(2)) == 0;
+				} catch (NumberFormatException ex) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	/**
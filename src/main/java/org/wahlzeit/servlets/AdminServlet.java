@@ -22,13 +22,12 @@ package org.wahlzeit.servlets;
 
 import org.wahlzeit.handlers.PartUtil;
 import org.wahlzeit.main.ServiceMain;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.logging.Logger;
 
 
 /**
@@ -41,14 +40,14 @@ public class AdminServlet extends AbstractServlet {
 	 */
 	private static final long serialVersionUID = 42L; // any one does; class never serialized
 
-	private static final Logger log = Logger.getLogger(AdminServlet.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(AdminServlet.class);
 
 	/**
 	 *
 	 */
 	public void myGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		String link = request.getRequestURI();
-		log.info(LogBuilder.createUserMessage().addParameter("requested URI", link).toString());
+		log.userInfo(lb -> lb.addParameter("requested URI", link));
 		if (isLocalHost(request)) {
 			ServiceMain.getInstance().requestStop();
 			displayNullPage(request, response);
@@ -21,8 +21,6 @@
 package org.wahlzeit.servlets;
 
 import com.google.api.client.util.Charsets;
-import com.google.appengine.api.images.Image;
-import com.google.appengine.api.images.ImagesServiceFactory;
 import com.google.common.io.CharStreams;
 import org.apache.commons.fileupload.FileItemIterator;
 import org.apache.commons.fileupload.FileItemStream;
@@ -31,22 +29,21 @@ import org.wahlzeit.handlers.PartUtil;
 import org.wahlzeit.handlers.WebFormHandler;
 import org.wahlzeit.handlers.WebPageHandler;
 import org.wahlzeit.handlers.WebPartHandlerManager;
+import org.wahlzeit.model.UploadedImage;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.UserSession;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 import org.wahlzeit.services.SessionManager;
 import org.wahlzeit.webparts.WebPart;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.logging.Logger;
 
 
 /**
@@ -54,7 +51,7 @@ import java.util.logging.Logger;
  */
 public class MainServlet extends AbstractServlet {
 
-	private static final Logger log = Logger.getLogger(MainServlet.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(MainServlet.class);
 	/**
 	 *
 	 */
@@ -67,22 +64,18 @@ public class MainServlet extends AbstractServlet {
 		long startTime = System.currentTimeMillis();
 
 		UserSession us = (UserSession) SessionManager.getThreadLocalSession();
-		String link = request.getRequestURI();
-		int linkStart = link.lastIndexOf("/") + 1;
-		int linkEnd = link.indexOf(".form");
-		if (linkEnd != -1) {
-			link = link.substring(linkStart, linkEnd);
-		} else {
-			link = PartUtil.NULL_FORM_NAME;
-		}
-		log.info(LogBuilder.createUserMessage().addParameter("posted to", link).toString());
+		String uri = request.getRequestURI();
+		int linkStart = uri.lastIndexOf("/") + 1;
+		int linkEnd = uri.indexOf(".form");
+		String formName = (linkEnd != -1) ? uri.substring(linkStart, linkEnd) : PartUtil.NULL_FORM_NAME;
+		log.userInfo(lb -> lb.addParameter("posted to", formName));
 
 		Map args = getRequestArgs(request, us);
-		log.info(LogBuilder.createSystemMessage().
-				addParameter("POST arguments", getRequestArgsAsString(us, args)).toString());
+		log.info(lb -> lb.
+				addParameter("POST arguments", getRequestArgsAsString(us, args)));
 
-		WebFormHandler formHandler = WebPartHandlerManager.getWebFormHandler(link);
-		link = PartUtil.DEFAULT_PAGE_NAME;
+		WebFormHandler formHandler = WebPartHandlerManager.getWebFormHandler(formName);
+		String link = PartUtil.DEFAULT_PAGE_NAME;
 		if (formHandler != null) {
 			link = formHandler.handlePost(us, args);
 		}
@@ -107,22 +100,22 @@ public class MainServlet extends AbstractServlet {
 		}
 
 		link = link.substring(linkStart, linkEnd);
-		log.info(LogBuilder.createUserMessage().addParameter("requested URI", request.getRequestURI()).toString());
+		log.userInfo(lb -> lb.addParameter("requested URI", request.getRequestURI()));
 
 
 		WebPageHandler handler = WebPartHandlerManager.getWebPageHandler(link);
 		String newLink = PartUtil.DEFAULT_PAGE_NAME;
 		if (handler != null) {
 			Map args = getRequestArgs(request, us);
-			log.info(LogBuilder.createSystemMessage().
-					addParameter("GET arguments", getRequestArgsAsString(us, args)).toString());
+			log.info(lb -> lb.
+					addParameter("GET arguments", getRequestArgsAsString(us, args)));
 			newLink = handler.handleGet(us, link, args);
 		}
 
 		if (newLink.equals(link)) { // no redirect necessary
 			WebPart result = handler.makeWebPart(us);
 			us.addProcessingTime(System.currentTimeMillis() - startTime);
-			configureResponse(us, response, result);
+			configureResponse(us, request, response, result);
 			us.clearSavedArgs(); // saved args go from post to next get
 			us.resetProcessingTime();
 		} else {
@@ -161,20 +154,18 @@ public class MainServlet extends AbstractServlet {
 				String filename = fileItemStream.getName();
 
 				if (!fileItemStream.isFormField()) {
-					InputStream inputStream = fileItemStream.openStream();
-					Image image = getImage(inputStream);
 					User user = (User) us.getClient();
-					user.setUploadedImage(image);
+					user.setUploadedImage(getUploadedImage(fileItemStream));
 					result.put("fileName", filename);
-					log.config(LogBuilder.createSystemMessage().addParameter("Uploaded image", filename).toString());
+					log.config(lb -> lb.addParameter("Uploaded image", filename));
 				} else {
 					String key = fileItemStream.getFieldName();
 					InputStream is = fileItemStream.openStream();
 					String value = CharStreams.toString(new InputStreamReader(is, Charsets.UTF_8));
 					result.put(key, value);
-					log.config(LogBuilder.createSystemMessage().
+					log.config(lb -> lb.
 							addParameter("Key of uploaded parameter", key).
-							addParameter("value", value).toString());
+							addParameter("value", value));
 				}
 			}
 		} catch (Exception ex) {
@@ -185,22 +176,16 @@ public class MainServlet extends AbstractServlet {
 	}
 
 	/**
-	 * Create an Image object from the Input stream.
+	 * Streams the uploaded file into a temporary file; returns null if it is not an image of an acceptable size.
 	 */
-	private Image getImage(InputStream input) throws IOException {
-		Image image;
-		try {
-			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-			byte[] buffer = new byte[1024 * 1024];
-			int bytesRead = input.read(buffer);
-			while (bytesRead != -1) {
-				outputStream.write(buffer, 0, bytesRead);
-				bytesRead = input.read(buffer);
-			}
-			image = ImagesServiceFactory.makeImage(outputStream.toByteArray());
-		} finally {
-			input.close();
+	protected UploadedImage getUploadedImage(FileItemStream fileItemStream) throws IOException {
+		try (InputStream input = fileItemStream.openStream()) {
+			return UploadedImage.createFrom(input);
+		} catch (IOException | IllegalArgumentException ex) {
+			log.warning(lb -> lb.
+					addParameter("Rejected upload", fileItemStream.getName()).
+					addException("invalid image", ex));
+			return null;
 		}
-		return image;
 	}
 }
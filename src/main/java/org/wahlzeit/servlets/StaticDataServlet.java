@@ -3,16 +3,20 @@ package org.wahlzeit.servlets;
 import com.google.appengine.api.images.Image;
 import org.apache.http.HttpStatus;
 import org.wahlzeit.model.Photo;
+import org.wahlzeit.model.PhotoId;
 import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.PhotoSize;
+import org.wahlzeit.model.persistence.ImageMetadata;
+import org.wahlzeit.model.persistence.ImageRange;
+import org.wahlzeit.model.persistence.ImageRangeSelector;
 import org.wahlzeit.model.persistence.ImageStorage;
-import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.LazyLogger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.Serializable;
-import java.util.logging.Logger;
+import java.io.OutputStream;
+import java.util.Arrays;
 
 /**
  * Servlet that returns static data like the Photos to the user.
@@ -24,7 +28,12 @@ import java.util.logging.Logger;
  */
 public class StaticDataServlet extends AbstractServlet {
 
-	Logger log = Logger.getLogger(StaticDataServlet.class.getName());
+	private static final LazyLogger log = LazyLogger.getLogger(StaticDataServlet.class);
+
+	/**
+	 * A rendition never changes for a given photo id and size, so clients may keep it for a year
+	 */
+	public static final String IMAGE_CACHE_CONTROL = "public, max-age=31536000, immutable";
 
 	@Override
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -33,59 +42,243 @@ public class StaticDataServlet extends AbstractServlet {
 			String photoId = request.getParameter("photoId");
 			String sizeString = request.getParameter("size");
 			int size = Integer.valueOf(sizeString);
-			log.info(LogBuilder.createSystemMessage().
+			log.info(lb -> lb.
 					addAction("Provide static resource").
 					addParameter("type", type).
 					addParameter("photoId", photoId).
-					addParameter("size", size).toString());
+					addParameter("size", size));
 
 			if ("image".equals(type)) {
-				Image image = getImage(photoId, size);
-				if (image != null) {
-					response.getOutputStream().write(image.getImageData());
-					response.getOutputStream().flush();
-					response.setStatus(HttpStatus.SC_OK);
-				} else {
-					log.warning(LogBuilder.createSystemMessage().addMessage("image not found").toString());
-					response.setStatus(HttpStatus.SC_NOT_FOUND);
-				}
+				provideImage(request, response, photoId, size);
 			} else {
-				log.warning(LogBuilder.createSystemMessage().
-						addMessage("unimplemented static resource type has been requested").toString());
+				log.warning(lb -> lb.
+						addMessage("unimplemented static resource type has been requested"));
 				response.setStatus(HttpStatus.SC_NOT_IMPLEMENTED);
 			}
 
 		} catch (Exception e) {
-			log.severe(LogBuilder.createSystemMessage().addException("Problem when loading image", e).toString());
+			log.severe(lb -> lb.addException("Problem when loading image", e));
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Sends the image, or only the requested range of it, unless the client has an up-to-date copy already. As a
+	 * rendition never changes, a matching ETag is decided by the photo id and size alone, without looking up the photo;
+	 * the id only has to be known. The image is taken from the <@link>PhotoManager</@link> if it is in memory,
+	 * otherwise it is streamed from the <@link>ImageStorage</@link> with a single read and without materializing it.
+	 * Sizes that have not been created yet are created now. Only images that are sent or not modified are marked as
+	 * cacheable; a missing image is not, as it may still be created or saved by another instance.
+	 */
+	protected void provideImage(HttpServletRequest request, HttpServletResponse response, String photoId, int size)
+			throws IOException {
+
+		PhotoSize photoSize = PhotoSize.getFromInt(size);
+		PhotoManager photoManager = PhotoManager.getInstance();
+		PhotoId id = PhotoId.getIdFromString(photoId);
+
+		String eTag = "\"" + photoId + "-" + size + "\"";
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null && isMatch(ifNoneMatch, eTag) && photoManager.getPhotoIds().contains(id)) {
+			setCacheHeaders(response, eTag, -1);
+			response.setStatus(HttpStatus.SC_NOT_MODIFIED);
+			return;
+		}
+
+		Photo photo = photoManager.getPhoto(id);
+		if (photo == null) {
+			sendNotFound(response);
+			return;
+		}
+
+		long lastModified = photo.getCreationTime();
+		if (ifNoneMatch == null && isModifiedSince(request, lastModified)) {
+			setCacheHeaders(response, eTag, lastModified);
+			response.setStatus(HttpStatus.SC_NOT_MODIFIED);
+			return;
+		}
+
+		ImageRangeSelector selector = metadata -> selectRange(request, response, eTag, lastModified, metadata);
+		OutputStream out = response.getOutputStream();
+		Image image = photo.getLoadedImage(photoSize);
+		boolean isProvided = (image != null) && writeImage(image.getImageData(), out, selector);
+		if (!isProvided) {
+			isProvided = ImageStorage.getInstance().streamImage(photoId, size, out, selector);
+		}
+		if (!isProvided) {
+			image = photoManager.getOrCreateImage(photo, photoSize);
+			isProvided = (image != null) && writeImage(image.getImageData(), out, selector);
+		}
+
+		if (!isProvided) {
+			sendNotFound(response);
+			return;
 		}
+		out.flush();
 	}
 
 	/**
 	 * @methodtype command
+	 */
+	protected void sendNotFound(HttpServletResponse response) {
+		log.warning(lb -> lb.addMessage("image not found"));
+		response.setHeader("Cache-Control", "no-store");
+		response.setStatus(HttpStatus.SC_NOT_FOUND);
+	}
+
+	/**
+	 * @methodtype set
+	 *
+	 * Sets the validators and caching headers of an image that exists; lastModified is -1 if it is not known.
+	 */
+	protected void setCacheHeaders(HttpServletResponse response, String eTag, long lastModified) {
+		response.setHeader("ETag", eTag);
+		response.setHeader("Cache-Control", IMAGE_CACHE_CONTROL);
+		response.setHeader("Accept-Ranges", "bytes");
+		if (lastModified >= 0) {
+			response.setDateHeader("Last-Modified", lastModified);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected boolean writeImage(byte[] imageData, OutputStream out, ImageRangeSelector selector) throws IOException {
+		if (imageData == null) {
+			return false;
+		}
+
+		ImageRange range = selector.selectRange(ImageMetadata.getFromImageData(imageData));
+		if (range != null) {
+			out.write(imageData, (int) range.getOffset(), (int) range.getLength());
+		}
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Sets status and content headers for the image and returns the range of it to send, or null if the requested
+	 * range cannot be satisfied.
+	 */
+	protected ImageRange selectRange(HttpServletRequest request, HttpServletResponse response, String eTag,
+									 long lastModified, ImageMetadata metadata) {
+
+		long length = metadata.getLength();
+		ByteRange range = getRequestedRange(request, eTag, length);
+		if (range != null && !range.isSatisfiable()) {
+			response.setHeader("Content-Range", "bytes */" + length);
+			response.setStatus(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return null;
+		}
+
+		setCacheHeaders(response, eTag, lastModified);
+		response.setContentType(metadata.getContentType());
+		if (range != null) {
+			response.setHeader("Content-Range", "bytes " + range.start + "-" + (range.end - 1) + "/" + length);
+			response.setStatus(HttpStatus.SC_PARTIAL_CONTENT);
+			response.setContentLength((int) (range.end - range.start));
+			return new ImageRange(range.start, range.end - range.start);
+		}
+
+		response.setStatus(HttpStatus.SC_OK);
+		response.setContentLength((int) length);
+		return new ImageRange(0, length);
+	}
+
+	/**
+	 * @methodtype boolean-query
 	 *
-	 * Loads image either from the <@link>PhotoManager</@link> or from the <@link>ImageStorage</@link>. If image does
-	 * not exist, null is returned.
+	 * Whether the If-None-Match header matches the ETag; it takes precedence over If-Modified-Since, see RFC 7232.
 	 */
-	private Image getImage(String photoId, int size) {
-		Image image = null;
-		Photo photo = PhotoManager.getInstance().getPhoto(photoId);
-		if (photo != null) {
-			PhotoSize photoSize = PhotoSize.getFromInt(size);
-			image = photo.getImage(photoSize);
-		}
-		// if not in cache load from Google Cloud Storage
-		if (image == null) {
-			Serializable rawImage = null;
-			try {
-				rawImage = ImageStorage.getInstance().readImage(photoId, size);
-			} catch (IOException e) {
-				log.warning(LogBuilder.createSystemMessage().addException("Problem when reading image.", e).toString());
+	protected boolean isMatch(String ifNoneMatch, String eTag) {
+		return "*".equals(ifNoneMatch.trim()) || Arrays.asList(ifNoneMatch.split("\\s*,\\s*")).contains(eTag);
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected boolean isModifiedSince(HttpServletRequest request, long lastModified) {
+		long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+		return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the single byte range of the Range header, or null if the whole image is to be sent. Multiple ranges and
+	 * malformed headers are ignored, as is a range whose If-Range does not match the current ETag.
+	 */
+	protected ByteRange getRequestedRange(HttpServletRequest request, String eTag, long length) {
+		String rangeHeader = request.getHeader("Range");
+		if (rangeHeader == null || !rangeHeader.startsWith("bytes=") || rangeHeader.indexOf(',') >= 0) {
+			return null;
+		}
+
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange != null && !ifRange.equals(eTag)) {
+			return null;
+		}
+
+		String rangeSpec = rangeHeader.substring("bytes=".length()).trim();
+		int dash = rangeSpec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+
+		try {
+			String first = rangeSpec.substring(0, dash).trim();
+			String last = rangeSpec.substring(dash + 1).trim();
+			if (first.isEmpty()) {
+				long suffixLength = Long.parseLong(last);
+				return new ByteRange(Math.max(0, length - suffixLength), length, suffixLength > 0);
 			}
-			if (rawImage != null && rawImage instanceof Image) {
-				image = (Image) rawImage;
+
+			long start = Long.parseLong(first);
+			long end = last.isEmpty() ? length : Math.min(length, Long.parseLong(last) + 1);
+			if (end <= start && !last.isEmpty() && start < length) {
+				return null; // last < first is a syntax error, not an unsatisfiable range
 			}
+			return new ByteRange(start, end, start < length);
+		} catch (NumberFormatException ex) {
+			return null;
 		}
-		return image;
 	}
-}
 
+	/**
+	 * @methodtype get
+	 *
+	 * Returns -1 if the header is missing or malformed.
+	 */
+	protected long getDateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch (IllegalArgumentException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Bytes from start (inclusive) to end (exclusive) of an image.
+	 */
+	protected static class ByteRange {
+
+		protected final long start;
+		protected final long end;
+		protected final boolean isSatisfiable;
+
+		protected ByteRange(long start, long end, boolean isSatisfiable) {
+			this.start = start;
+			this.end = end;
+			this.isSatisfiable = isSatisfiable;
+		}
+
+		/**
+		 * @methodtype boolean-query
+		 */
+		protected boolean isSatisfiable() {
+			return isSatisfiable;
+		}
+	}
+}
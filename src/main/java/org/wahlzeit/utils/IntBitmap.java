@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed bitmap of non-negative ints. The ints are grouped by their upper 16 bits; each group keeps its lower
+ * 16 bits in a sorted char[] while it is sparse and in a bitmap of 65536 bits once it is dense. Set operations work
+ * group by group and return new bitmaps.
+ */
+public class IntBitmap implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Groups with more values than this are stored as bitmaps, which then take less space than the sorted array
+	 */
+	public static final int MAX_ARRAY_SIZE = 4096;
+
+	/**
+	 *
+	 */
+	protected static final int BITMAP_LENGTH = 1 << 10;
+
+	/**
+	 * Upper 16 bits of the groups, in ascending order
+	 */
+	protected char[] keys = new char[0];
+
+	/**
+	 * Lower 16 bits per group, either char[] (sorted, possibly with unused capacity) or long[BITMAP_LENGTH]
+	 */
+	protected Object[] containers = new Object[0];
+
+	/**
+	 * Number of values per group
+	 */
+	protected int[] sizes = new int[0];
+
+	/**
+	 *
+	 */
+	protected int noGroups = 0;
+
+	/**
+	 *
+	 */
+	public IntBitmap() {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public static IntBitmap of(int... values) {
+		IntBitmap result = new IntBitmap();
+		for (int value : values) {
+			result.add(value);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public IntBitmap copy() {
+		IntBitmap result = new IntBitmap();
+		for (int i = 0; i < noGroups; i++) {
+			result.appendGroup(keys[i], copyOf(containers[i]), sizes[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Returns false if the value was contained already.
+	 */
+	public boolean add(int value) {
+		assertIsNonNegative(value);
+		char key = (char) (value >>> 16);
+		char low = (char) value;
+
+		int group = findGroup(key);
+		if (group < 0) {
+			group = -group - 1;
+			insertGroup(group, key, new char[4], 0);
+		}
+
+		Object container = containers[group];
+		int size = sizes[group];
+		if (container instanceof long[]) {
+			long[] bits = (long[]) container;
+			long mask = 1L << low;
+			if ((bits[low >>> 6] & mask) != 0) {
+				return false;
+			}
+			bits[low >>> 6] |= mask;
+		} else {
+			char[] values = (char[]) container;
+			int index = Arrays.binarySearch(values, 0, size, low);
+			if (index >= 0) {
+				return false;
+			}
+
+			index = -index - 1;
+			if (size == MAX_ARRAY_SIZE) {
+				long[] bits = toBits(values, size);
+				bits[low >>> 6] |= 1L << low;
+				containers[group] = bits;
+			} else {
+				if (size == values.length) {
+					values = Arrays.copyOf(values, Math.min(MAX_ARRAY_SIZE, 2 * size));
+					containers[group] = values;
+				}
+				System.arraycopy(values, index, values, index + 1, size - index);
+				values[index] = low;
+			}
+		}
+
+		sizes[group]++;
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Returns false if the value was not contained.
+	 */
+	public boolean remove(int value) {
+		if (value < 0) {
+			return false;
+		}
+
+		int group = findGroup((char) (value >>> 16));
+		if (group < 0) {
+			return false;
+		}
+
+		char low = (char) value;
+		Object container = containers[group];
+		int size = sizes[group];
+		if (container instanceof long[]) {
+			long[] bits = (long[]) container;
+			long mask = 1L << low;
+			if ((bits[low >>> 6] & mask) == 0) {
+				return false;
+			}
+			bits[low >>> 6] &= ~mask;
+			if (size - 1 <= MAX_ARRAY_SIZE / 2) {
+				containers[group] = toValues(bits, size - 1);
+			}
+		} else {
+			char[] values = (char[]) container;
+			int index = Arrays.binarySearch(values, 0, size, low);
+			if (index < 0) {
+				return false;
+			}
+			System.arraycopy(values, index + 1, values, index, size - index - 1);
+		}
+
+		if (--sizes[group] == 0) {
+			removeGroup(group);
+		}
+		return true;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean contains(int value) {
+		if (value < 0) {
+			return false;
+		}
+
+		int group = findGroup((char) (value >>> 16));
+		return group >= 0 && containsLow(containers[group], sizes[group], (char) value);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getCardinality() {
+		int result = 0;
+		for (int i = 0; i < noGroups; i++) {
+			result += sizes[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEmpty() {
+		return noGroups == 0;
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Returns the values that are in this or the other bitmap.
+	 */
+	public IntBitmap or(IntBitmap other) {
+		IntBitmap result = new IntBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < noGroups || j < other.noGroups) {
+			if (j == other.noGroups || (i < noGroups && keys[i] < other.keys[j])) {
+				result.appendGroup(keys[i], copyOf(containers[i]), sizes[i]);
+				i++;
+			} else if (i == noGroups || other.keys[j] < keys[i]) {
+				result.appendGroup(other.keys[j], copyOf(other.containers[j]), other.sizes[j]);
+				j++;
+			} else {
+				long[] bits = toBits(containers[i], sizes[i]);
+				long[] otherBits = toBits(other.containers[j], other.sizes[j]);
+				int size = 0;
+				for (int k = 0; k < BITMAP_LENGTH; k++) {
+					bits[k] |= otherBits[k];
+					size += Long.bitCount(bits[k]);
+				}
+				result.appendGroup(keys[i], compact(bits, size), size);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Returns the values that are in this and the other bitmap.
+	 */
+	public IntBitmap and(IntBitmap other) {
+		return retain(other, true);
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Returns the values that are in this but not in the other bitmap.
+	 */
+	public IntBitmap andNot(IntBitmap other) {
+		return retain(other, false);
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected IntBitmap retain(IntBitmap other, boolean isContainedInOther) {
+		IntBitmap result = new IntBitmap();
+		for (int i = 0; i < noGroups; i++) {
+			int otherGroup = other.findGroup(keys[i]);
+			if (otherGroup < 0) {
+				if (!isContainedInOther) {
+					result.appendGroup(keys[i], copyOf(containers[i]), sizes[i]);
+				}
+				continue;
+			}
+
+			Object otherContainer = other.containers[otherGroup];
+			int otherSize = other.sizes[otherGroup];
+			int size = 0;
+			Object container;
+			if (containers[i] instanceof char[]) {
+				char[] values = (char[]) containers[i];
+				char[] retained = new char[sizes[i]];
+				for (int k = 0; k < sizes[i]; k++) {
+					if (containsLow(otherContainer, otherSize, values[k]) == isContainedInOther) {
+						retained[size++] = values[k];
+					}
+				}
+				container = retained;
+			} else {
+				long[] bits = ((long[]) containers[i]).clone();
+				long[] otherBits = toBits(otherContainer, otherSize);
+				for (int k = 0; k < BITMAP_LENGTH; k++) {
+					bits[k] &= isContainedInOther ? otherBits[k] : ~otherBits[k];
+					size += Long.bitCount(bits[k]);
+				}
+				container = compact(bits, size);
+			}
+
+			if (size > 0) {
+				result.appendGroup(keys[i], container, size);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Passes all values to the consumer in ascending order.
+	 */
+	public void forEach(IntConsumer consumer) {
+		for (int i = 0; i < noGroups; i++) {
+			int high = keys[i] << 16;
+			Object container = containers[i];
+			if (container instanceof char[]) {
+				char[] values = (char[]) container;
+				for (int k = 0; k < sizes[i]; k++) {
+					consumer.accept(high | values[k]);
+				}
+			} else {
+				long[] bits = (long[]) container;
+				for (int k = 0; k < BITMAP_LENGTH; k++) {
+					for (long word = bits[k]; word != 0; word &= word - 1) {
+						consumer.accept(high | (k << 6) | Long.numberOfTrailingZeros(word));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public int[] toArray() {
+		int[] result = new int[getCardinality()];
+		int[] index = {0};
+		forEach(value -> result[index[0]++] = value);
+		return result;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public String asString() {
+		return Arrays.toString(toArray());
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected int findGroup(char key) {
+		return Arrays.binarySearch(keys, 0, noGroups, key);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void insertGroup(int index, char key, Object container, int size) {
+		if (noGroups == keys.length) {
+			int capacity = Math.max(4, 2 * noGroups);
+			keys = Arrays.copyOf(keys, capacity);
+			containers = Arrays.copyOf(containers, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+		}
+
+		System.arraycopy(keys, index, keys, index + 1, noGroups - index);
+		System.arraycopy(containers, index, containers, index + 1, noGroups - index);
+		System.arraycopy(sizes, index, sizes, index + 1, noGroups - index);
+		keys[index] = key;
+		containers[index] = container;
+		sizes[index] = size;
+		noGroups++;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void appendGroup(char key, Object container, int size) {
+		insertGroup(noGroups, key, container, size);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void removeGroup(int index) {
+		System.arraycopy(keys, index + 1, keys, index, noGroups - index - 1);
+		System.arraycopy(containers, index + 1, containers, index, noGroups - index - 1);
+		System.arraycopy(sizes, index + 1, sizes, index, noGroups - index - 1);
+		noGroups--;
+		containers[noGroups] = null;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected static boolean containsLow(Object container, int size, char low) {
+		if (container instanceof long[]) {
+			return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+		}
+		return Arrays.binarySearch((char[]) container, 0, size, low) >= 0;
+	}
+
+	/**
+	 * @methodtype conversion
+	 *
+	 * Always returns a new bitmap.
+	 */
+	protected static long[] toBits(Object container, int size) {
+		if (container instanceof long[]) {
+			return ((long[]) container).clone();
+		}
+
+		long[] result = new long[BITMAP_LENGTH];
+		char[] values = (char[]) container;
+		for (int i = 0; i < size; i++) {
+			result[values[i] >>> 6] |= 1L << values[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static char[] toValues(long[] bits, int size) {
+		char[] result = new char[Math.max(4, size)];
+		int index = 0;
+		for (int k = 0; k < BITMAP_LENGTH; k++) {
+			for (long word = bits[k]; word != 0; word &= word - 1) {
+				result[index++] = (char) ((k << 6) | Long.numberOfTrailingZeros(word));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static Object compact(long[] bits, int size) {
+		return (size <= MAX_ARRAY_SIZE) ? toValues(bits, size) : bits;
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static Object copyOf(Object container) {
+		return (container instanceof long[]) ? ((long[]) container).clone() : ((char[]) container).clone();
+	}
+
+	/**
+	 * @methodtype assertion
+	 */
+	protected static void assertIsNonNegative(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("negative value: " + value);
+		}
+	}
+
+}
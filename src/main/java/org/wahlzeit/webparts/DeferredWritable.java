@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.webparts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.function.Supplier;
+
+/**
+ * A DeferredWritable makes its part only when it is written, so that a page can be streamed: everything before the
+ * part is written, and optionally flushed to the client, while the part is still being computed. The part is not
+ * kept after it has been written.
+ */
+public class DeferredWritable implements Writable {
+
+	/**
+	 *
+	 */
+	protected final Supplier<? extends Writable> factory;
+	protected final boolean isToFlushBefore;
+
+	/**
+	 *
+	 */
+	public DeferredWritable(Supplier<? extends Writable> factory) {
+		this(factory, false);
+	}
+
+	/**
+	 *
+	 */
+	public DeferredWritable(Supplier<? extends Writable> factory, boolean isToFlushBefore) {
+		this.factory = factory;
+		this.isToFlushBefore = isToFlushBefore;
+	}
+
+	/**
+	 *
+	 */
+	public void writeOn(Writer out) throws IOException {
+		if (isToFlushBefore) {
+			out.flush();
+		}
+
+		Writable part = factory.get();
+		if (part != null) {
+			part.writeOn(out);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public void writeOn(OutputStream out) throws IOException {
+		if (isToFlushBefore) {
+			out.flush();
+		}
+
+		Writable part = factory.get();
+		if (part != null) {
+			part.writeOn(out);
+		}
+	}
+
+	/**
+	 * The part does not exist yet.
+	 */
+	public int getEstimatedLength() {
+		return 0;
+	}
+
+}
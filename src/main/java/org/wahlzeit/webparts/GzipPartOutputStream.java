@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.webparts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A GzipPartOutputStream writes a gzip stream of what is written to it. Only the dynamic text is compressed per
+ * response; StaticTexts come with compressed forms that are spliced into the stream as they are. This works because a
+ * sync flush ends the current deflate block on a byte boundary, and because the deflater is told afterwards that the
+ * static text is what came before, so that its back references stay correct. Deflaters are pooled.
+ */
+public class GzipPartOutputStream extends OutputStream {
+
+	/**
+	 *
+	 */
+	public static final int COMPRESSION_LEVEL = 6;
+	public static final int BUFFER_SIZE = 8 * 1024;
+	public static final int MAX_POOLED_DEFLATERS = 16;
+
+	/**
+	 * Largest back reference distance of deflate
+	 */
+	protected static final int WINDOW_SIZE = 32 * 1024;
+
+	/**
+	 *
+	 */
+	protected static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	/**
+	 *
+	 */
+	protected static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(MAX_POOLED_DEFLATERS);
+	protected static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+	/**
+	 *
+	 */
+	protected final OutputStream out;
+	protected Deflater deflater;
+	protected final CRC32 crc = new CRC32();
+	protected long length = 0;
+
+	/**
+	 * Whether the deflater has got input since its last flush
+	 */
+	protected boolean hasUnflushedInput = false;
+
+	/**
+	 *
+	 */
+	public GzipPartOutputStream(OutputStream out) throws IOException {
+		this.out = out;
+		deflater = getDeflater();
+		out.write(GZIP_HEADER);
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected static Deflater getDeflater() {
+		Deflater result = deflaters.poll();
+		return (result != null) ? result : new Deflater(COMPRESSION_LEVEL, true);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected static void releaseDeflater(Deflater deflater) {
+		deflater.reset();
+		if (!deflaters.offer(deflater)) {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 *
+	 * Compresses the segment on its own into raw deflate blocks that end on a byte boundary and are not final.
+	 */
+	public static byte[] compressSegment(byte[] segment) {
+		Deflater segmentDeflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		try {
+			segmentDeflater.setInput(segment);
+			byte[] result = new byte[segment.length + 64];
+			int length = 0;
+			int noBytes;
+			do {
+				if (length == result.length) {
+					result = Arrays.copyOf(result, 2 * result.length);
+				}
+				noBytes = segmentDeflater.deflate(result, length, result.length - length, Deflater.SYNC_FLUSH);
+				length += noBytes;
+			} while (length == result.length || !segmentDeflater.needsInput());
+			return Arrays.copyOf(result, length);
+		} finally {
+			segmentDeflater.end();
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		assertIsOpen();
+		if (len == 0) {
+			return;
+		}
+
+		crc.update(b, off, len);
+		length += len;
+		deflater.setInput(b, off, len);
+		while (!deflater.needsInput()) {
+			deflate(Deflater.NO_FLUSH);
+		}
+		hasUnflushedInput = true;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Writes the compressed form of the text, or compresses short texts with the text around them.
+	 */
+	public void writeStatic(StaticText text) throws IOException {
+		if (!text.isToCompressSeparately()) {
+			write(text.getBytes());
+			return;
+		}
+
+		assertIsOpen();
+		if (hasUnflushedInput) {
+			flushDeflater(Deflater.SYNC_FLUSH);
+		}
+
+		byte[] bytes = text.getBytes();
+		crc.update(bytes, 0, bytes.length);
+		length += bytes.length;
+		out.write(text.getCompressedBytes());
+
+		int dictionaryLength = Math.min(bytes.length, WINDOW_SIZE);
+		deflater.setDictionary(bytes, bytes.length - dictionaryLength, dictionaryLength);
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Flushes the deflater, so that all text written so far can be decompressed by the client.
+	 */
+	@Override
+	public void flush() throws IOException {
+		assertIsOpen();
+		if (hasUnflushedInput) {
+			flushDeflater(Deflater.SYNC_FLUSH);
+		}
+		out.flush();
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Ends the gzip stream without closing the underlying stream.
+	 */
+	public void finish() throws IOException {
+		if (deflater == null) {
+			return;
+		}
+
+		try {
+			deflater.finish();
+			while (!deflater.finished()) {
+				deflate(Deflater.NO_FLUSH);
+			}
+			writeIntLittleEndian((int) crc.getValue());
+			writeIntLittleEndian((int) length);
+		} finally {
+			releaseDeflater(deflater);
+			deflater = null;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void flushDeflater(int flushMode) throws IOException {
+		int noBytes;
+		do {
+			noBytes = deflate(flushMode);
+		} while (noBytes == BUFFER_SIZE);
+		hasUnflushedInput = false;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected int deflate(int flushMode) throws IOException {
+		byte[] buffer = buffers.get();
+		int result = deflater.deflate(buffer, 0, buffer.length, flushMode);
+		if (result > 0) {
+			out.write(buffer, 0, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected void writeIntLittleEndian(int value) throws IOException {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	/**
+	 * @methodtype assertion
+	 */
+	protected void assertIsOpen() throws IOException {
+		if (deflater == null) {
+			throw new IOException("gzip stream has been finished");
+		}
+	}
+
+}
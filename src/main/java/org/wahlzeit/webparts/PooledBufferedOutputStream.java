@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.webparts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A buffered output stream whose fixed-size buffers are pooled, so that writing a response does not allocate a new
+ * buffer. The buffer is returned to the pool when the stream is closed.
+ */
+public class PooledBufferedOutputStream extends OutputStream {
+
+	/**
+	 *
+	 */
+	public static final int BUFFER_SIZE = 16 * 1024;
+	public static final int MAX_POOLED_BUFFERS = 32;
+
+	/**
+	 *
+	 */
+	protected static final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(MAX_POOLED_BUFFERS);
+
+	/**
+	 *
+	 */
+	protected final OutputStream out;
+	protected byte[] buffer;
+	protected int count = 0;
+
+	/**
+	 *
+	 */
+	public PooledBufferedOutputStream(OutputStream out) {
+		this.out = out;
+		byte[] pooled = buffers.poll();
+		buffer = (pooled != null) ? pooled : new byte[BUFFER_SIZE];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		assertIsOpen();
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		assertIsOpen();
+		if (len > buffer.length - count) {
+			flushBuffer();
+		}
+
+		if (len >= buffer.length) {
+			out.write(b, off, len);
+		} else {
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		assertIsOpen();
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (buffer == null) {
+			return;
+		}
+
+		try {
+			flushBuffer();
+		} finally {
+			buffers.offer(buffer);
+			buffer = null;
+			out.close();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	/**
+	 * @methodtype assertion
+	 */
+	protected void assertIsOpen() throws IOException {
+		if (buffer == null) {
+			throw new IOException("stream has been closed");
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.webparts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A StaticText is text that is the same for many responses, like the text between the slots of a template, a menu
+ * from the ModelConfig, or a cached part. It is kept as UTF-8 and, once it is written to a gzip stream, also in
+ * compressed form, so that it is neither encoded nor compressed again.
+ */
+public class StaticText implements Writable {
+
+	/**
+	 * Shorter texts are compressed together with the text around them, which compresses them better
+	 */
+	public static final int MIN_COMPRESSED_LENGTH = 256;
+
+	/**
+	 * Texts by their content, for texts that do not belong to a template
+	 */
+	protected static final Map<String, StaticText> texts = new ConcurrentHashMap<String, StaticText>();
+
+	/**
+	 *
+	 */
+	protected final byte[] bytes;
+
+	/**
+	 * null until first needed
+	 */
+	protected volatile byte[] compressedBytes = null;
+
+	/**
+	 *
+	 */
+	public StaticText(byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * @methodtype factory
+	 *
+	 * Returns the shared static text for a constant string, e.g. from a ModelConfig.
+	 */
+	public static StaticText of(String text) {
+		return texts.computeIfAbsent(text, key -> new StaticText(key.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the shared UTF-8 bytes; they must not be changed.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getLength() {
+		return bytes.length;
+	}
+
+	/**
+	 *
+	 */
+	public int getEstimatedLength() {
+		return bytes.length;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isToCompressSeparately() {
+		return bytes.length >= MIN_COMPRESSED_LENGTH;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the text as raw deflate blocks that can be spliced into a stream of a GzipPartOutputStream.
+	 */
+	public byte[] getCompressedBytes() {
+		byte[] result = compressedBytes;
+		if (result == null) {
+			result = GzipPartOutputStream.compressSegment(bytes);
+			compressedBytes = result;
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	public void writeOn(Writer out) throws IOException {
+		out.write(new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 *
+	 */
+	public void writeOn(OutputStream out) throws IOException {
+		if (out instanceof GzipPartOutputStream) {
+			((GzipPartOutputStream) out).writeStatic(this);
+		} else {
+			out.write(bytes);
+		}
+	}
+
+}
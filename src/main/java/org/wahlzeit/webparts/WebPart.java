@@ -23,10 +23,14 @@ package org.wahlzeit.webparts;
 import org.wahlzeit.utils.EnumValue;
 import org.wahlzeit.utils.HtmlUtil;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * A WebPart is a Writable formatted as HTML, working off a template.
@@ -41,19 +45,32 @@ public class WebPart implements Writable {
 	protected WebPartTemplate template = null;
 
 	/**
-	 *
+	 * Values by the key indices of the template
+	 */
+	protected Object[] values;
+
+	/**
+	 * Values of keys the template has no slot for; they are never written
 	 */
-	protected Map<String, Object> parts = new HashMap<String, Object>();
+	protected Map<String, Object> otherValues = null;
 
 	/**
 	 *
 	 */
 	public WebPart(WebPartTemplate myTemplate) {
 		template = myTemplate;
+		values = new Object[(template != null) ? template.getNoKeys() : 0];
 	}
 
+	/**
+	 *
+	 */
 	public Object getValue(String key) {
-		return parts.get(key);
+		int index = getKeyIndex(key);
+		if (index >= 0) {
+			return values[index];
+		}
+		return (otherValues != null) ? otherValues.get(key) : null;
 	}
 
 	/**
@@ -65,6 +82,15 @@ public class WebPart implements Writable {
 		}
 	}
 
+	/**
+	 * For constant strings that are used in many responses, e.g. from a ModelConfig.
+	 */
+	public void addStaticText(String key, String value) {
+		if (value != null) {
+			putValue(key, StaticText.of(value));
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -165,46 +191,84 @@ public class WebPart implements Writable {
 		}
 	}
 
+	/**
+	 * The part is made while the page is written; what comes before it is flushed to the client first.
+	 */
+	public void addDeferredWritable(String key, Supplier<? extends Writable> factory) {
+		putValue(key, new DeferredWritable(factory, true));
+	}
+
 	/**
 	 *
 	 */
 	protected void putValue(String key, Object value) {
-		if (value != null) {
-			parts.put(key, value);
+		if (value == null) {
+			return;
+		}
+
+		int index = getKeyIndex(key);
+		if (index >= 0) {
+			values[index] = value;
+		} else {
+			if (otherValues == null) {
+				otherValues = new HashMap<String, Object>();
+			}
+			otherValues.put(key, value);
 		}
 	}
 
 	/**
-	 *
+	 * @methodtype get
 	 */
-	public void writeOn(Writer out) throws IOException {
-		String tmpl = template.asString();
-		String[] keys = template.getKeys();
-		int[] slots = template.getSlots();
-
-		int start = 0;
-		for (int i = 0; i < keys.length; i++) {
-			int index = slots[i];
-			out.write(tmpl, start, index - start);
-
-			String key = keys[i];
-			if (key != null) {
-				Object object = parts.get(key);
-				if (object != null) {
-					if (object instanceof Writable) {
-						Writable part = (Writable) object;
-						part.writeOn(out);
-					} else {
-						String value = object.toString();
-						out.write(value);
-					}
-				}
+	protected int getKeyIndex(String key) {
+		return (template != null) ? template.getKeyIndex(key) : -1;
+	}
+
+	/**
+	 * Writes the pre-encoded static text of the template and the values in between.
+	 */
+	public void writeOn(OutputStream out) throws IOException {
+		int noSlots = template.getNoSlots();
+		for (int i = 0; i < noSlots; i++) {
+			template.getSegment(i).writeOn(out);
+
+			Object value = values[template.getSlotIndex(i)];
+			if (value instanceof Writable) {
+				((Writable) value).writeOn(out);
+			} else if (value != null) {
+				out.write(value.toString().getBytes(StandardCharsets.UTF_8));
 			}
+		}
 
-			start = index;
+		template.getSegment(noSlots).writeOn(out);
+	}
+
+	/**
+	 * Counts a string value with one byte per char.
+	 */
+	public int getEstimatedLength() {
+		int noSlots = template.getNoSlots();
+		int result = template.getSegment(noSlots).getLength();
+		for (int i = 0; i < noSlots; i++) {
+			result += template.getSegment(i).getLength();
+
+			Object value = values[template.getSlotIndex(i)];
+			if (value instanceof Writable) {
+				result += ((Writable) value).getEstimatedLength();
+			} else if (value != null) {
+				result += value.toString().length();
+			}
 		}
+		return result;
+	}
 
-		out.write(tmpl, start, tmpl.length() - start);
+	/**
+	 *
+	 */
+	public void writeOn(Writer out) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(getEstimatedLength());
+		writeOn(buffer);
+		out.write(buffer.toString(StandardCharsets.UTF_8.name()));
 	}
 
 }
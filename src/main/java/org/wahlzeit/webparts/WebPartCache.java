@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2006-2009 by Dirk Riehle, http://dirkriehle.com
+ *
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.wahlzeit.webparts;
+
+import org.wahlzeit.services.LazyLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The WebPartCache keeps rendered Writables as StaticTexts, so that parts that are the same for many requests are
+ * rendered only once. A key names the template, the language, and the ids and write versions of all objects the part
+ * is made from; a changed object gets a new write version and thereby a new key, while the outdated part is evicted
+ * eventually. The cache is bounded by the sum of the byte lengths, least recently used parts are evicted first.
+ */
+public class WebPartCache {
+
+	/**
+	 *
+	 */
+	public static final long DEFAULT_BUDGET = 8 * 1024 * 1024;
+
+	/**
+	 *
+	 */
+	protected static final WebPartCache instance = new WebPartCache(DEFAULT_BUDGET);
+	private static final LazyLogger log = LazyLogger.getLogger(WebPartCache.class);
+
+	/**
+	 *
+	 */
+	protected final long budget;
+
+	/**
+	 *
+	 */
+	protected Map<String, StaticText> parts = new LinkedHashMap<String, StaticText>(16, 0.75f, true);
+
+	/**
+	 *
+	 */
+	protected long weight = 0;
+	protected long noHits = 0;
+	protected long noMisses = 0;
+	protected long noEvictions = 0;
+
+	/**
+	 *
+	 */
+	public WebPartCache(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Convenience method...
+	 */
+	public static WebPartCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @methodtype get
+	 *
+	 * Returns the cached part for the key, or renders and caches the part made by the factory. The factory is only
+	 * called on a miss; it may be called more than once if several threads miss at the same time.
+	 */
+	public Writable getWebPart(Key key, Supplier<? extends Writable> factory) {
+		String keyAsString = key.asString();
+		StaticText result = get(keyAsString);
+		if (result != null) {
+			return result;
+		}
+
+		Writable part = factory.get();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, part.getEstimatedLength()));
+			part.writeOn(out);
+			result = new StaticText(out.toByteArray());
+		} catch (IOException ex) {
+			log.warning(lb -> lb.
+					addParameter("web part", keyAsString).
+					addException("could not render web part", ex));
+			return part;
+		}
+
+		put(keyAsString, result);
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected synchronized StaticText get(String key) {
+		StaticText result = parts.get(key);
+		if (result == null) {
+			noMisses++;
+		} else {
+			noHits++;
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Parts larger than the whole budget are not cached at all.
+	 */
+	protected synchronized void put(String key, StaticText part) {
+		if (part.getLength() > budget) {
+			return;
+		}
+
+		StaticText previous = parts.put(key, part);
+		if (previous != null) {
+			weight -= previous.getLength();
+		}
+		weight += part.getLength();
+
+		for (Iterator<StaticText> i = parts.values().iterator(); weight > budget && i.hasNext(); ) {
+			weight -= i.next().getLength();
+			i.remove();
+			noEvictions++;
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized void clear() {
+		parts.clear();
+		weight = 0;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoHits() {
+		return noHits;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoMisses() {
+		return noMisses;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized long getNoEvictions() {
+		return noEvictions;
+	}
+
+	/**
+	 * The key of a cached part; everything a part is made from must be added to it.
+	 */
+	public static class Key {
+
+		/**
+		 *
+		 */
+		protected StringBuilder key = new StringBuilder(64);
+
+		/**
+		 *
+		 */
+		public Key(String templateName, String languageCode) {
+			key.append(templateName).append('|').append(languageCode);
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		public Key add(String id, long writeVersion) {
+			key.append('|').append(id).append('@').append(writeVersion);
+			return this;
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		public Key add(String value) {
+			key.append('|').append(value);
+			return this;
+		}
+
+		/**
+		 * @methodtype conversion
+		 */
+		public String asString() {
+			return key.toString();
+		}
+	}
+
+}
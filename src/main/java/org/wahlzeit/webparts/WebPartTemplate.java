@@ -20,12 +20,19 @@
 
 package org.wahlzeit.webparts;
 
-import java.util.LinkedList;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A WebPartTmpl is a template for a WebPart.
  * It gets initialized once and is read-only after that.
+ *
+ * Initializing a template compiles it: the static text between the {$key} slots is encoded as UTF-8 once, and every
+ * distinct key gets an index into the values of a WebPart, so that writing a WebPart neither encodes the static text
+ * nor looks up keys again.
  */
 public class WebPartTemplate {
 
@@ -37,13 +44,23 @@ public class WebPartTemplate {
 	/**
 	 *
 	 */
-	protected String template;
+	protected String template = "";
 
 	/**
-	 *
+	 * Static text before, between and after the slots; there is one segment more than there are slots
+	 */
+	protected StaticText[] segments = {new StaticText(new byte[0])};
+
+	/**
+	 * Value index per slot
+	 */
+	protected int[] slotIndices = new int[0];
+
+	/**
+	 * Distinct keys, in the order of their value indices
 	 */
-	protected String[] keys = null;
-	protected int[] slots = null;
+	protected String[] keys = new String[0];
+	protected Map<String, Integer> keyIndices = new HashMap<String, Integer>();
 
 	/**
 	 *
@@ -56,39 +73,47 @@ public class WebPartTemplate {
 	 * @methodtype initialization
 	 */
 	public void initialize(String source) {
-		List<String> keyList = new LinkedList<String>();
-		List<Integer> slotList = new LinkedList<Integer>();
-
-		StringBuffer buffer = new StringBuffer(source);
-
-		for (int index = 0; index != -1; ) {
-			int nextSlot = buffer.indexOf("{$", index);
-			if (nextSlot != -1) {
-				int endSlot = buffer.indexOf("}", nextSlot);
-				if (endSlot != -1) {
-					String key = buffer.substring(nextSlot + 2, endSlot);
-
-					keyList.add(key);
-					slotList.add(nextSlot);
-
-					buffer.replace(nextSlot, endSlot + 1, "");
-					index = nextSlot;
-				}
-				index = endSlot;
-			} else {
-				index = -1;
+		List<StaticText> segmentList = new ArrayList<StaticText>();
+		List<Integer> slotIndexList = new ArrayList<Integer>();
+		List<String> keyList = new ArrayList<String>();
+		Map<String, Integer> indices = new HashMap<String, Integer>();
+		StringBuilder text = new StringBuilder(source.length());
+
+		int start = 0;
+		for (int nextSlot = source.indexOf("{$"); nextSlot != -1; nextSlot = source.indexOf("{$", start)) {
+			int endSlot = source.indexOf('}', nextSlot);
+			if (endSlot == -1) {
+				break;
 			}
-		}
 
-		int length = keyList.size();
-		keys = new String[length];
-		slots = new int[length];
-		for (int i = 0; i < length; i++) {
-			keys[i] = keyList.get(i);
-			slots[i] = slotList.get(i);
+			String segment = source.substring(start, nextSlot);
+			segmentList.add(new StaticText(segment.getBytes(StandardCharsets.UTF_8)));
+			text.append(segment);
+
+			String key = source.substring(nextSlot + 2, endSlot);
+			Integer index = indices.get(key);
+			if (index == null) {
+				index = keyList.size();
+				indices.put(key, index);
+				keyList.add(key);
+			}
+			slotIndexList.add(index);
+
+			start = endSlot + 1;
 		}
 
-		template = buffer.toString();
+		String segment = source.substring(start);
+		segmentList.add(new StaticText(segment.getBytes(StandardCharsets.UTF_8)));
+		text.append(segment);
+
+		segments = segmentList.toArray(new StaticText[segmentList.size()]);
+		slotIndices = new int[slotIndexList.size()];
+		for (int i = 0; i < slotIndices.length; i++) {
+			slotIndices[i] = slotIndexList.get(i);
+		}
+		keys = keyList.toArray(new String[keyList.size()]);
+		keyIndices = indices;
+		template = text.toString();
 	}
 
 	/**
@@ -99,24 +124,57 @@ public class WebPartTemplate {
 	}
 
 	/**
-	 *
+	 * Returns the static text without the slots
 	 */
 	public String asString() {
 		return template;
 	}
 
 	/**
+	 * @methodtype get
+	 */
+	public int getNoKeys() {
+		return keys.length;
+	}
+
+	/**
+	 * @methodtype get
 	 *
+	 * Returns the value index of the key, or -1 if the template has no slot for it.
+	 */
+	public int getKeyIndex(String key) {
+		Integer result = keyIndices.get(key);
+		return (result == null) ? -1 : result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getKey(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoSlots() {
+		return slotIndices.length;
+	}
+
+	/**
+	 * @methodtype get
 	 */
-	public String[] getKeys() {
-		return keys; // @FIXME needs cloning?
+	public int getSlotIndex(int slot) {
+		return slotIndices[slot];
 	}
 
 	/**
+	 * @methodtype get
 	 *
+	 * Returns the static text before the slot, or after the last slot.
 	 */
-	public int[] getSlots() {
-		return slots; // @FIXME needs cloning?
+	public StaticText getSegment(int slot) {
+		return segments[slot];
 	}
 
 }
@@ -21,10 +21,11 @@
 package org.wahlzeit.webparts;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 
 /**
- * A Writable can write a representation of itself to a Writer.
+ * A Writable can write a representation of itself to a Writer, or as UTF-8 to an OutputStream.
  */
 public interface Writable {
 
@@ -33,4 +34,14 @@ public interface Writable {
 	 */
 	void writeOn(Writer writer) throws IOException;
 
+	/**
+	 *
+	 */
+	void writeOn(OutputStream out) throws IOException;
+
+	/**
+	 * Returns about how many bytes writeOn() will write, to size buffers up front; 0 if it is not known.
+	 */
+	int getEstimatedLength();
+
 }
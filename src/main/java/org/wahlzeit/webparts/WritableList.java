@@ -21,50 +21,105 @@
 package org.wahlzeit.webparts;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Arrays;
 
 /**
- * A WritableList is a list of Writables.
+ * A WritableList is a list of Writables. It keeps them in an array that can be sized up front if the number of
+ * elements is known.
  */
 public class WritableList implements Writable {
 
 	/**
 	 *
 	 */
-	protected LinkedList<Writable> writables = new LinkedList<Writable>();
+	public static final int DEFAULT_CAPACITY = 8;
+
+	/**
+	 *
+	 */
+	protected Writable[] writables;
+	protected int size = 0;
 
 	/**
 	 *
 	 */
 	public WritableList() {
-		// do nothing
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity expected number of elements
+	 */
+	public WritableList(int capacity) {
+		writables = new Writable[Math.max(1, capacity)];
 	}
 
 	/**
 	 *
 	 */
 	public void writeOn(Writer out) throws IOException {
-		for (Iterator<Writable> pi = writables.listIterator(); pi.hasNext(); ) {
-			Writable part = pi.next();
-			part.writeOn(out);
+		for (int i = 0; i < size; i++) {
+			writables[i].writeOn(out);
 		}
 	}
 
+	/**
+	 *
+	 */
+	public void writeOn(OutputStream out) throws IOException {
+		for (int i = 0; i < size; i++) {
+			writables[i].writeOn(out);
+		}
+	}
+
+	/**
+	 *
+	 */
+	public int getEstimatedLength() {
+		int result = 0;
+		for (int i = 0; i < size; i++) {
+			result += writables[i].getEstimatedLength();
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
 	/**
 	 *
 	 */
 	public WritableList prepend(Writable w) {
-		writables.addFirst(w);
-		return this;
+		return insert(0, w);
 	}
 
 	/**
 	 *
 	 */
 	public WritableList insert(int i, Writable w) {
-		writables.add(i, w);
+		if (i < 0 || i > size) {
+			throw new IndexOutOfBoundsException("index: " + i + ", size: " + size);
+		}
+
+		if (size == writables.length) {
+			writables = Arrays.copyOf(writables, 2 * size);
+		}
+		System.arraycopy(writables, i, writables, i + 1, size - i);
+		writables[i] = w;
+		size++;
 		return this;
 	}
 
@@ -72,8 +127,7 @@ public class WritableList implements Writable {
 	 *
 	 */
 	public WritableList append(Writable w) {
-		writables.addLast(w);
-		return this;
+		return insert(size, w);
 	}
 
 }
@@ -8,7 +8,8 @@ import org.junit.runners.*;
 	org.wahlzeit.handlers.AllHandlerTests.class,
 	org.wahlzeit.model.AllModelTests.class,
 	org.wahlzeit.services.AllServicesTests.class,
-	org.wahlzeit.utils.AllUtilsTests.class
+	org.wahlzeit.utils.AllUtilsTests.class,
+	org.wahlzeit.webparts.AllWebPartsTests.class
 })
 
 public class AllTests { /* do nothing */ }
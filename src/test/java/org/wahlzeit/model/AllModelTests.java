@@ -14,8 +14,18 @@ import org.junit.runner.*;
 	org.wahlzeit.model.GenderTest.class,
 	org.wahlzeit.model.GuestTest.class,
 	org.wahlzeit.model.LocationTest.class,
+	org.wahlzeit.model.PhotoCacheTest.class,
 	org.wahlzeit.model.PhotoFilterTest.class,
+	org.wahlzeit.model.PhotoIdSamplerTest.class,
+	org.wahlzeit.model.PhotoIdTest.class,
+	org.wahlzeit.model.PhotoIdSetTest.class,
+	org.wahlzeit.model.PhotoManagerTest.class,
+	org.wahlzeit.model.PhotoTagIndexTest.class,
+	org.wahlzeit.model.PhotoUtilTest.class,
+	org.wahlzeit.model.RasterImageScalerTest.class,
 	org.wahlzeit.model.TagsTest.class,
+	org.wahlzeit.model.UploadedImageTest.class,
+	org.wahlzeit.model.UserSessionTest.class,
 	org.wahlzeit.model.UserStatusTest.class,
 	org.wahlzeit.model.ValueTest.class,
 	org.wahlzeit.model.VolcanoManagerTest.class,
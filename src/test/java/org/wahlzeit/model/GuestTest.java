@@ -1,15 +1,23 @@
 package org.wahlzeit.model;
 
+import com.google.appengine.api.datastore.EmbeddedEntity;
+import com.google.appengine.api.datastore.Entity;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Work;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.RuleChain;
+import org.wahlzeit.services.OfyService;
 import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
 import org.wahlzeit.testEnvironmentProvider.RegisteredOfyEnvironmentProvider;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test class for {@link Guest}.
@@ -44,6 +52,58 @@ public class GuestTest {
 		testGetGuestFromUserManager(Guest.GUEST_PREFIX + ++clientId);
 	}
 
+	@Test
+	public void testLegacyPhotoIdListsAreImported() {
+		final PhotoId first = PhotoId.getNextId();
+		final PhotoId second = PhotoId.getNextId();
+		final PhotoId skipped = PhotoId.getNextId();
+		Guest guest = ObjectifyService.run(new Work<Guest>() {
+			@Override
+			public Guest run() {
+				// a guest as it was stored when the photo ids were kept in lists of embedded photo ids
+				Entity entity = OfyService.ofy().save().toEntity(new Guest());
+				entity.removeProperty("praisedPhotoIdSet");
+				entity.removeProperty("skippedPhotoIdSet");
+				entity.setProperty("praisedPhotoIds", asEmbeddedEntities(second, first));
+				entity.setProperty("skippedPhotoIds", asEmbeddedEntities(skipped));
+				return OfyService.ofy().load().fromEntity(entity);
+			}
+		});
+
+		assertEquals(Arrays.asList(first, second), guest.getPraisedPhotoIds().asList());
+		assertEquals(first, guest.lastPraisedPhotoId);
+		assertTrue(guest.getSkippedPhotoIds().contains(skipped));
+		assertEquals(1, guest.getSkippedPhotoIds().size());
+	}
+
+	@Test
+	public void testWriteVersionChangesWithClient() {
+		Guest guest = ObjectifyService.run(new Work<Guest>() {
+			@Override
+			public Guest run() {
+				return new Guest();
+			}
+		});
+
+		long writeVersion = guest.getWriteVersion();
+		assertEquals(writeVersion, guest.getWriteVersion());
+		guest.resetWriteCount();
+		assertEquals(writeVersion, guest.getWriteVersion());
+		guest.removeHttpSessionId();
+		assertTrue(guest.getWriteVersion() > writeVersion);
+	}
+
+	protected List<EmbeddedEntity> asEmbeddedEntities(PhotoId... photoIds) {
+		List<EmbeddedEntity> result = new ArrayList<EmbeddedEntity>();
+		for (PhotoId photoId : photoIds) {
+			EmbeddedEntity embeddedEntity = new EmbeddedEntity();
+			embeddedEntity.setProperty("value", (long) photoId.asInt());
+			embeddedEntity.setProperty("stringValue", photoId.asString());
+			result.add(embeddedEntity);
+		}
+		return result;
+	}
+
 	protected void assertNewGuestHasId(int id) {
 		Guest testGuest = ObjectifyService.run(new Work<Guest>() {
 			@Override
@@ -0,0 +1,67 @@
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import com.google.appengine.tools.development.testing.LocalImagesServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares the image scalers on an upload of typical size. Not part of the test suite; run it with the test classpath
+ * and optionally the number of iterations as argument.
+ */
+public class ImageScalerBenchmark {
+
+	private static final int WARM_UP_ITERATIONS = 5;
+
+	public static void main(String[] args) throws IOException {
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+
+		LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalImagesServiceTestConfig());
+		helper.setUp();
+		try {
+			Image source = makeImage(2400, 3200);
+			run("images service", new ImagesServiceScaler(), source, iterations);
+			run("raster", new RasterImageScaler(), source, iterations);
+		} finally {
+			helper.tearDown();
+		}
+	}
+
+	private static void run(String name, ImageScaler scaler, Image source, int iterations) throws IOException {
+		for (PhotoSize size : PhotoSize.values()) {
+			int width = size.calcAdjustedWidth(source.getWidth(), source.getHeight());
+			int height = size.calcAdjustedHeight(source.getWidth(), source.getHeight());
+
+			for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+				scaler.scale(source, width, height);
+			}
+
+			long startTime = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				scaler.scale(source, width, height);
+			}
+			double millis = (System.nanoTime() - startTime) / 1e6 / iterations;
+			System.out.printf("%-15s %-12s %8.2f ms/op%n", name, size.asString(), millis);
+		}
+	}
+
+	private static Image makeImage(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(42);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | random.nextInt(64));
+			}
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpg", out);
+		return ImagesServiceFactory.makeImage(out.toByteArray());
+	}
+}
@@ -0,0 +1,112 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the PhotoCache and LruPhotoCache classes.
+ */
+public class PhotoCacheTest {
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLeastRecentlyUsedPhotoIsEvicted() {
+		PhotoCache cache = new LruPhotoCache(2);
+		Photo first = createSavedPhoto();
+		Photo second = createSavedPhoto();
+		Photo third = createSavedPhoto();
+
+		cache.put(first);
+		cache.put(second);
+		assertSame(first, cache.get(first.getId()));
+		cache.put(third);
+
+		assertEquals(2, cache.getSize());
+		assertTrue(cache.contains(first.getId()));
+		assertFalse(cache.contains(second.getId()));
+		assertEquals(1, cache.getNoEvictions());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testPutIfAbsentKeepsCachedPhoto() {
+		PhotoCache cache = new LruPhotoCache(2);
+		Photo cached = createSavedPhoto();
+		Photo reloaded = createSavedPhoto();
+		reloaded.id = cached.getId();
+
+		assertSame(cached, cache.putIfAbsent(cached));
+		assertSame(cached, cache.putIfAbsent(reloaded));
+		assertSame(cached, cache.get(cached.getId()));
+		assertEquals(1, cache.getSize());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDirtyPhotosArePinned() {
+		PhotoCache cache = new LruPhotoCache(1);
+		Photo dirty = new Photo();
+		Photo saved = createSavedPhoto();
+
+		cache.put(dirty);
+		cache.put(saved);
+		assertTrue(cache.contains(dirty.getId()));
+		assertFalse(cache.contains(saved.getId()));
+
+		Photo otherDirty = new Photo();
+		cache.put(otherDirty);
+		assertEquals(2, cache.getSize());
+
+		dirty.resetWriteCount();
+		cache.trim();
+		assertEquals(1, cache.getSize());
+		assertFalse(cache.contains(dirty.getId()));
+		assertTrue(cache.contains(otherDirty.getId()));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testStatistics() {
+		PhotoCache cache = new LruPhotoCache(10);
+		Photo photo = createSavedPhoto();
+		cache.put(photo);
+
+		assertSame(photo, cache.get(photo.getId()));
+		assertNull(cache.get(PhotoId.getNextId()));
+
+		assertEquals(1, cache.getNoHits());
+		assertEquals(1, cache.getNoMisses());
+		assertEquals(0, cache.getNoEvictions());
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxSize() {
+		new LruPhotoCache(0);
+	}
+
+	/**
+	 *
+	 */
+	protected Photo createSavedPhoto() {
+		Photo result = new Photo();
+		result.resetWriteCount();
+		return result;
+	}
+
+}
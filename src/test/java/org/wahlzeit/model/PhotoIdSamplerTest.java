@@ -0,0 +1,93 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link PhotoIdSampler}
+ */
+public class PhotoIdSamplerTest {
+
+	private PhotoIdSampler sampler = new PhotoIdSampler();
+
+	@Test
+	public void testRemoveKeepsOtherIds() {
+		PhotoId[] ids = new PhotoId[40];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = PhotoId.getNextId();
+			assertTrue(sampler.add(ids[i]));
+		}
+		assertFalse(sampler.add(ids[0]));
+
+		assertTrue(sampler.remove(ids[0]));
+		assertTrue(sampler.remove(ids[20]));
+		assertFalse(sampler.remove(ids[20]));
+
+		assertEquals(38, sampler.size());
+		assertFalse(sampler.contains(ids[0]));
+		assertTrue(sampler.contains(ids[39]));
+		assertTrue(sampler.asList().contains(ids[39]));
+		assertEquals(38, sampler.asList().size());
+	}
+
+	@Test
+	public void testSerializationRebuildsSlots() throws IOException, ClassNotFoundException {
+		PhotoId[] ids = new PhotoId[20];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = PhotoId.getNextId();
+			sampler.add(ids[i]);
+		}
+		sampler.remove(ids[5]);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(sampler);
+		}
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		PhotoIdSampler copy = (PhotoIdSampler) in.readObject();
+
+		assertEquals(sampler.asList(), copy.asList());
+		assertFalse(copy.contains(ids[5]));
+		assertTrue(copy.remove(ids[0]));
+		assertTrue(copy.add(ids[5]));
+		assertEquals(19, copy.size());
+	}
+
+	@Test
+	public void testRandomIdsAreUniform() {
+		Map<PhotoId, Integer> counts = new HashMap<PhotoId, Integer>();
+		for (int i = 0; i < 4; i++) {
+			PhotoId id = PhotoId.getNextId();
+			sampler.add(id);
+			counts.put(id, 0);
+		}
+
+		Random random = new Random(42);
+		for (int i = 0; i < 40000; i++) {
+			PhotoId id = sampler.getRandom(random);
+			counts.put(id, counts.get(id) + 1);
+		}
+
+		assertEquals(4, counts.size());
+		for (int count : counts.values()) {
+			assertEquals(10000, count, 500);
+		}
+	}
+
+	@Test
+	public void testEmptySamplerReturnsNullId() {
+		assertTrue(sampler.getRandom(new Random()).isNullId());
+	}
+}
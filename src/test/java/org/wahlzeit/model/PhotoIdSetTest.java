@@ -0,0 +1,69 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link PhotoIdSet}
+ */
+public class PhotoIdSetTest {
+
+	private PhotoIdSet set = new PhotoIdSet();
+
+	@Test
+	public void testAddContainsRemove() {
+		PhotoId first = PhotoId.getNextId();
+		PhotoId second = PhotoId.getNextId();
+
+		assertTrue(set.add(second));
+		assertTrue(set.add(first));
+		assertFalse(set.add(first));
+		assertEquals(2, set.size());
+		assertEquals(first, set.asList().get(0));
+
+		assertTrue(set.remove(first));
+		assertFalse(set.remove(first));
+		assertFalse(set.contains(first));
+		assertTrue(set.contains(second));
+
+		set.clear();
+		assertTrue(set.isEmpty());
+	}
+
+	@Test
+	public void testSerializedFormIsCompact() throws IOException, ClassNotFoundException {
+		List<PhotoId> ids = new ArrayList<PhotoId>();
+		for (int i = 0; i < 1000; i++) {
+			ids.add(PhotoId.getNextId());
+		}
+		set.addAll(ids);
+
+		byte[] compact = serialize(set);
+		byte[] plain = serialize(new ArrayList<PhotoId>(ids));
+		assertTrue(compact.length < 2000);
+		assertTrue(compact.length * 4 < plain.length);
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(compact));
+		PhotoIdSet copy = (PhotoIdSet) in.readObject();
+		assertEquals(ids, copy.asList());
+	}
+
+	private byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+}
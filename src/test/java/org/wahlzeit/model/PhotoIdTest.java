@@ -0,0 +1,88 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link PhotoId}.
+ */
+public class PhotoIdTest {
+
+	@Test
+	public void testStringCodec() {
+		assertEquals(60048, PhotoId.ID_START);
+		assertEquals("x1ac0", PhotoId.getFromInt(0));
+		assertEquals("x1ac1", PhotoId.getFromInt(1));
+		assertEquals("x1acz", PhotoId.getFromInt(35));
+		assertEquals("x1ad0", PhotoId.getFromInt(36));
+
+		for (int id : new int[] {1, 35, 36, 1000, 123456789, Integer.MAX_VALUE - PhotoId.ID_START}) {
+			assertEquals(id, PhotoId.getFromString(PhotoId.getFromInt(id)));
+		}
+	}
+
+	@Test
+	public void testInvalidStrings() {
+		assertEquals(0, PhotoId.getFromString(null));
+		assertEquals(0, PhotoId.getFromString(""));
+		assertEquals(0, PhotoId.getFromString("x"));
+		assertEquals(0, PhotoId.getFromString("x1abz"));
+		assertEquals(0, PhotoId.getFromString("x1AC1"));
+		assertEquals(0, PhotoId.getFromString("x1ac-"));
+		assertEquals(0, PhotoId.getFromString("xzzzzzzz"));
+		assertSame(PhotoId.NULL_ID, PhotoId.getIdFromString("x1ac?"));
+	}
+
+	@Test
+	public void testIdsAreInterned() {
+		PhotoId id = PhotoId.getNextId();
+		assertSame(id, PhotoId.getIdFromInt(id.asInt()));
+		assertSame(id, PhotoId.getIdFromString(id.asString()));
+		assertEquals(id.asInt(), PhotoId.getFromString(id.asString()));
+
+		assertSame(PhotoId.NULL_ID, PhotoId.getIdFromInt(0));
+		assertSame(PhotoId.NULL_ID, PhotoId.getIdFromInt(-1));
+		assertSame(PhotoId.NULL_ID, PhotoId.getIdFromInt(PhotoId.getCurrentIdAsInt() + 1));
+	}
+
+	@Test
+	public void testSegmentBoundaries() {
+		while (PhotoId.getCurrentIdAsInt() < 4 * PhotoId.FIRST_SEGMENT_SIZE) {
+			PhotoId.getNextId();
+		}
+
+		int[] ids = {1, 63, 64, 65, 191, 192, 193, 4 * PhotoId.FIRST_SEGMENT_SIZE};
+		for (int id : ids) {
+			PhotoId photoId = PhotoId.getIdFromInt(id);
+			assertEquals(id, photoId.asInt());
+			assertSame(photoId, PhotoId.getIdFromInt(id));
+		}
+	}
+
+	@Test
+	public void testConcurrentAllocation() throws InterruptedException {
+		Set<PhotoId> allocated = ConcurrentHashMap.newKeySet();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					PhotoId id = PhotoId.getNextId();
+					assertTrue(allocated.add(id));
+					assertSame(id, PhotoId.getIdFromString(id.asString()));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(4000, allocated.size());
+	}
+}
@@ -0,0 +1,295 @@
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.VoidWork;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TemporaryFolder;
+import org.wahlzeit.model.persistence.DatastoreAdapter;
+import org.wahlzeit.model.persistence.FileSystemImageStorage;
+import org.wahlzeit.model.persistence.ImageStorage;
+import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.OfyService;
+import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
+import org.wahlzeit.testEnvironmentProvider.RegisteredOfyEnvironmentProvider;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test cases for the PhotoManager class.
+ */
+public class PhotoManagerTest {
+
+	@ClassRule
+	public static RuleChain ruleChain = RuleChain.
+			outerRule(new LocalDatastoreServiceTestConfigProvider()).
+			around(new RegisteredOfyEnvironmentProvider());
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	/**
+	 *
+	 */
+	@Test
+	public void testUpdateTagsOnlyWritesDifference() {
+		ObjectifyService.run(new VoidWork() {
+			public void vrun() {
+				PhotoManager photoManager = new PhotoManager();
+				Photo photo = new Photo();
+
+				photo.setTags(new Tags("etna, fuji"));
+				photoManager.updateTags(photo);
+				assertEquals(asSet("tg:etna", "tg:fuji"), readTagTexts(photo));
+				Long fujiId = readTagId(photo, "tg:fuji");
+
+				photo.setTags(new Tags("fuji, merapi"));
+				photoManager.updateTags(photo);
+				assertEquals(asSet("tg:fuji", "tg:merapi"), readTagTexts(photo));
+				assertEquals(fujiId, readTagId(photo, "tg:fuji"));
+
+				// another manager has to pick up the persisted tags from the datastore
+				PhotoManager otherPhotoManager = new PhotoManager();
+				photo.setTags(new Tags("merapi"));
+				otherPhotoManager.updateTags(photo);
+				assertEquals(asSet("tg:merapi"), readTagTexts(photo));
+			}
+		});
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testEvictedPhotoIsReloaded() {
+		ObjectifyService.run(new VoidWork() {
+			public void vrun() {
+				ImageStorage.setInstance(new DatastoreAdapter());
+				PhotoManager photoManager = new PhotoManager();
+				photoManager.photoCache = new LruPhotoCache(1);
+				photoManager.photoCache.setEvictionListener(photoManager);
+				Photo photo = new Photo();
+				photo.setOwnerId("reloaded");
+				photoManager.doAddPhoto(photo);
+				photoManager.savePhoto(photo);
+				photoManager.getStoredImageSizes(photo.getId()).add(PhotoSize.THUMB);
+
+				photoManager.doAddPhoto(new Photo());
+				assertFalse(photoManager.photoCache.contains(photo.getId()));
+				assertFalse(photoManager.storedImageSizes.containsKey(photo.getId()));
+				assertTrue(photoManager.getPhotoIds().contains(photo.getId()));
+
+				Photo reloaded = photoManager.getPhotoFromId(photo.getId());
+				assertNotNull(reloaded);
+				assertEquals(photo.getId(), reloaded.getId());
+				assertEquals("reloaded", reloaded.getOwnerId());
+			}
+		});
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testStatusChangeUpdatesVisibility() {
+		PhotoManager photoManager = new PhotoManager();
+		Photo photo = new Photo();
+		photoManager.doAddPhoto(photo);
+		assertTrue(photoManager.getPhotoTagIndex().getVisiblePhotoIds().contains(photo.getId().asInt()));
+
+		photoManager.setPhotoStatus(photo, photo.getStatus().asDeleted(true));
+		assertFalse(photoManager.getPhotoTagIndex().getVisiblePhotoIds().contains(photo.getId().asInt()));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLegacyPhotosAreKeyedById() {
+		ObjectifyService.run(new VoidWork() {
+			public void vrun() {
+				Photo photo = new Photo();
+				photo.idLong = Long.MAX_VALUE;
+				OfyService.ofy().save().entity(photo).now();
+				assertNull(PhotoFactory.getInstance().loadPhoto(photo.getId()));
+
+				new PhotoManager().migratePhotoKeys();
+				OfyService.ofy().clear(); // forget the miss above
+
+				assertNotNull(PhotoFactory.getInstance().loadPhoto(photo.getId()));
+				assertNull(OfyService.ofy().load().type(Photo.class).parent(ObjectManager.applicationRootKey).
+						id(Long.MAX_VALUE).now());
+			}
+		});
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testLoadPhotosDoesNotCachePhotos() {
+		ObjectifyService.run(new VoidWork() {
+			public void vrun() {
+				Photo photo = new Photo();
+				photo.setTags(new Tags("stromboli"));
+				new PhotoManager().savePhoto(photo);
+
+				PhotoManager photoManager = new PhotoManager();
+				photoManager.loadPhotos();
+
+				assertTrue(photoManager.getPhotoIds().contains(photo.getId()));
+				assertEquals(0, photoManager.getPhotoCache().getSize());
+				assertTrue(photoManager.getPhotoTagIndex().getPhotoIdsWithAnyTag(asSet("tg:stromboli")).
+						contains(photo.getId().asInt()));
+			}
+		});
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testImagesAreLoadedLazily() {
+		ObjectifyService.run(new VoidWork() {
+			public void vrun() {
+				ImageStorage.setInstance(new DatastoreAdapter());
+				PhotoManager photoManager = new PhotoManager();
+				Photo photo = new Photo();
+				Image thumb = ImagesServiceFactory.makeImage(new byte[1024]);
+				try {
+					ImageStorage.getInstance().writeImage(thumb, photo.getIdAsString(), PhotoSize.THUMB.asInt());
+				} catch (IOException ex) {
+					fail(ex.getMessage());
+				}
+
+				photo.setImageLoader(photoManager);
+				assertNull(photo.getLoadedImage(PhotoSize.THUMB));
+				assertNotNull(photo.getImage(PhotoSize.THUMB));
+				assertNotNull(photo.getLoadedImage(PhotoSize.THUMB));
+				assertNull(photo.getImage(PhotoSize.LARGE));
+				assertTrue(photoManager.getStoredImageSizes(photo.getId()).contains(PhotoSize.THUMB));
+			}
+		});
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFailedImageLoadIsRetried() {
+		final AtomicInteger noLoads = new AtomicInteger();
+		final Image thumb = ImagesServiceFactory.makeImage(new byte[1024]);
+		Photo photo = new Photo();
+		photo.setImageLoader(new PhotoImageLoader() {
+			public Image loadImage(Photo photo, PhotoSize photoSize) throws IOException {
+				if (noLoads.incrementAndGet() == 1) {
+					throw new IOException("storage not available");
+				}
+				return (photoSize == PhotoSize.THUMB) ? thumb : null;
+			}
+		});
+
+		assertNull(photo.getImage(PhotoSize.THUMB));
+		assertEquals(thumb, photo.getImage(PhotoSize.THUMB));
+		assertNull(photo.getImage(PhotoSize.LARGE));
+		assertNull(photo.getImage(PhotoSize.LARGE));
+		assertEquals(3, noLoads.get());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testMissingImageIsCreatedOnce() throws Exception {
+		ImageStorage.setInstance(new FileSystemImageStorage(temporaryFolder.newFolder("images")));
+		final AtomicInteger noScalings = new AtomicInteger();
+		PhotoUtil.setImageScaler(new ImageScaler() {
+			public Image scale(Image source, int width, int height) {
+				noScalings.incrementAndGet();
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return ImagesServiceFactory.makeImage(new byte[width]);
+			}
+		});
+
+		try {
+			final PhotoManager photoManager = new PhotoManager();
+			final Photo photo = new Photo();
+			photo.setWidthAndHeight(700, 1000);
+			photo.setImage(PhotoSize.LARGE, ImagesServiceFactory.makeImage(new byte[1024]));
+
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			List<Future<Image>> results = new ArrayList<Future<Image>>();
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(() -> photoManager.getOrCreateImage(photo, PhotoSize.SMALL)));
+			}
+			for (Future<Image> result : results) {
+				assertEquals(280, result.get().getImageData().length);
+			}
+			executor.shutdown();
+
+			assertEquals(1, noScalings.get());
+			assertTrue(ImageStorage.getInstance().doesImageExist(photo.getIdAsString(), PhotoSize.SMALL.asInt()));
+			assertNull(photoManager.getOrCreateImage(photo, PhotoSize.EXTRA_LARGE));
+		} finally {
+			PhotoUtil.setImageScaler(null);
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected Set<String> readTagTexts(Photo photo) {
+		List<Tag> tags = OfyService.ofy().load().type(Tag.class).
+				filter(Tag.PHOTO_ID, photo.getId().asString()).list();
+		Set<String> result = new HashSet<String>();
+		for (Tag tag : tags) {
+			result.add(tag.getText());
+		}
+		assertEquals(result.size(), tags.size());
+		return result;
+	}
+
+	/**
+	 *
+	 */
+	protected Long readTagId(Photo photo, String text) {
+		Tag tag = OfyService.ofy().load().type(Tag.class).
+				filter(Tag.PHOTO_ID, photo.getId().asString()).filter(Tag.TEXT, text).first().now();
+		return (tag == null) ? null : tag.getId();
+	}
+
+	/**
+	 *
+	 */
+	protected Set<String> asSet(String... texts) {
+		Set<String> result = new HashSet<String>();
+		for (String text : texts) {
+			result.add(text);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link PhotoTagIndex}
+ */
+public class PhotoTagIndexTest {
+
+	private PhotoTagIndex index = new PhotoTagIndex();
+
+	@Test
+	public void testPhotosAreFoundByAnyTag() {
+		index.update(new PhotoId(10), asSet("un:alice", "tg:etna"), true);
+		index.update(new PhotoId(11), asSet("un:bob", "tg:fuji"), true);
+		index.update(new PhotoId(12), asSet("un:bob", "tg:etna"), true);
+
+		assertArrayEquals(new int[] {10, 12}, index.getPhotoIdsWithAnyTag(asSet("tg:etna")).toArray());
+		assertArrayEquals(new int[] {10, 11, 12}, index.getPhotoIdsWithAnyTag(asSet("un:alice", "un:bob")).toArray());
+		assertArrayEquals(new int[0], index.getPhotoIdsWithAnyTag(asSet("tg:merapi")).toArray());
+		assertArrayEquals(new int[] {10, 11, 12}, index.getAllPhotoIds().toArray());
+	}
+
+	@Test
+	public void testUpdateReplacesTags() {
+		index.update(new PhotoId(10), asSet("tg:etna", "tg:fuji"), true);
+		index.update(new PhotoId(10), asSet("tg:fuji", "tg:merapi"), true);
+
+		assertArrayEquals(new int[0], index.getPhotoIdsWithAnyTag(asSet("tg:etna")).toArray());
+		assertArrayEquals(new int[] {10}, index.getPhotoIdsWithAnyTag(asSet("tg:merapi")).toArray());
+		assertEquals(2, index.getNoTags());
+
+		index.remove(new PhotoId(10));
+		assertEquals(0, index.getNoTags());
+		assertEquals(0, index.getAllPhotoIds().getCardinality());
+	}
+
+	@Test
+	public void testVisibilityIsTracked() {
+		index.update(new PhotoId(10), asSet("tg:etna"), true);
+		index.update(new PhotoId(11), asSet("tg:etna"), false);
+		assertArrayEquals(new int[] {10}, index.getVisiblePhotoIds().toArray());
+
+		long version = index.getVersion();
+		index.setVisible(new PhotoId(11), true);
+		assertArrayEquals(new int[] {10, 11}, index.getVisiblePhotoIds().toArray());
+		assertEquals(version + 1, index.getVersion());
+
+		index.setVisible(new PhotoId(11), true);
+		index.setVisible(new PhotoId(12), true);
+		assertEquals(version + 1, index.getVersion());
+		assertArrayEquals(new int[] {10, 11}, index.getVisiblePhotoIds().toArray());
+	}
+
+	@Test
+	public void testRemoveChangesVersionOnce() {
+		index.update(new PhotoId(10), asSet("tg:etna"), true);
+		long version = index.getVersion();
+
+		index.remove(new PhotoId(10));
+		assertEquals(version + 1, index.getVersion());
+		assertEquals(0, index.getVisiblePhotoIds().getCardinality());
+
+		index.remove(new PhotoId(10));
+		assertEquals(version + 1, index.getVersion());
+	}
+
+	private Set<String> asSet(String... tags) {
+		return new HashSet<String>(Arrays.asList(tags));
+	}
+}
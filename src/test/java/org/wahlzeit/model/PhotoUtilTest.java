@@ -0,0 +1,88 @@
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import com.google.appengine.tools.development.testing.LocalImagesServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test class for {@link PhotoUtil}
+ */
+public class PhotoUtilTest {
+
+	private final LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalImagesServiceTestConfig());
+
+	@Before
+	public void setUp() {
+		helper.setUp();
+	}
+
+	@After
+	public void tearDown() {
+		helper.tearDown();
+	}
+
+	@Test
+	public void testRenditionsAreCreatedForApplicableSizes() throws Exception {
+		Image source = makeImage(700, 1000);
+
+		List<PhotoUtil.Rendition> renditions = PhotoUtil.createRenditions(source, 700, 1000,
+				EnumSet.allOf(PhotoSize.class));
+
+		Set<PhotoSize> sizes = EnumSet.noneOf(PhotoSize.class);
+		for (PhotoUtil.Rendition rendition : renditions) {
+			sizes.add(rendition.size);
+			assertEquals(rendition.size.calcAdjustedWidth(700, 1000), rendition.image.getWidth());
+			assertEquals(rendition.size.calcAdjustedHeight(700, 1000), rendition.image.getHeight());
+		}
+		assertEquals(EnumSet.range(PhotoSize.THUMB, PhotoSize.LARGE), sizes);
+
+		// the source is left untouched
+		assertEquals(700, source.getWidth());
+	}
+
+	@Test
+	public void testRenditionExecutorIsShared() throws Exception {
+		PhotoUtil.createRenditions(makeImage(700, 1000), 700, 1000, EnumSet.allOf(PhotoSize.class));
+		ExecutorService executor = PhotoUtil.getRenditionExecutor();
+		PhotoUtil.createRenditions(makeImage(700, 1000), 700, 1000, EnumSet.allOf(PhotoSize.class));
+
+		assertSame(executor, PhotoUtil.getRenditionExecutor());
+		assertFalse(executor.isShutdown());
+	}
+
+	@Test
+	public void testLargestSizeIsAlwaysCreated() throws Exception {
+		Photo photo = new Photo();
+		PhotoUtil.createImageFiles(makeImage(700, 1000), photo, EnumSet.of(PhotoSize.THUMB));
+
+		assertNotNull(photo.getLoadedImage(PhotoSize.THUMB));
+		assertNotNull(photo.getLoadedImage(PhotoSize.LARGE));
+		assertNull(photo.getLoadedImage(PhotoSize.MEDIUM));
+	}
+
+	private Image makeImage(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return ImagesServiceFactory.makeImage(out.toByteArray());
+	}
+}
@@ -0,0 +1,90 @@
+package org.wahlzeit.model;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test class for {@link RasterImageScaler}
+ */
+public class RasterImageScalerTest {
+
+	private RasterImageScaler scaler = new RasterImageScaler();
+
+	@Test
+	public void testScaledImageHasTargetSize() throws IOException {
+		BufferedImage scaled = decode(scaler.scale(makeImage(700, 1000, 0x336699), 105, 150));
+
+		assertEquals(105, scaled.getWidth());
+		assertEquals(150, scaled.getHeight());
+		assertEquals(0x336699, scaled.getRGB(52, 75) & 0xFFFFFF);
+	}
+
+	@Test
+	public void testPixelsAreAveraged() throws IOException {
+		BufferedImage source = new BufferedImage(4, 1, BufferedImage.TYPE_INT_RGB);
+		source.setRGB(0, 0, 4, 1, new int[] {0x000000, 0x0000F0, 0x00F000, 0x00F000}, 0, 4);
+
+		BufferedImage scaled = decode(scaler.scale(encode(source), 3, 1));
+
+		int[] pixels = scaled.getRGB(0, 0, 3, 1, null, 0, 3);
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] &= 0xFFFFFF;
+		}
+		assertArrayEquals(new int[] {0x00003C, 0x007878, 0x00F000}, pixels);
+	}
+
+	@Test
+	public void testRastersAreReused() throws IOException {
+		scaler.scale(makeImage(400, 400, 0), 100, 100);
+		int[] first = scaler.getRaster(0, 1);
+		scaler.scale(makeImage(300, 300, 0), 100, 100);
+
+		assertEquals(first, scaler.getRaster(0, 1));
+	}
+
+	@Test
+	public void testHugeRastersAreNotRetained() {
+		int[] retained = scaler.getRaster(1, 1);
+		int[] huge = scaler.getRaster(1, RasterImageScaler.MAX_RETAINED_RASTER_LENGTH + 1);
+
+		assertNotSame(huge, scaler.getRaster(1, RasterImageScaler.MAX_RETAINED_RASTER_LENGTH + 1));
+		assertSame(retained, scaler.getRaster(1, 1));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnknownFormatIsRejected() throws IOException {
+		scaler.scale(ImagesServiceFactory.makeImage(new byte[100]), 10, 10);
+	}
+
+	private Image makeImage(int width, int height, int rgb) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, rgb);
+			}
+		}
+		return encode(image);
+	}
+
+	private Image encode(BufferedImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return ImagesServiceFactory.makeImage(out.toByteArray());
+	}
+
+	private BufferedImage decode(Image image) throws IOException {
+		return ImageIO.read(new ByteArrayInputStream(image.getImageData()));
+	}
+}
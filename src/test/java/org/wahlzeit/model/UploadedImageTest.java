@@ -0,0 +1,55 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Test class for {@link UploadedImage}
+ */
+public class UploadedImageTest {
+
+	@Test
+	public void testSizeIsReadFromHeader() throws IOException {
+		byte[] imageData = makeImageData(300, 400);
+		UploadedImage uploadedImage = UploadedImage.createFrom(new ByteArrayInputStream(imageData));
+
+		assertEquals(300, uploadedImage.getWidth());
+		assertEquals(400, uploadedImage.getHeight());
+		assertEquals(imageData.length, uploadedImage.getLength());
+		assertEquals("png", uploadedImage.getFormatName().toLowerCase());
+		assertArrayEquals(imageData, uploadedImage.asImage().getImageData());
+
+		uploadedImage.delete();
+		assertFalse(uploadedImage.file.exists());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooSmallImageIsRejected() throws IOException {
+		UploadedImage.createFrom(new ByteArrayInputStream(makeImageData(50, 50)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTooLongUploadIsRejected() throws IOException {
+		UploadedImage.createFrom(new ByteArrayInputStream(makeImageData(300, 400)), 100);
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnknownFormatIsRejected() throws IOException {
+		UploadedImage.createFrom(new ByteArrayInputStream(new byte[1000]));
+	}
+
+	private byte[] makeImageData(int width, int height) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+		return out.toByteArray();
+	}
+}
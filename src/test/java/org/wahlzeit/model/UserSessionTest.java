@@ -0,0 +1,93 @@
+package org.wahlzeit.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpSession;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link UserSession}
+ */
+public class UserSessionTest {
+
+	private static final String SESSION_NAME = "session";
+
+	private static final Logger logger = Logger.getLogger(UserSession.class.getName());
+
+	private HttpSession httpSession;
+	private UserSession userSession;
+	private Level level;
+
+	@Before
+	public void setUp() {
+		httpSession = mock(HttpSession.class);
+		when(httpSession.getAttribute(UserSession.INITIALIZED)).thenReturn(UserSession.INITIALIZED);
+		when(httpSession.getAttribute(UserSession.NAME)).thenReturn(SESSION_NAME);
+		userSession = new UserSession(SESSION_NAME, "", httpSession, "en");
+		level = logger.getLevel();
+		logger.setLevel(Level.CONFIG);
+	}
+
+	@After
+	public void tearDown() {
+		logger.setLevel(level);
+	}
+
+	@Test
+	public void testUnchangedSessionIsNotWritten() {
+		assertFalse(userSession.hasChangedAttributes());
+		assertEquals(0, userSession.writeBack());
+		verify(httpSession, never()).setAttribute(anyString(), any());
+	}
+
+	@Test
+	public void testChangedAttributesAreWrittenOnce() {
+		userSession.setMessage("first");
+		userSession.setMessage("second");
+		userSession.addProcessingTime(10);
+		userSession.addProcessingTime(20);
+		assertEquals("<p>second</p>", userSession.getMessage());
+		verify(httpSession, never()).setAttribute(anyString(), any());
+
+		long noWrittenBytes = UserSession.getNoWrittenBytes();
+		long noBytes = userSession.writeBack();
+		assertTrue(noBytes > 0);
+		assertEquals(noWrittenBytes + noBytes, UserSession.getNoWrittenBytes());
+		verify(httpSession, times(1)).setAttribute(UserSession.MESSAGE, "<p>second</p>");
+		verify(httpSession, times(1)).setAttribute(UserSession.PROCESSING_TIME, 30L);
+
+		assertEquals(0, userSession.writeBack());
+	}
+
+	@Test
+	public void testSizeIsNotMeasuredUnlessLogged() {
+		logger.setLevel(Level.INFO);
+		userSession.setMessage("message");
+
+		long noWrittenBytes = UserSession.getNoWrittenBytes();
+		assertEquals(0, userSession.writeBack());
+		assertEquals(noWrittenBytes, UserSession.getNoWrittenBytes());
+		verify(httpSession, times(1)).setAttribute(UserSession.MESSAGE, "<p>message</p>");
+	}
+
+	@Test
+	public void testEqualValueDoesNotChangeAttribute() {
+		when(httpSession.getAttribute(UserSession.HEADING)).thenReturn("heading");
+		userSession.setHeading("heading");
+		assertFalse(userSession.hasChangedAttributes());
+	}
+}
@@ -5,11 +5,20 @@ import com.google.appengine.api.images.ImagesServiceFactory;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.wahlzeit.model.PhotoSize;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
-
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -128,4 +137,70 @@ public abstract class AbstractAdapterTest {
 		exists = imageStorage.doesImageExist("wrong file name", 1);
 		assert !exists;
 	}
+
+	@Test
+	public void testExistingImageSizes() {
+		assertTrue(imageStorage.getExistingImageSizes("allSizes").isEmpty());
+
+		try {
+			imageStorage.writeImage(smallTestImage, "allSizes", 0);
+			imageStorage.writeImage(smallTestImage, "allSizes", 3);
+		} catch (IOException e) {
+			fail("IOException should not be thrown!");
+		}
+
+		assertEquals(EnumSet.of(PhotoSize.THUMB, PhotoSize.MEDIUM), imageStorage.getExistingImageSizes("allSizes"));
+	}
+
+	@Test
+	public void testImageRangeAndMetadata() throws IOException {
+		byte[] imageData = new byte[1000];
+		imageData[0] = (byte) 0x89;
+		imageData[1] = 'P';
+		imageData[2] = 'N';
+		imageData[3] = 'G';
+		for (int i = 4; i < imageData.length; i++) {
+			imageData[i] = (byte) i;
+		}
+		imageStorage.writeImage(ImagesServiceFactory.makeImage(imageData), "ranged", 2);
+
+		ImageMetadata metadata = imageStorage.getImageMetadata("ranged", 2);
+		assertEquals(1000, metadata.getLength());
+		assertEquals(ImageMetadata.PNG, metadata.getContentType());
+		assertNull(imageStorage.getImageMetadata("ranged", 3));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(imageStorage.streamImage("ranged", 2, out, 100, 50));
+		assertArrayEquals(Arrays.copyOfRange(imageData, 100, 150), out.toByteArray());
+
+		out.reset();
+		assertTrue(imageStorage.streamImage("ranged", 2, out, 990, 100));
+		assertArrayEquals(Arrays.copyOfRange(imageData, 990, 1000), out.toByteArray());
+	}
+
+	@Test
+	public void testRangeIsSelectedFromMetadata() throws IOException {
+		imageStorage.writeImage(maxSizeTestImage, "selected", 1);
+		final ImageMetadata[] selectedMetadata = new ImageMetadata[1];
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(imageStorage.streamImage("selected", 1, out, metadata -> {
+			selectedMetadata[0] = metadata;
+			return new ImageRange(metadata.getLength() - 10, 10);
+		}));
+		assertEquals(maxSizeTestImage.getImageData().length, selectedMetadata[0].getLength());
+		byte[] imageData = maxSizeTestImage.getImageData();
+		assertArrayEquals(Arrays.copyOfRange(imageData, imageData.length - 10, imageData.length), out.toByteArray());
+
+		out.reset();
+		assertTrue(imageStorage.streamImage("selected", 1, out, metadata -> null));
+		assertEquals(0, out.size());
+
+		selectedMetadata[0] = null;
+		assertFalse(imageStorage.streamImage("selected", 2, out, metadata -> {
+			selectedMetadata[0] = metadata;
+			return null;
+		}));
+		assertNull(selectedMetadata[0]);
+	}
 }
@@ -5,7 +5,9 @@ import org.junit.runner.*;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
-	org.wahlzeit.model.persistence.DatastoreAdapterTest.class
+	org.wahlzeit.model.persistence.CachingImageStorageTest.class,
+	org.wahlzeit.model.persistence.DatastoreAdapterTest.class,
+	org.wahlzeit.model.persistence.FileSystemImageStorageTest.class
 })
 
 public class AllModelPersistenceTests { /* do nothing */ }
@@ -0,0 +1,138 @@
+package org.wahlzeit.model.persistence;
+
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.wahlzeit.model.PhotoSize;
+import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
+import org.wahlzeit.testEnvironmentProvider.RegisteredOfyEnvironmentProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link CachingImageStorage}
+ */
+public class CachingImageStorageTest extends AbstractAdapterTest {
+
+	@ClassRule
+	public static TestRule chain = RuleChain.
+			outerRule(new LocalDatastoreServiceTestConfigProvider()).
+			around(new RegisteredOfyEnvironmentProvider());
+
+	private static final long[] SMALL_BUDGETS = {2048, 1024, 1024, 1024, 1024, 1024};
+
+	private CachingImageStorage cachingStorage;
+
+
+	@Override
+	protected void storageDependentSetUp() {
+		cachingStorage = new CachingImageStorage(new DatastoreAdapter(), SMALL_BUDGETS, false);
+		imageStorage = cachingStorage;
+	}
+
+
+	@Test
+	public void testRepeatedReadIsHit() throws IOException {
+		imageStorage.writeImage(smallTestImage, "cached", 0);
+
+		Image first = (Image) imageStorage.readImage("cached", 0);
+		Image second = (Image) imageStorage.readImage("cached", 0);
+
+		assertArrayEquals(first.getImageData(), second.getImageData());
+		assertEquals(1, cachingStorage.getNoMisses(PhotoSize.THUMB));
+		assertEquals(1, cachingStorage.getNoHits(PhotoSize.THUMB));
+		assertEquals(0.5, cachingStorage.getHitRate(), 0.0);
+	}
+
+	@Test
+	public void testSizesAreBudgetedSeparately() throws IOException {
+		imageStorage.writeImage(makeImage(1000), "first", 0);
+		imageStorage.writeImage(makeImage(1000), "second", 0);
+		imageStorage.writeImage(makeImage(1000), "large", 1);
+		imageStorage.readImage("first", 0);
+		imageStorage.readImage("second", 0);
+		imageStorage.readImage("large", 1);
+
+		assertEquals(2000, cachingStorage.getWeight(PhotoSize.THUMB));
+		assertEquals(1000, cachingStorage.getWeight(PhotoSize.EXTRA_SMALL));
+
+		imageStorage.writeImage(makeImage(1000), "third", 0);
+		imageStorage.readImage("third", 0);
+		assertEquals(2000, cachingStorage.getWeight(PhotoSize.THUMB));
+		assertEquals(1, cachingStorage.getNoEvictions(PhotoSize.THUMB));
+		assertEquals(0, cachingStorage.getNoEvictions(PhotoSize.EXTRA_SMALL));
+	}
+
+	@Test
+	public void testWriteInvalidatesCachedImage() throws IOException {
+		imageStorage.writeImage(makeImage(100), "rewritten", 0);
+		imageStorage.readImage("rewritten", 0);
+		imageStorage.writeImage(makeImage(200), "rewritten", 0);
+
+		Image image = (Image) imageStorage.readImage("rewritten", 0);
+		assertEquals(200, image.getImageData().length);
+	}
+
+	@Test
+	public void testOffHeapStorage() throws IOException {
+		cachingStorage = new CachingImageStorage(new DatastoreAdapter(), SMALL_BUDGETS, true);
+		cachingStorage.writeImage(makeImage(100), "offheap", 0);
+		cachingStorage.readImage("offheap", 0);
+
+		Image image = (Image) cachingStorage.readImage("offheap", 0);
+		assertEquals(100, image.getImageData().length);
+		assertEquals(1, cachingStorage.getNoHits(PhotoSize.THUMB));
+		assertTrue(cachingStorage.doesImageExist("offheap", 0));
+		assertNull(cachingStorage.readImage("offheap", 1));
+	}
+
+	@Test
+	public void testStreamedImageIsCached() throws IOException {
+		imageStorage.writeImage(makeImage(500), "streamed", 0);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(imageStorage.streamImage("streamed", 0, out));
+		assertEquals(500, out.size());
+		assertEquals(500, cachingStorage.getWeight(PhotoSize.THUMB));
+
+		out.reset();
+		assertTrue(imageStorage.streamImage("streamed", 0, out));
+		assertEquals(500, out.size());
+		assertEquals(1, cachingStorage.getNoHits(PhotoSize.THUMB));
+	}
+
+	@Test
+	public void testOffHeapImageIsStreamed() throws IOException {
+		cachingStorage = new CachingImageStorage(new DatastoreAdapter(), SMALL_BUDGETS, true);
+		byte[] imageData = new byte[300];
+		for (int i = 0; i < imageData.length; i++) {
+			imageData[i] = (byte) i;
+		}
+		cachingStorage.writeImage(ImagesServiceFactory.makeImage(imageData), "offheap", 0);
+		cachingStorage.readImage("offheap", 0);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(cachingStorage.streamImage("offheap", 0, out, 10, 20));
+		assertEquals(1, cachingStorage.getNoHits(PhotoSize.THUMB));
+		assertEquals(20, out.size());
+		assertEquals(10, out.toByteArray()[0]);
+
+		out.reset();
+		assertTrue(cachingStorage.streamImage("offheap", 0, out));
+		assertEquals(300, out.size());
+		assertEquals((byte) 299, out.toByteArray()[299]);
+	}
+
+	private Image makeImage(int length) {
+		return ImagesServiceFactory.makeImage(new byte[length]);
+	}
+}
@@ -2,16 +2,28 @@ package org.wahlzeit.model.persistence;
 
 import com.google.appengine.api.images.Image;
 import com.google.appengine.api.images.ImagesServiceFactory;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.VoidWork;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.RuleChain;
 import org.junit.rules.TestRule;
+import org.wahlzeit.model.PhotoSize;
+import org.wahlzeit.model.persistence.DatastoreAdapter.ImageWrapper;
+import org.wahlzeit.services.OfyService;
 import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
 import org.wahlzeit.testEnvironmentProvider.RegisteredOfyEnvironmentProvider;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumSet;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -26,24 +38,80 @@ public class DatastoreAdapterTest extends AbstractAdapterTest {
 			outerRule(new LocalDatastoreServiceTestConfigProvider()).
 			around(new RegisteredOfyEnvironmentProvider());
 
-	private Image tooLargeTestImage;
+	private Image largeTestImage;
 
 
 	@Override
 	protected void storageDependentSetUp() {
 		imageStorage = new DatastoreAdapter();
 
-		ByteBuffer bb = ByteBuffer.allocate(1024 * 1025);
-		tooLargeTestImage = ImagesServiceFactory.makeImage(bb.array());
+		ByteBuffer bb = ByteBuffer.allocate(1024 * 2500);
+		largeTestImage = ImagesServiceFactory.makeImage(bb.array());
 	}
 
 
-	@Test(expected = ArrayIndexOutOfBoundsException.class)
-	public void testUpperSizeLimit() {
-		try {
-			imageStorage.writeImage(tooLargeTestImage, "blub", 1);
-		} catch (IOException e) {
-			fail("IOException should not be thrown!");
+	@Test
+	public void testLargeImagesAreChunked() throws IOException {
+		imageStorage.writeImage(largeTestImage, "blub", 1);
+
+		Image image = (Image) imageStorage.readImage("blub", 1);
+		assertArrayEquals(largeTestImage.getImageData(), image.getImageData());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(imageStorage.streamImage("blub", 1, out));
+		assertArrayEquals(largeTestImage.getImageData(), out.toByteArray());
+
+		// rewriting with a smaller image drops the chunks
+		imageStorage.writeImage(smallTestImage, "blub", 1);
+		image = (Image) imageStorage.readImage("blub", 1);
+		assertEquals(smallTestImage.getImageData().length, image.getImageData().length);
+	}
+
+	@Test
+	public void testRangeAcrossChunksIsStreamed() throws IOException {
+		byte[] imageData = largeTestImage.getImageData();
+		for (int i = 0; i < imageData.length; i++) {
+			imageData[i] = (byte) (i * 31);
 		}
+		imageStorage.writeImage(ImagesServiceFactory.makeImage(imageData), "ranged", 1);
+
+		int offset = ImageWrapper.CHUNK_SIZE - 10;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(imageStorage.streamImage("ranged", 1, out, offset, 20));
+		assertArrayEquals(Arrays.copyOfRange(imageData, offset, offset + 20), out.toByteArray());
+		assertEquals(imageData.length, imageStorage.getImageMetadata("ranged", 1).getLength());
+	}
+
+	@Test(expected = IOException.class)
+	public void testIncompleteChunksAreDetected() throws IOException {
+		imageStorage.writeImage(largeTestImage, "incomplete", 1);
+		final ImageWrapper imageWrapper = ((DatastoreAdapter) imageStorage).loadImageWrapper("incomplete", 1);
+		ObjectifyService.run(new VoidWork() {
+			@Override
+			public void vrun() {
+				OfyService.ofy().delete().key(imageWrapper.getChunkKeys().get(1)).now();
+			}
+		});
+
+		imageStorage.readImage("incomplete", 1);
+	}
+
+	@Test
+	public void testMissingImageIsNotStreamed() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertFalse(imageStorage.streamImage("missing", 1, out));
+		assertEquals(0, out.size());
+	}
+
+	@Test
+	public void testExistenceIsCheckedWithoutCache() throws IOException {
+		imageStorage.writeImage(smallTestImage, "keysOnly", 2);
+		imageStorage.writeImage(smallTestImage, "keysOnly", 5);
+
+		ImageStorage otherStorage = new DatastoreAdapter();
+		assertTrue(otherStorage.doesImageExist("keysOnly", 2));
+		assertFalse(otherStorage.doesImageExist("keysOnly", 1));
+		assertEquals(EnumSet.of(PhotoSize.SMALL, PhotoSize.EXTRA_LARGE),
+				new DatastoreAdapter().getExistingImageSizes("keysOnly"));
 	}
 }
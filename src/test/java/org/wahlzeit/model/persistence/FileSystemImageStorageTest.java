@@ -0,0 +1,87 @@
+package org.wahlzeit.model.persistence;
+
+import com.google.appengine.api.images.Image;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link FileSystemImageStorage}
+ */
+public class FileSystemImageStorageTest extends AbstractAdapterTest {
+
+	@Rule
+	public TemporaryFolder photosDir = new TemporaryFolder();
+
+
+	@Override
+	protected void storageDependentSetUp() {
+		try {
+			imageStorage = new FileSystemImageStorage(photosDir.getRoot());
+		} catch (IOException e) {
+			fail("IOException should not be thrown!");
+		}
+	}
+
+
+	@Test
+	public void testIndexIsRebuiltFromDisk() throws IOException {
+		imageStorage.writeImage(maxSizeTestImage, "persisted", 4);
+
+		ImageStorage otherStorage = new FileSystemImageStorage(photosDir.getRoot());
+		assertTrue(otherStorage.doesImageExist("persisted", 4));
+		assertFalse(otherStorage.doesImageExist("persisted", 3));
+
+		Image image = (Image) otherStorage.readImage("persisted", 4);
+		assertArrayEquals(maxSizeTestImage.getImageData(), image.getImageData());
+	}
+
+	@Test
+	public void testImagesAreStreamed() throws IOException {
+		imageStorage.writeImage(smallTestImage, "streamed", 0);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(imageStorage.streamImage("streamed", 0, out));
+		assertArrayEquals(smallTestImage.getImageData(), out.toByteArray());
+		assertFalse(imageStorage.streamImage("streamed", 1, out));
+	}
+
+	@Test
+	public void testMetadataIsRead() throws IOException {
+		imageStorage.writeImage(smallTestImage, "described", 0);
+
+		ImageMetadata metadata = imageStorage.getImageMetadata("described", 0);
+		assertEquals(smallTestImage.getImageData().length, metadata.getLength());
+		assertEquals(ImageMetadata.getContentTypeOf(smallTestImage.getImageData()), metadata.getContentType());
+		assertNull(imageStorage.getImageMetadata("described", 1));
+	}
+
+	@Test
+	public void testTemporaryFilesAreRemoved() throws IOException {
+		imageStorage.writeImage(smallTestImage, "renamed", 0);
+		imageStorage.writeImage(smallTestImage, "renamed", 0);
+
+		File[] shardDirs = photosDir.getRoot().listFiles();
+		assertEquals(1, shardDirs.length);
+		String[] fileNames = shardDirs[0].list();
+		assertEquals(1, fileNames.length);
+		assertEquals("renamed-0" + FileSystemImageStorage.IMAGE_FILE_ENDING, fileNames[0]);
+
+		File leftOver = new File(shardDirs[0], "renamed-1.img42" + FileSystemImageStorage.TEMP_FILE_ENDING);
+		Files.write(leftOver.toPath(), new byte[10]);
+		new FileSystemImageStorage(photosDir.getRoot());
+		assertFalse(leftOver.exists());
+	}
+}
@@ -6,7 +6,10 @@ import org.junit.runner.*;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	org.wahlzeit.services.EmailAddressTest.class,
+	org.wahlzeit.services.LazyLoggerTest.class,
 	org.wahlzeit.services.LogBuilderTest.class,
+	org.wahlzeit.services.WriteBehindQueueTest.class,
+	org.wahlzeit.services.logging.AllServicesLoggingTests.class,
 	org.wahlzeit.services.mailing.AllServicesMailingTests.class
 })
 
@@ -0,0 +1,127 @@
+package org.wahlzeit.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
+import org.wahlzeit.testEnvironmentProvider.RegisteredOfyEnvironmentProvider;
+import org.wahlzeit.testEnvironmentProvider.SysConfigProvider;
+import org.wahlzeit.testEnvironmentProvider.UserServiceProvider;
+import org.wahlzeit.testEnvironmentProvider.UserSessionProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link LazyLogger}.
+ */
+public class LazyLoggerTest {
+
+	@ClassRule
+	public static RuleChain ruleChain = RuleChain.
+			outerRule(new LocalDatastoreServiceTestConfigProvider()).
+			around(new RegisteredOfyEnvironmentProvider()).
+			around(new SysConfigProvider()).
+			around(new UserServiceProvider()).
+			around(new UserSessionProvider());
+
+	private LazyLogger log;
+	private List<String> messages;
+	private Handler handler;
+
+	@Before
+	public void setUp() {
+		log = LazyLogger.getLogger(LazyLoggerTest.class);
+		log.getLogger().setLevel(Level.INFO);
+		log.getLogger().setUseParentHandlers(false);
+
+		messages = new ArrayList<String>();
+		handler = new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				messages.add(record.getMessage());
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		log.getLogger().addHandler(handler);
+	}
+
+	@After
+	public void tearDown() {
+		log.getLogger().removeHandler(handler);
+		log.getLogger().setUseParentHandlers(true);
+		log.getLogger().setLevel(null);
+	}
+
+	@Test
+	public void testDisabledMessageIsNotBuilt() {
+		boolean[] isBuilt = {false};
+		log.config(lb -> isBuilt[0] = true);
+		log.log(Level.FINE, () -> {
+			isBuilt[0] = true;
+			return "fine";
+		});
+
+		assertFalse(isBuilt[0]);
+		assertTrue(messages.isEmpty());
+	}
+
+	@Test
+	public void testMessageEqualsLogBuilderMessage() {
+		log.info(lb -> lb.addMessage("Yoda").addParameter("age", 900));
+		log.userInfo(lb -> lb.addAction("Build your own lightsaber"));
+
+		assertEquals(2, messages.size());
+		assertEquals(LogBuilder.createSystemMessage().addMessage("Yoda").addParameter("age", 900).toString(),
+				messages.get(0));
+		assertEquals(LogBuilder.createUserMessage().addAction("Build your own lightsaber").toString(),
+				messages.get(1));
+	}
+
+	@Test
+	public void testSessionPrefixIsCached() {
+		Session session = SessionManager.getThreadLocalSession();
+		log.info(lb -> lb.addMessage("first"));
+		assertNotNull(session.getLogClientName(session.getClientId()));
+
+		session.setLogClientName(session.getClientId(), "cached");
+		log.info(lb -> lb.addMessage("second"));
+		assertTrue(messages.get(1).endsWith(LogBuilder.CLIENT + LogBuilder.NAME_VALUE_SEPARATOR + "cached" +
+				LogBuilder.INFO_SEPARATOR + "second"));
+
+		session.setLogClientName(null, null);
+	}
+
+	@Test
+	public void testNestedMessage() {
+		Object nested = new Object() {
+			@Override
+			public String toString() {
+				log.info(lb -> lb.addMessage("inner"));
+				return "outer value";
+			}
+		};
+		log.info(lb -> lb.addParameter("outer", nested));
+
+		assertEquals(2, messages.size());
+		assertTrue(messages.get(0).endsWith(LogBuilder.INFO_SEPARATOR + "inner"));
+		assertTrue(messages.get(1).endsWith("outer" + LogBuilder.NAME_VALUE_SEPARATOR + "outer value"));
+	}
+}
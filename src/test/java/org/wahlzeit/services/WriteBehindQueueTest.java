@@ -0,0 +1,223 @@
+package org.wahlzeit.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the WriteBehindQueue class.
+ */
+public class WriteBehindQueueTest {
+
+	private RecordingObjectManager manager;
+
+	@Before
+	public void initManager() {
+		manager = new RecordingObjectManager();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testObjectsAreCoalesced() {
+		WriteBehindQueue queue = new WriteBehindQueue(10, 60000, 100);
+		TestObject object = new TestObject();
+
+		queue.enqueue(manager, object);
+		queue.enqueue(manager, object);
+
+		assertEquals(1, queue.getSize());
+		assertEquals(1, queue.getNoQueuedWrites());
+		assertTrue(manager.batches.isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFlushOnBatchSize() {
+		WriteBehindQueue queue = new WriteBehindQueue(3, 60000, 100);
+		for (int i = 0; i < 3; i++) {
+			queue.enqueue(manager, new TestObject());
+		}
+
+		assertEquals(0, queue.getSize());
+		assertEquals(1, manager.batches.size());
+		assertEquals(3, manager.batches.get(0).size());
+		assertEquals(3, queue.getNoFlushedWrites());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFlushIfDue() {
+		WriteBehindQueue queue = new WriteBehindQueue(10, 0, 100);
+		queue.enqueue(manager, new TestObject());
+		queue.flushIfDue();
+
+		assertEquals(0, queue.getSize());
+		assertEquals(1, queue.getNoFlushes());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFailedWritesAreCounted() {
+		WriteBehindQueue queue = new WriteBehindQueue(10, 60000, 100);
+		manager.isToFail = true;
+		TestObject object = new TestObject();
+		queue.enqueue(manager, object);
+		queue.flush();
+
+		assertEquals(1, queue.getNoFailedWrites());
+		assertEquals(0, queue.getNoFlushedWrites());
+		assertTrue(object.isDirty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFailedWritesAreRetried() {
+		WriteBehindQueue queue = new WriteBehindQueue(10, 60000, 100);
+		manager.isToFail = true;
+		TestObject object = new TestObject();
+		queue.enqueue(manager, object);
+		queue.flush();
+		assertEquals(1, queue.getSize());
+
+		manager.isToFail = false;
+		queue.flush();
+
+		assertEquals(0, queue.getSize());
+		assertEquals(1, queue.getNoFlushedWrites());
+		assertFalse(object.isDirty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFailedWritesAreDroppedAfterMaxAttempts() {
+		WriteBehindQueue queue = new WriteBehindQueue(10, 60000, 100);
+		manager.isToFail = true;
+		queue.enqueue(manager, new TestObject());
+		for (int i = 0; i < WriteBehindQueue.MAX_WRITE_ATTEMPTS; i++) {
+			queue.flush();
+		}
+
+		assertEquals(WriteBehindQueue.MAX_WRITE_ATTEMPTS, queue.getNoFailedWrites());
+		assertEquals(0, queue.getSize());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testFlushIfEnqueuedByCurrentThread() {
+		WriteBehindQueue queue = new WriteBehindQueue(10, 60000, 100);
+		queue.flushIfEnqueuedByCurrentThread();
+		assertEquals(0, queue.getNoFlushes());
+
+		queue.enqueue(manager, new TestObject());
+		queue.flushIfEnqueuedByCurrentThread();
+
+		assertEquals(0, queue.getSize());
+		assertEquals(1, manager.batches.size());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testDependentsQueuedWhileFlushingAreWritten() {
+		WriteBehindQueue queue = new WriteBehindQueue(10, 60000, 100);
+		manager.queue = queue;
+		queue.enqueue(manager, new TestObject());
+		queue.flush();
+
+		assertEquals(2, manager.batches.size());
+		assertEquals(0, queue.getSize());
+		assertFalse(manager.dependent.isDirty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testObjectChangedWhileWritingIsWrittenAgain() {
+		WriteBehindQueue queue = new WriteBehindQueue(10, 60000, 100);
+		ObjectManager.enableWriteBehind(queue);
+		try {
+			TestObject object = new TestObject();
+			manager.isToChangeWhileWriting = true;
+			queue.enqueue(manager, object);
+			queue.flush();
+
+			assertEquals(2, manager.batches.size());
+			assertFalse(object.isDirty());
+		} finally {
+			ObjectManager.disableWriteBehind();
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidConfiguration() {
+		new WriteBehindQueue(10, 60000, 5);
+	}
+
+	/**
+	 *
+	 */
+	protected static class TestObject extends DataObject {
+		public TestObject() {
+			incWriteCount();
+		}
+	}
+
+	/**
+	 *
+	 */
+	protected static class RecordingObjectManager extends ObjectManager {
+
+		protected List<List<Persistent>> batches = new ArrayList<List<Persistent>>();
+		protected boolean isToFail = false;
+		protected boolean isToChangeWhileWriting = false;
+		protected WriteBehindQueue queue = null;
+		protected TestObject dependent = null;
+
+		@Override
+		protected void writeObjectsNow(List<? extends Persistent> objects) {
+			if (isToFail) {
+				throw new IllegalStateException("datastore not available");
+			}
+
+			batches.add(new ArrayList<Persistent>(objects));
+			for (Persistent object : objects) {
+				int writeCount = object.getWriteCount();
+				if (isToChangeWhileWriting) {
+					isToChangeWhileWriting = false;
+					object.incWriteCount();
+				}
+				markWritten(object, writeCount);
+				if (queue != null && dependent == null) {
+					dependent = new TestObject();
+					queue.enqueue(this, dependent);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,12 @@
+package org.wahlzeit.services.logging;
+
+import org.junit.runners.*;
+import org.junit.runner.*;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+	org.wahlzeit.services.logging.AsyncLogHandlerTest.class,
+	org.wahlzeit.services.logging.JsonLinesFileAppenderTest.class
+})
+
+public class AllServicesLoggingTests { /* do nothing */ }
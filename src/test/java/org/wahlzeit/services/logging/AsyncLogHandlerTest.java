@@ -0,0 +1,167 @@
+package org.wahlzeit.services.logging;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link AsyncLogHandler}.
+ */
+public class AsyncLogHandlerTest {
+
+	private AsyncLogHandler handler;
+
+	@After
+	public void tearDown() {
+		if (handler != null) {
+			handler.close();
+		}
+	}
+
+	@Test
+	public void testRecordsAreAppendedInOrder() {
+		CollectingAppender appender = new CollectingAppender();
+		handler = new AsyncLogHandler(appender, 16);
+
+		for (int i = 0; i < 100; i++) {
+			handler.publish(new LogRecord(Level.INFO, "record " + i));
+			if (i % 10 == 0) {
+				handler.flush();
+			}
+		}
+		handler.flush();
+
+		assertEquals(100, appender.messages.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals("record " + i, appender.messages.get(i));
+		}
+		assertTrue(appender.noFlushes > 0);
+	}
+
+	@Test
+	public void testCapacityIsRoundedUp() {
+		handler = new AsyncLogHandler(new CollectingAppender(), 5);
+		assertEquals(8, handler.getCapacity());
+	}
+
+	@Test
+	public void testRecordsAreDroppedWhenFull() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		CollectingAppender appender = new CollectingAppender(latch);
+		handler = new AsyncLogHandler(appender, 4);
+
+		handler.publish(new LogRecord(Level.INFO, "blocking"));
+		while (handler.getNoWrittenRecords() == 0) {
+			Thread.sleep(1);
+		}
+
+		for (int i = 0; i < 6; i++) {
+			handler.publish(new LogRecord(Level.INFO, "queued " + i));
+		}
+		assertEquals(2, handler.getNoDroppedRecords());
+		assertEquals(4, handler.getNoPendingRecords());
+
+		latch.countDown();
+		handler.flush();
+		assertEquals(5, appender.messages.size());
+		assertEquals("queued 3", appender.messages.get(4));
+	}
+
+	@Test
+	public void testConcurrentPublishing() throws InterruptedException {
+		CollectingAppender appender = new CollectingAppender();
+		handler = new AsyncLogHandler(appender, 8192);
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					handler.publish(new LogRecord(Level.INFO, "concurrent"));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		handler.flush();
+
+		assertEquals(4000, appender.messages.size());
+		assertEquals(0, handler.getNoDroppedRecords());
+	}
+
+	@Test
+	public void testCloseWritesPendingRecords() {
+		CollectingAppender appender = new CollectingAppender();
+		handler = new AsyncLogHandler(appender, 64);
+		for (int i = 0; i < 50; i++) {
+			handler.publish(new LogRecord(Level.INFO, "pending"));
+		}
+		handler.close();
+
+		assertEquals(50, appender.messages.size());
+		assertTrue(appender.isClosed);
+
+		handler.publish(new LogRecord(Level.INFO, "ignored"));
+		assertEquals(50, appender.messages.size());
+		handler = null;
+	}
+
+	@Test
+	public void testLevelIsRespected() {
+		CollectingAppender appender = new CollectingAppender();
+		handler = new AsyncLogHandler(appender, 16);
+		handler.setLevel(Level.WARNING);
+
+		handler.publish(new LogRecord(Level.INFO, "ignored"));
+		handler.publish(new LogRecord(Level.WARNING, "written"));
+		handler.flush();
+
+		assertEquals(Collections.singletonList("written"), appender.messages);
+	}
+
+	private static class CollectingAppender implements LogAppender {
+
+		private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+		private final CountDownLatch latch;
+		private volatile int noFlushes = 0;
+		private volatile boolean isClosed = false;
+
+		private CollectingAppender() {
+			this(new CountDownLatch(0));
+		}
+
+		private CollectingAppender(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		@Override
+		public void append(LogRecord record) {
+			try {
+				latch.await();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			messages.add(record.getMessage());
+		}
+
+		@Override
+		public void flush() {
+			noFlushes++;
+		}
+
+		@Override
+		public void close() {
+			isClosed = true;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package org.wahlzeit.services.logging;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wahlzeit.model.UserSession;
+import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.Session;
+import org.wahlzeit.services.SessionManager;
+import org.wahlzeit.services.StructuredLogRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link JsonLinesFileAppender}.
+ */
+public class JsonLinesFileAppenderTest {
+
+	private Session session;
+	private StringWriter out;
+	private JsonLinesFileAppender appender;
+
+	@Before
+	public void setUp() {
+		session = SessionManager.getThreadLocalSession();
+		SessionManager.dropThreadLocalSession();
+
+		out = new StringWriter();
+		appender = new JsonLinesFileAppender(out);
+	}
+
+	@After
+	public void tearDown() {
+		SessionManager.setThreadLocalSession(session);
+	}
+
+	@Test
+	public void testStructuredRecord() throws IOException {
+		LogBuilder fields = LogBuilder.createUserMessage().addAction("Praise").addParameter("photo", "x1").
+				addMessage("first").addMessage("second \"quoted\"");
+		LogRecord record = new StructuredLogRecord(Level.INFO, "test", fields);
+		record.setMillis(0);
+		appender.append(record);
+		appender.flush();
+
+		assertEquals("{\"time\":\"1970-01-01T00:00:00Z\",\"severity\":\"INFO\",\"logger\":\"test\"," +
+				"\"level\":\"ul\",\"session\":\"" + Session.NO_SESSION + "\"," +
+				"\"client\":\"" + UserSession.ANONYMOUS_CLIENT + "\"," +
+				"\"action\":\"Praise\",\"photo\":\"x1\",\"message\":\"first, second \\\"quoted\\\"\"}\n",
+				out.toString());
+	}
+
+	@Test
+	public void testPlainRecord() throws IOException {
+		LogRecord record = new LogRecord(Level.WARNING, "value {0}");
+		record.setParameters(new Object[] {"a\tb"});
+		record.setLoggerName("plain");
+		appender.append(record);
+		appender.flush();
+
+		String line = out.toString();
+		assertTrue(line.contains("\"severity\":\"WARNING\",\"logger\":\"plain\",\"message\":\"value a\\tb\"}"));
+	}
+
+	@Test
+	public void testStacktraceIsOneLine() throws IOException {
+		LogBuilder fields = LogBuilder.createSystemMessage().addException("failed", new IllegalStateException("x"));
+		appender.append(new StructuredLogRecord(Level.SEVERE, "test", fields));
+		appender.append(new StructuredLogRecord(Level.SEVERE, "test", fields));
+		appender.flush();
+
+		String[] lines = out.toString().split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].contains("\"exception reason\":\"failed\",\"stacktrace\":\"" +
+				"java.lang.IllegalStateException: x\\n"));
+		assertTrue(lines[0].endsWith("\"}"));
+	}
+
+	@Test
+	public void testStandardOutputStaysOpen() throws IOException {
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream testOut = new PrintStream(bytes, true, "UTF-8");
+		try {
+			System.setOut(testOut);
+			LogAppender stdoutAppender = AsyncLogHandler.createAppender(null);
+			stdoutAppender.append(new StructuredLogRecord(Level.INFO, "test", LogBuilder.createSystemMessage()));
+			stdoutAppender.close();
+		} finally {
+			System.setOut(stdout);
+		}
+
+		assertTrue(bytes.toString("UTF-8").startsWith("{\"time\":"));
+		testOut.print("x");
+		assertFalse(testOut.checkError());
+	}
+}
@@ -5,6 +5,7 @@ import org.junit.runner.*;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+	org.wahlzeit.utils.IntBitmapTest.class,
 	org.wahlzeit.utils.StringUtilTest.class,
 	org.wahlzeit.utils.VersionTest.class
 })
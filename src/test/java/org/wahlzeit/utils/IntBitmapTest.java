@@ -0,0 +1,117 @@
+package org.wahlzeit.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link IntBitmap}
+ */
+public class IntBitmapTest {
+
+	@Test
+	public void testAddAndRemove() {
+		IntBitmap bitmap = new IntBitmap();
+		assertTrue(bitmap.isEmpty());
+
+		assertTrue(bitmap.add(7));
+		assertTrue(bitmap.add(70000));
+		assertFalse(bitmap.add(7));
+		assertTrue(bitmap.contains(7));
+		assertTrue(bitmap.contains(70000));
+		assertFalse(bitmap.contains(8));
+		assertEquals(2, bitmap.getCardinality());
+
+		assertTrue(bitmap.remove(7));
+		assertFalse(bitmap.remove(7));
+		assertFalse(bitmap.contains(7));
+		assertArrayEquals(new int[] {70000}, bitmap.toArray());
+
+		assertTrue(bitmap.remove(70000));
+		assertTrue(bitmap.isEmpty());
+	}
+
+	@Test
+	public void testDenseGroupsBecomeBitmaps() {
+		IntBitmap bitmap = new IntBitmap();
+		for (int i = 0; i < 10000; i++) {
+			bitmap.add(2 * i);
+		}
+		assertTrue(bitmap.containers[0] instanceof long[]);
+		assertEquals(10000, bitmap.getCardinality());
+		assertTrue(bitmap.contains(19998));
+		assertFalse(bitmap.contains(19999));
+
+		for (int i = 0; i < 9000; i++) {
+			bitmap.remove(2 * i);
+		}
+		assertTrue(bitmap.containers[0] instanceof char[]);
+		assertEquals(1000, bitmap.getCardinality());
+		assertEquals(18000, bitmap.toArray()[0]);
+	}
+
+	@Test
+	public void testSetOperationsMatchSortedSets() {
+		Random random = new Random(42);
+		for (int round = 0; round < 20; round++) {
+			int range = (round % 2 == 0) ? 200000 : 20000;
+			TreeSet<Integer> first = new TreeSet<Integer>();
+			TreeSet<Integer> second = new TreeSet<Integer>();
+			IntBitmap firstBitmap = new IntBitmap();
+			IntBitmap secondBitmap = new IntBitmap();
+			for (int i = 0; i < 8000; i++) {
+				int value = random.nextInt(range);
+				first.add(value);
+				firstBitmap.add(value);
+				value = random.nextInt(range);
+				second.add(value);
+				secondBitmap.add(value);
+			}
+
+			TreeSet<Integer> union = new TreeSet<Integer>(first);
+			union.addAll(second);
+			assertArrayEquals(asArray(union), firstBitmap.or(secondBitmap).toArray());
+
+			TreeSet<Integer> intersection = new TreeSet<Integer>(first);
+			intersection.retainAll(second);
+			assertArrayEquals(asArray(intersection), firstBitmap.and(secondBitmap).toArray());
+
+			TreeSet<Integer> difference = new TreeSet<Integer>(first);
+			difference.removeAll(second);
+			assertArrayEquals(asArray(difference), firstBitmap.andNot(secondBitmap).toArray());
+
+			assertArrayEquals(asArray(first), firstBitmap.toArray());
+		}
+	}
+
+	@Test
+	public void testCopyIsIndependent() {
+		IntBitmap bitmap = IntBitmap.of(1, 2, 3);
+		IntBitmap copy = bitmap.copy();
+		copy.add(4);
+		bitmap.remove(1);
+
+		assertArrayEquals(new int[] {2, 3}, bitmap.toArray());
+		assertArrayEquals(new int[] {1, 2, 3, 4}, copy.toArray());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeValueIsRejected() {
+		new IntBitmap().add(-1);
+	}
+
+	private int[] asArray(TreeSet<Integer> values) {
+		int[] result = new int[values.size()];
+		int i = 0;
+		for (int value : values) {
+			result[i++] = value;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,15 @@
+package org.wahlzeit.webparts;
+
+import org.junit.runners.*;
+import org.junit.runner.*;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+	org.wahlzeit.webparts.GzipPartOutputStreamTest.class,
+	org.wahlzeit.webparts.PooledBufferedOutputStreamTest.class,
+	org.wahlzeit.webparts.WebPartCacheTest.class,
+	org.wahlzeit.webparts.WebPartTest.class,
+	org.wahlzeit.webparts.WritableListTest.class
+})
+
+public class AllWebPartsTests { /* do nothing */ }
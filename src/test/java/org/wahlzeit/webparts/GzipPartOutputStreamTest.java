@@ -0,0 +1,89 @@
+package org.wahlzeit.webparts;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link GzipPartOutputStream}
+ */
+public class GzipPartOutputStreamTest {
+
+	@Test
+	public void testSplicedStaticTextIsDecompressed() throws IOException {
+		StringBuilder source = new StringBuilder();
+		for (int i = 0; i < 400; i++) {
+			source.append("<li class=\"menu\">Vulkan ").append(i).append("</li>\n");
+		}
+		source.append("{$first}<p>short</p>{$second}");
+		for (int i = 0; i < 40; i++) {
+			source.append("<div class=\"footer\">Ätna, Vesuv und Stromboli</div>\n");
+		}
+		source.append("{$first}");
+
+		WebPartTemplate template = new WebPartTemplate("test");
+		template.initialize(source.toString());
+		WebPart part = new WebPart(template);
+		part.addString("first", "<li class=\"menu\">Vulkan 7</li>");
+		part.addStaticText("second", source.substring(0, 2000));
+
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		part.writeOn(plain);
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		GzipPartOutputStream out = new GzipPartOutputStream(compressed);
+		part.writeOn(out);
+		out.flush();
+		part.writeOn(out);
+		out.close();
+
+		byte[] expected = new byte[2 * plain.size()];
+		System.arraycopy(plain.toByteArray(), 0, expected, 0, plain.size());
+		System.arraycopy(plain.toByteArray(), 0, expected, plain.size(), plain.size());
+		assertArrayEquals(expected, decompress(compressed.toByteArray()));
+		assertTrue(compressed.size() < plain.size() / 4);
+	}
+
+	@Test
+	public void testLongDynamicTextIsDecompressed() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			text.append(i % 97).append(' ');
+		}
+		byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+		StaticText staticText = new StaticText(bytes);
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GzipPartOutputStream out = new GzipPartOutputStream(compressed)) {
+			out.write(bytes);
+			out.writeStatic(staticText);
+			out.writeStatic(staticText);
+			out.write(bytes, 0, 100);
+		}
+
+		byte[] result = decompress(compressed.toByteArray());
+		assertEquals(3 * bytes.length + 100, result.length);
+		assertEquals(text.toString().substring(0, 100),
+				new String(result, 3 * bytes.length, 100, StandardCharsets.UTF_8));
+	}
+
+	private byte[] decompress(byte[] compressed) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			byte[] buffer = new byte[4096];
+			for (int noBytes = in.read(buffer); noBytes != -1; noBytes = in.read(buffer)) {
+				result.write(buffer, 0, noBytes);
+			}
+		}
+		return result.toByteArray();
+	}
+}
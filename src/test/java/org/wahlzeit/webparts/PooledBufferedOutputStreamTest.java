@@ -0,0 +1,50 @@
+package org.wahlzeit.webparts;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link PooledBufferedOutputStream}
+ */
+public class PooledBufferedOutputStreamTest {
+
+	@Test
+	public void testBytesAreWrittenInOrder() throws IOException {
+		byte[] large = new byte[PooledBufferedOutputStream.BUFFER_SIZE + 10];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) i;
+		}
+
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		PooledBufferedOutputStream out = new PooledBufferedOutputStream(target);
+		out.write(1);
+		out.write(large, 0, 100);
+		assertEquals(0, target.size());
+
+		out.flush();
+		assertEquals(101, target.size());
+
+		out.write(large);
+		out.write(2);
+		out.close();
+
+		byte[] expected = new byte[1 + 100 + large.length + 1];
+		expected[0] = 1;
+		System.arraycopy(large, 0, expected, 1, 100);
+		System.arraycopy(large, 0, expected, 101, large.length);
+		expected[expected.length - 1] = 2;
+		assertArrayEquals(expected, target.toByteArray());
+	}
+
+	@Test(expected = IOException.class)
+	public void testClosedStreamCannotBeWritten() throws IOException {
+		PooledBufferedOutputStream out = new PooledBufferedOutputStream(new ByteArrayOutputStream());
+		out.close();
+		out.write(1);
+	}
+}
@@ -0,0 +1,74 @@
+package org.wahlzeit.webparts;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link WebPartCache}
+ */
+public class WebPartCacheTest {
+
+	private WebPartCache cache;
+	private WebPartTemplate template;
+	private AtomicInteger noRenderings;
+
+	@Before
+	public void setUp() {
+		cache = new WebPartCache(64);
+		template = new WebPartTemplate("test");
+		template.initialize("<p>{$value}</p>");
+		noRenderings = new AtomicInteger();
+	}
+
+	@Test
+	public void testPartIsRenderedOnce() throws IOException {
+		WebPartCache.Key key = new WebPartCache.Key("test", "en").add("x1", 1);
+		assertEquals("<p>one</p>", asString(cache.getWebPart(key, () -> makeWebPart("one"))));
+
+		key = new WebPartCache.Key("test", "en").add("x1", 1);
+		assertEquals("<p>one</p>", asString(cache.getWebPart(key, () -> makeWebPart("two"))));
+		assertEquals(1, noRenderings.get());
+		assertEquals(1, cache.getNoHits());
+		assertEquals(1, cache.getNoMisses());
+	}
+
+	@Test
+	public void testNewWriteVersionOrLanguageMisses() throws IOException {
+		cache.getWebPart(new WebPartCache.Key("test", "en").add("x1", 1), () -> makeWebPart("one"));
+
+		Writable part = cache.getWebPart(new WebPartCache.Key("test", "en").add("x1", 2), () -> makeWebPart("two"));
+		assertEquals("<p>two</p>", asString(part));
+		part = cache.getWebPart(new WebPartCache.Key("test", "de").add("x1", 2), () -> makeWebPart("zwei"));
+		assertEquals("<p>zwei</p>", asString(part));
+		assertEquals(3, noRenderings.get());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedPartsAreEvicted() {
+		for (int i = 0; i < 10; i++) {
+			cache.getWebPart(new WebPartCache.Key("test", "en").add("x" + i, 1), () -> makeWebPart("0123456789"));
+		}
+
+		assertEquals(3 * 17, cache.getWeight());
+		assertEquals(7, cache.getNoEvictions());
+	}
+
+	private WebPart makeWebPart(String value) {
+		noRenderings.incrementAndGet();
+		WebPart result = new WebPart(template);
+		result.addString("value", value);
+		return result;
+	}
+
+	private String asString(Writable part) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		part.writeOn(out);
+		return out.toString("UTF-8");
+	}
+}
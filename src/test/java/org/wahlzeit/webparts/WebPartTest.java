@@ -0,0 +1,97 @@
+package org.wahlzeit.webparts;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link WebPart} and {@link WebPartTemplate}
+ */
+public class WebPartTest {
+
+	private WebPartTemplate template;
+
+	@Before
+	public void setUp() {
+		template = new WebPartTemplate("test");
+		template.initialize("<h1>{$title}</h1><p>Grüße, {$name}! {$title}</p>{$missing}");
+	}
+
+	@Test
+	public void testTemplateIsCompiled() {
+		assertEquals(3, template.getNoKeys());
+		assertEquals(4, template.getNoSlots());
+		assertEquals(template.getKeyIndex("title"), template.getSlotIndex(2));
+		assertEquals(-1, template.getKeyIndex("unknown"));
+		assertEquals("<h1></h1><p>Grüße, ! </p>", template.asString());
+	}
+
+	@Test
+	public void testValuesAreWrittenIntoSlots() throws IOException {
+		WebPart part = new WebPart(template);
+		part.addString("title", "Wahlzeit");
+		part.maskAndAddString("name", "<Ätna>");
+		part.addString("unknown", "kept");
+
+		String expected = "<h1>Wahlzeit</h1><p>Grüße, &lt;Ätna&gt;! Wahlzeit</p>";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		part.writeOn(out);
+		assertEquals(expected, out.toString("UTF-8"));
+
+		StringWriter writer = new StringWriter();
+		part.writeOn(writer);
+		assertEquals(expected, writer.toString());
+
+		assertEquals("kept", part.getValue("unknown"));
+		assertNull(part.getValue("missing"));
+	}
+
+	@Test
+	public void testNestedPartsAreWritten() throws IOException {
+		WebPartTemplate inner = new WebPartTemplate("inner");
+		inner.initialize("[{$value}]");
+		WebPart first = new WebPart(inner);
+		first.addString("value", "1");
+		WebPart second = new WebPart(inner);
+		second.addString("value", "2");
+
+		WebPart part = new WebPart(template);
+		part.addWritable("title", new WritableList().append(first).append(second));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		part.writeOn(out);
+		assertEquals("<h1>[1][2]</h1><p>Grüße, ! [1][2]</p>", out.toString("UTF-8"));
+	}
+
+	@Test
+	public void testDeferredPartIsMadeAfterFlush() throws IOException {
+		StringBuilder events = new StringBuilder();
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public void flush() {
+				events.append("flush@").append(size()).append(' ');
+			}
+		};
+
+		WebPart part = new WebPart(template);
+		part.addString("title", "Wahlzeit");
+		part.addDeferredWritable("name", () -> {
+			events.append("make@").append(out.size()).append(' ');
+			WebPart name = new WebPart(template);
+			name.addString("title", "Ätna");
+			return name;
+		});
+		assertEquals("", events.toString());
+
+		part.writeOn(out);
+		assertEquals("flush@29 make@29 ", events.toString());
+		assertEquals("<h1>Wahlzeit</h1><p>Grüße, <h1>Ätna</h1><p>Grüße, ! Ätna</p>! Wahlzeit</p>",
+				out.toString("UTF-8"));
+	}
+}
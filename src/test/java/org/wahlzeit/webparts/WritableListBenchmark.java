@@ -0,0 +1,95 @@
+package org.wahlzeit.webparts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Measures building and rendering a page with a list of 10, 100 and 1000 entries, like the photo forms of a user home
+ * page. Not part of the test suite; run it with the test classpath and optionally the number of iterations as
+ * argument.
+ */
+public class WritableListBenchmark {
+
+	private static final int WARM_UP_ITERATIONS = 2000;
+	private static final int[] NO_ENTRIES = {10, 100, 1000};
+
+	private static WebPartTemplate pageTemplate;
+	private static WebPartTemplate entryTemplate;
+
+	public static void main(String[] args) throws IOException {
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+
+		pageTemplate = new WebPartTemplate("page");
+		pageTemplate.initialize("<html><head><title>{$title}</title></head><body><h1>{$title}</h1>" +
+				"<ul>{$entries}</ul><footer>{$footer}</footer></body></html>");
+		entryTemplate = new WebPartTemplate("entry");
+		entryTemplate.initialize("<li><a href=\"/{$id}.html\"><img src=\"/photos/{$id}-0.jpg\"/></a>" +
+				"<span class=\"praise\">{$praise}</span><span class=\"tags\">{$tags}</span></li>");
+
+		for (int noEntries : NO_ENTRIES) {
+			run("pre-sized buffer", noEntries, iterations, true);
+			run("growing buffer", noEntries, iterations, false);
+			run("discarding stream", noEntries, iterations, null);
+		}
+	}
+
+	private static void run(String name, int noEntries, int iterations, Boolean isPreSized) throws IOException {
+		long noBytes = 0;
+		for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+			noBytes += render(noEntries, isPreSized);
+		}
+
+		long startTime = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			noBytes += render(noEntries, isPreSized);
+		}
+		double micros = (System.nanoTime() - startTime) / 1e3 / iterations;
+		System.out.printf("%-18s %5d entries %10.2f us/op%n", name, noEntries, micros);
+		if (noBytes == 0) {
+			System.out.println();
+		}
+	}
+
+	private static long render(int noEntries, Boolean isPreSized) throws IOException {
+		WebPart page = new WebPart(pageTemplate);
+		page.addString("title", "Volcanoes");
+		page.addString("footer", "Wahlzeit");
+
+		WritableList entries = new WritableList(noEntries);
+		for (int i = 0; i < noEntries; i++) {
+			WebPart entry = new WebPart(entryTemplate);
+			entry.addString("id", "x" + i);
+			entry.addString("praise", "4.5 (" + i + ")");
+			entry.addString("tags", "volcano, eruption, lava");
+			entries.append(entry);
+		}
+		page.addWritable("entries", entries);
+
+		if (isPreSized == null) {
+			DiscardingOutputStream out = new DiscardingOutputStream();
+			page.writeOn(out);
+			return out.noBytes;
+		}
+
+		ByteArrayOutputStream out = isPreSized ? new ByteArrayOutputStream(page.getEstimatedLength()) :
+				new ByteArrayOutputStream();
+		page.writeOn(out);
+		return out.size();
+	}
+
+	private static class DiscardingOutputStream extends OutputStream {
+
+		private long noBytes = 0;
+
+		@Override
+		public void write(int b) {
+			noBytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			noBytes += len;
+		}
+	}
+}
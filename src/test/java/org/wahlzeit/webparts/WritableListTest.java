@@ -0,0 +1,51 @@
+package org.wahlzeit.webparts;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link WritableList}
+ */
+public class WritableListTest {
+
+	@Test
+	public void testElementsAreWrittenInOrder() throws IOException {
+		WritableList list = new WritableList(1);
+		assertTrue(list.isEmpty());
+
+		list.append(text("b")).append(text("d")).prepend(text("a")).insert(2, text("c")).append(text("e"));
+		assertEquals(5, list.size());
+		assertEquals(5, list.getEstimatedLength());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		list.writeOn(out);
+		assertEquals("abcde", out.toString("UTF-8"));
+	}
+
+	@Test
+	public void testEstimatedLengthOfWebPart() {
+		WebPartTemplate template = new WebPartTemplate("test");
+		template.initialize("<ul>{$entries}</ul>");
+		WritableList entries = new WritableList();
+		entries.append(text("<li>1</li>")).append(text("<li>2</li>"));
+		WebPart part = new WebPart(template);
+		part.addWritable("entries", entries);
+
+		assertEquals("<ul><li>1</li><li>2</li></ul>".length(), part.getEstimatedLength());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testInsertBeyondSizeFails() {
+		new WritableList().insert(1, text("a"));
+	}
+
+	private StaticText text(String text) {
+		return new StaticText(text.getBytes(StandardCharsets.UTF_8));
+	}
+}